@@ -139,6 +139,14 @@ public final class Config {
 	public static final String DEFAULT_TILEMAP_BACKGROUND = "BLACK";
 	public static final boolean DEFAULT_DEBUG = false;
 	public static final String DEFAULT_MC_SAVES_DIR = FileHelper.getMCSavesDir();
+	public static final double DEFAULT_MAX_FRAGMENTATION = 0.25;
+	public static final int DEFAULT_PREFETCH_MEMORY = (int) Math.min(Runtime.getRuntime().maxMemory() / 1_048_576 / 8, 256);
+	public static final int DEFAULT_DECODE_THREADS = Math.max(Runtime.getRuntime().availableProcessors() / 2, 1);
+	public static final int DEFAULT_ENCODE_THREADS = Math.max(Runtime.getRuntime().availableProcessors() / 2, 1);
+	public static final int DEFAULT_STAGE_QUEUE_SIZE = 2;
+	public static final int DEFAULT_JOB_MEMORY = (int) (Runtime.getRuntime().maxMemory() / 1_048_576 / 2);
+	public static final boolean DEFAULT_USE_VIRTUAL_THREADS = false;
+	public static final int DEFAULT_PARSE_THREADS = Math.max(Runtime.getRuntime().availableProcessors() / 2, 1);
 
 	public static final int DEFAULT_RENDER_HEIGHT = 319;
 	public static final boolean DEFAULT_RENDER_LAYER_ONLY = false;
@@ -165,6 +173,14 @@ public final class Config {
 	private static boolean smoothOverlays = DEFAULT_SMOOTH_OVERLAYS;
 	private static String tileMapBackground = DEFAULT_TILEMAP_BACKGROUND;
 	private static String mcSavesDir = DEFAULT_MC_SAVES_DIR;
+	private static double maxFragmentation = DEFAULT_MAX_FRAGMENTATION;
+	private static int prefetchMemory = DEFAULT_PREFETCH_MEMORY;
+	private static int decodeThreads = DEFAULT_DECODE_THREADS;
+	private static int encodeThreads = DEFAULT_ENCODE_THREADS;
+	private static int stageQueueSize = DEFAULT_STAGE_QUEUE_SIZE;
+	private static int jobMemory = DEFAULT_JOB_MEMORY;
+	private static boolean useVirtualThreads = DEFAULT_USE_VIRTUAL_THREADS;
+	private static int parseThreads = DEFAULT_PARSE_THREADS;
 
 	private static int renderHeight = DEFAULT_RENDER_HEIGHT;
 	private static boolean renderLayerOnly = DEFAULT_RENDER_LAYER_ONLY;
@@ -425,6 +441,14 @@ public final class Config {
 				if (!new File(mcSavesDir).exists()) {
 					mcSavesDir = DEFAULT_MC_SAVES_DIR;
 				}
+				maxFragmentation = Double.parseDouble(config.getOrDefault("MaxFragmentation", DEFAULT_MAX_FRAGMENTATION + ""));
+				prefetchMemory = Integer.parseInt(config.getOrDefault("PrefetchMemory", DEFAULT_PREFETCH_MEMORY + ""));
+				decodeThreads = Integer.parseInt(config.getOrDefault("DecodeThreads", DEFAULT_DECODE_THREADS + ""));
+				encodeThreads = Integer.parseInt(config.getOrDefault("EncodeThreads", DEFAULT_ENCODE_THREADS + ""));
+				stageQueueSize = Integer.parseInt(config.getOrDefault("StageQueueSize", DEFAULT_STAGE_QUEUE_SIZE + ""));
+				jobMemory = Integer.parseInt(config.getOrDefault("JobMemory", DEFAULT_JOB_MEMORY + ""));
+				useVirtualThreads = Boolean.parseBoolean(config.getOrDefault("UseVirtualThreads", DEFAULT_USE_VIRTUAL_THREADS + ""));
+				parseThreads = Integer.parseInt(config.getOrDefault("ParseThreads", DEFAULT_PARSE_THREADS + ""));
 				debug = Boolean.parseBoolean(config.getOrDefault("Debug", DEFAULT_DEBUG + ""));
 			} catch (Exception ex) {
 				Debug.dumpException("error loading settings", ex);
@@ -475,6 +499,14 @@ public final class Config {
 		addSettingsLine("WriteThreads", writeThreads, DEFAULT_WRITE_THREADS, lines);
 		addSettingsLine("MaxLoadedFiles", maxLoadedFiles, DEFAULT_MAX_LOADED_FILES, lines);
 		addSettingsLine("MCSavesDir", mcSavesDir, DEFAULT_MC_SAVES_DIR, lines);
+		addSettingsLine("MaxFragmentation", maxFragmentation, DEFAULT_MAX_FRAGMENTATION, lines);
+		addSettingsLine("PrefetchMemory", prefetchMemory, DEFAULT_PREFETCH_MEMORY, lines);
+		addSettingsLine("DecodeThreads", decodeThreads, DEFAULT_DECODE_THREADS, lines);
+		addSettingsLine("EncodeThreads", encodeThreads, DEFAULT_ENCODE_THREADS, lines);
+		addSettingsLine("StageQueueSize", stageQueueSize, DEFAULT_STAGE_QUEUE_SIZE, lines);
+		addSettingsLine("JobMemory", jobMemory, DEFAULT_JOB_MEMORY, lines);
+		addSettingsLine("UseVirtualThreads", useVirtualThreads, DEFAULT_USE_VIRTUAL_THREADS, lines);
+		addSettingsLine("ParseThreads", parseThreads, DEFAULT_PARSE_THREADS, lines);
 		addSettingsLine("Debug", debug, DEFAULT_DEBUG, lines);
 		if (lines.size() == 0) {
 			if (DEFAULT_BASE_CONFIG_FILE.exists() && !DEFAULT_BASE_CONFIG_FILE.delete()) {
@@ -552,6 +584,75 @@ public final class Config {
 		Config.maxLoadedFiles = maxLoadedFiles;
 	}
 
+	public static double getMaxFragmentation() {
+		return maxFragmentation;
+	}
+
+	public static void setMaxFragmentation(double maxFragmentation) {
+		Config.maxFragmentation = maxFragmentation;
+	}
+
+	// in MB, 0 disables prefetching
+	public static int getPrefetchMemory() {
+		return prefetchMemory;
+	}
+
+	public static void setPrefetchMemory(int prefetchMemory) {
+		Config.prefetchMemory = prefetchMemory;
+	}
+
+	public static int getDecodeThreads() {
+		return decodeThreads;
+	}
+
+	public static void setDecodeThreads(int decodeThreads) {
+		Config.decodeThreads = decodeThreads;
+	}
+
+	public static int getEncodeThreads() {
+		return encodeThreads;
+	}
+
+	public static void setEncodeThreads(int encodeThreads) {
+		Config.encodeThreads = encodeThreads;
+	}
+
+	// the number of jobs that can wait for each thread of a stage before the stages in front of it are blocked
+	public static int getStageQueueSize() {
+		return stageQueueSize;
+	}
+
+	public static void setStageQueueSize(int stageQueueSize) {
+		Config.stageQueueSize = stageQueueSize;
+	}
+
+	// in MB, the estimated heap memory that jobs can use at the same time. 0 disables the limit
+	public static int getJobMemory() {
+		return jobMemory;
+	}
+
+	public static void setJobMemory(int jobMemory) {
+		Config.jobMemory = jobMemory;
+	}
+
+	// only has an effect on java 21 and newer
+	public static boolean useVirtualThreads() {
+		return useVirtualThreads;
+	}
+
+	public static void setUseVirtualThreads(boolean useVirtualThreads) {
+		Config.useVirtualThreads = useVirtualThreads;
+	}
+
+	// the number of threads that load and parse data for overlays
+	public static int getParseThreads() {
+		return parseThreads;
+	}
+
+	public static void setParseThreads(int parseThreads) {
+		Config.parseThreads = parseThreads;
+	}
+
 	public static int getMaxZoomLevel() {
 		return Tile.getZoomLevel(MAX_SCALE);
 	}
@@ -582,6 +683,14 @@ public final class Config {
 		sb.append(",\n DEFAULT_TILEMAP_BACKGROUND='").append(DEFAULT_TILEMAP_BACKGROUND).append('\'');
 		sb.append(",\n DEFAULT_DEBUG=").append(DEFAULT_DEBUG);
 		sb.append(",\n DEFAULT_MC_SAVES_DIR='").append(DEFAULT_MC_SAVES_DIR).append('\'');
+		sb.append(",\n DEFAULT_MAX_FRAGMENTATION=").append(DEFAULT_MAX_FRAGMENTATION);
+		sb.append(",\n DEFAULT_PREFETCH_MEMORY=").append(DEFAULT_PREFETCH_MEMORY);
+		sb.append(",\n DEFAULT_DECODE_THREADS=").append(DEFAULT_DECODE_THREADS);
+		sb.append(",\n DEFAULT_ENCODE_THREADS=").append(DEFAULT_ENCODE_THREADS);
+		sb.append(",\n DEFAULT_STAGE_QUEUE_SIZE=").append(DEFAULT_STAGE_QUEUE_SIZE);
+		sb.append(",\n DEFAULT_JOB_MEMORY=").append(DEFAULT_JOB_MEMORY);
+		sb.append(",\n DEFAULT_USE_VIRTUAL_THREADS=").append(DEFAULT_USE_VIRTUAL_THREADS);
+		sb.append(",\n DEFAULT_PARSE_THREADS=").append(DEFAULT_PARSE_THREADS);
 		sb.append(",\n DEFAULT_RENDER_HEIGHT=").append(DEFAULT_RENDER_HEIGHT);
 		sb.append(",\n DEFAULT_RENDER_LAYER_ONLY=").append(DEFAULT_RENDER_LAYER_ONLY);
 		sb.append(",\n DEFAULT_RENDER_CAVES=").append(DEFAULT_RENDER_CAVES);
@@ -605,6 +714,14 @@ public final class Config {
 		sb.append(",\n smoothOverlays=").append(smoothOverlays);
 		sb.append(",\n tileMapBackground='").append(tileMapBackground).append('\'');
 		sb.append(",\n mcSavesDir='").append(mcSavesDir).append('\'');
+		sb.append(",\n maxFragmentation=").append(maxFragmentation);
+		sb.append(",\n prefetchMemory=").append(prefetchMemory);
+		sb.append(",\n decodeThreads=").append(decodeThreads);
+		sb.append(",\n encodeThreads=").append(encodeThreads);
+		sb.append(",\n stageQueueSize=").append(stageQueueSize);
+		sb.append(",\n jobMemory=").append(jobMemory);
+		sb.append(",\n useVirtualThreads=").append(useVirtualThreads);
+		sb.append(",\n parseThreads=").append(parseThreads);
 		sb.append(",\n renderHeight=").append(renderHeight);
 		sb.append(",\n renderLayerOnly=").append(renderLayerOnly);
 		sb.append(",\n renderCaves=").append(renderCaves);
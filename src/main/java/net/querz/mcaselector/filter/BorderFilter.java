@@ -5,7 +5,9 @@ import it.unimi.dsi.fastutil.longs.Long2ObjectSortedMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectSortedMaps;
 import net.querz.mcaselector.debug.Debug;
 import net.querz.mcaselector.io.ByteArrayPointer;
+import net.querz.mcaselector.io.DataPointer;
 import net.querz.mcaselector.io.FileHelper;
+import net.querz.mcaselector.io.MappedFilePointer;
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.io.mca.RegionMCAFile;
 import net.querz.mcaselector.point.Point2i;
@@ -13,9 +15,7 @@ import net.querz.mcaselector.version.ChunkFilter;
 import net.querz.mcaselector.version.VersionController;
 import net.querz.nbt.tag.StringTag;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
-import java.nio.file.StandardOpenOption;
 
 public class BorderFilter extends IntFilter {
 
@@ -195,10 +195,15 @@ public class BorderFilter extends IntFilter {
 				push(key, null);
 				return null;
 			}
-			byte[] data = new byte[(int) regionMCAFile.getFile().length()];
-			try (InputStream is = Files.newInputStream(regionMCAFile.getFile().toPath(), StandardOpenOption.READ)) {
-				is.read(data);
-				regionMCAFile.loadBorderChunks(new ByteArrayPointer(data));
+			try {
+				// only the border chunks are read, so mapping the file avoids reading the whole file from disk
+				DataPointer ptr;
+				if (MappedFilePointer.isSupported()) {
+					ptr = MappedFilePointer.map(regionMCAFile.getFile());
+				} else {
+					ptr = new ByteArrayPointer(Files.readAllBytes(regionMCAFile.getFile().toPath()));
+				}
+				regionMCAFile.loadBorderChunks(ptr);
 			} catch (IOException ex) {
 				Debug.dumpException("failed to read data from " + regionMCAFile.getFile(), ex);
 				push(key, null);
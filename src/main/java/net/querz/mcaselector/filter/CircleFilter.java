@@ -3,12 +3,11 @@ package net.querz.mcaselector.filter;
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.text.TextHelper;
-import net.querz.mcaselector.version.ChunkFilter;
-import net.querz.mcaselector.version.VersionController;
-import net.querz.nbt.tag.IntTag;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class CircleFilter extends TextFilter<List<CircleFilter.CircleFilterDefinition>> implements RegionMatcher {
@@ -81,18 +80,11 @@ public class CircleFilter extends TextFilter<List<CircleFilter.CircleFilterDefin
 
 	@Override
 	public boolean contains(List<CircleFilterDefinition> value, ChunkData data) {
-		if (data.getRegion() == null || data.getRegion().getData() == null) {
+		if (data.getRegion() == null) {
 			return false;
 		}
 
-		ChunkFilter chunkFilter = VersionController.getChunkFilter(data.getRegion().getData().getInt("DataVersion"));
-		IntTag xPos = chunkFilter.getXPos(data.getRegion().getData());
-		IntTag zPos = chunkFilter.getZPos(data.getRegion().getData());
-		if (xPos == null || zPos == null) {
-			return false;
-		}
-
-		Point2i chunk = new Point2i(xPos.asInt(), zPos.asInt());
+		Point2i chunk = data.getRegion().getAbsoluteLocation();
 		for (CircleFilterDefinition circle : value) {
 			if (circle.matches(chunk)) {
 				return true;
@@ -106,6 +98,16 @@ public class CircleFilter extends TextFilter<List<CircleFilter.CircleFilterDefin
 		return !contains(value, data);
 	}
 
+	@Override
+	public EnumSet<RequiredData> getRequiredData() {
+		return EnumSet.noneOf(RequiredData.class);
+	}
+
+	@Override
+	public Set<String> getProjection() {
+		return Set.of();
+	}
+
 	@Override
 	public boolean intersects(List<CircleFilterDefinition> value, ChunkData data) {
 		throw new UnsupportedOperationException("\"intersects\" not allowed in circle filter");
@@ -1,6 +1,8 @@
 package net.querz.mcaselector.filter;
 
 import net.querz.mcaselector.io.mca.ChunkData;
+import net.querz.mcaselector.version.ChunkFilter;
+import java.util.Set;
 
 public class DataVersionFilter extends IntFilter {
 
@@ -29,6 +31,11 @@ public class DataVersionFilter extends IntFilter {
 		}
 	}
 
+	@Override
+	public Set<String> getProjection() {
+		return ChunkFilter.DATA_VERSION_PATHS;
+	}
+
 	@Override
 	public DataVersionFilter clone() {
 		return new DataVersionFilter(getOperator(), getComparator(), value);
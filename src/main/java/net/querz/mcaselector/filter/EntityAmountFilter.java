@@ -4,6 +4,7 @@ import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.version.EntityFilter;
 import net.querz.mcaselector.version.VersionController;
 import net.querz.nbt.tag.ListTag;
+import java.util.EnumSet;
 
 public class EntityAmountFilter extends IntFilter {
 
@@ -34,6 +35,12 @@ public class EntityAmountFilter extends IntFilter {
 		}
 	}
 
+	@Override
+	public EnumSet<RequiredData> getRequiredData() {
+		// entities are stored in separate files since 1.17
+		return EnumSet.of(RequiredData.REGION, RequiredData.ENTITIES);
+	}
+
 	@Override
 	public EntityAmountFilter clone() {
 		return new EntityAmountFilter(getOperator(), getComparator(), value);
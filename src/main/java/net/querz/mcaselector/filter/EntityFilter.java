@@ -12,6 +12,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
@@ -137,6 +138,12 @@ public class EntityFilter extends TextFilter<List<String>> {
 		return "Entities " + getComparator().getQueryString() + " \"" + getRawValue() + "\"";
 	}
 
+	@Override
+	public EnumSet<RequiredData> getRequiredData() {
+		// entities are stored in separate files since 1.17
+		return EnumSet.of(RequiredData.REGION, RequiredData.ENTITIES);
+	}
+
 	@Override
 	public EntityFilter clone() {
 		return new EntityFilter(getOperator(), getComparator(), new ArrayList<>(value));
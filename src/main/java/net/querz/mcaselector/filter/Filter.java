@@ -2,6 +2,8 @@ package net.querz.mcaselector.filter;
 
 import net.querz.mcaselector.io.mca.ChunkData;
 import java.io.Serializable;
+import java.util.EnumSet;
+import java.util.Set;
 
 public abstract class Filter<T> implements Serializable {
 
@@ -62,6 +64,18 @@ public abstract class Filter<T> implements Serializable {
 		return false;
 	}
 
+	// nbt paths this filter reads from the region chunk data. if this is not null,
+	// only these values are decoded instead of the entire chunk.
+	public Set<String> getProjection() {
+		return null;
+	}
+
+	// the chunk data that needs to be loaded to evaluate this filter.
+	// an empty set means that the information in the mca header is sufficient.
+	public EnumSet<RequiredData> getRequiredData() {
+		return EnumSet.of(RequiredData.REGION);
+	}
+
 	public abstract T getFilterValue();
 
 	public abstract void setFilterValue(String raw);
@@ -3,7 +3,10 @@ package net.querz.mcaselector.filter;
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.point.Point2i;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class GroupFilter extends Filter<List<Filter<?>>> {
 
@@ -229,6 +232,28 @@ public class GroupFilter extends Filter<List<Filter<?>>> {
 		}
 	}
 
+	@Override
+	public Set<String> getProjection() {
+		Set<String> projection = new HashSet<>();
+		for (Filter<?> child : children) {
+			Set<String> childProjection = child.getProjection();
+			if (childProjection == null) {
+				return null;
+			}
+			projection.addAll(childProjection);
+		}
+		return Set.copyOf(projection);
+	}
+
+	@Override
+	public EnumSet<RequiredData> getRequiredData() {
+		EnumSet<RequiredData> required = EnumSet.noneOf(RequiredData.class);
+		for (Filter<?> child : children) {
+			required.addAll(child.getRequiredData());
+		}
+		return required;
+	}
+
 	@Override
 	public boolean selectionOnly() {
 		for (Filter<?> child : children) {
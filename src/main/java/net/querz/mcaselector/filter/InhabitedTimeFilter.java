@@ -5,6 +5,7 @@ import net.querz.mcaselector.text.TextHelper;
 import net.querz.mcaselector.version.ChunkFilter;
 import net.querz.mcaselector.version.VersionController;
 import net.querz.nbt.tag.LongTag;
+import java.util.Set;
 
 public class InhabitedTimeFilter extends LongFilter {
 
@@ -52,6 +53,11 @@ public class InhabitedTimeFilter extends LongFilter {
 		return "duration";
 	}
 
+	@Override
+	public Set<String> getProjection() {
+		return ChunkFilter.INHABITED_TIME_PATHS;
+	}
+
 	@Override
 	public InhabitedTimeFilter clone() {
 		return new InhabitedTimeFilter(getOperator(), getComparator(), value);
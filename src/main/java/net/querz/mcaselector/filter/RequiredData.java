@@ -0,0 +1,7 @@
+package net.querz.mcaselector.filter;
+
+// the data a filter needs to evaluate a chunk. the mca header (chunk locations and timestamps) is always available.
+public enum RequiredData {
+
+	REGION, POI, ENTITIES
+}
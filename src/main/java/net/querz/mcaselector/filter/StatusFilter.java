@@ -101,6 +101,11 @@ public class StatusFilter extends TextFilter<String> {
 		return "Status " + getComparator().getQueryString() + " " + getFilterValue();
 	}
 
+	@Override
+	public Set<String> getProjection() {
+		return ChunkFilter.STATUS_PATHS;
+	}
+
 	@Override
 	public StatusFilter clone() {
 		return new StatusFilter(getOperator(), getComparator(), value);
@@ -2,6 +2,8 @@ package net.querz.mcaselector.filter;
 
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.text.TextHelper;
+import java.util.EnumSet;
+import java.util.Set;
 
 public class TimestampFilter extends IntFilter {
 
@@ -33,6 +35,11 @@ public class TimestampFilter extends IntFilter {
 		}
 	}
 
+	@Override
+	public EnumSet<RequiredData> getRequiredData() {
+		return EnumSet.noneOf(RequiredData.class);
+	}
+
 	@Override
 	public String getFormatText() {
 		return "YYYY-MM-DD hh:mm:ss";
@@ -43,6 +50,11 @@ public class TimestampFilter extends IntFilter {
 		return "LastUpdate " + getComparator().getQueryString() + " \"" + getRawValue() + "\"";
 	}
 
+	@Override
+	public Set<String> getProjection() {
+		return Set.of();
+	}
+
 	@Override
 	public TimestampFilter clone() {
 		return new TimestampFilter(getOperator(), getComparator(), value);
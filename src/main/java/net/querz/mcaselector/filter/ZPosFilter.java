@@ -2,9 +2,8 @@ package net.querz.mcaselector.filter;
 
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.point.Point2i;
-import net.querz.mcaselector.version.ChunkFilter;
-import net.querz.mcaselector.version.VersionController;
-import net.querz.nbt.tag.IntTag;
+import java.util.EnumSet;
+import java.util.Set;
 
 public class ZPosFilter extends IntFilter implements RegionMatcher {
 
@@ -18,12 +17,16 @@ public class ZPosFilter extends IntFilter implements RegionMatcher {
 
 	@Override
 	protected Integer getNumber(ChunkData data) {
-		if (data.getRegion() == null || data.getRegion().getData() == null) {
+		if (data.getRegion() == null) {
 			return null;
 		}
-		ChunkFilter chunkFilter = VersionController.getChunkFilter(data.getRegion().getData().getInt("DataVersion"));
-		IntTag tag = chunkFilter.getZPos(data.getRegion().getData());
-		return tag == null ? 0 : tag.asInt();
+		// the location of a chunk in the region file matches its zPos, so we don't need to read the chunk data
+		return data.getRegion().getAbsoluteLocation().getZ();
+	}
+
+	@Override
+	public EnumSet<RequiredData> getRequiredData() {
+		return EnumSet.noneOf(RequiredData.class);
 	}
 
 	@Override
@@ -38,6 +41,11 @@ public class ZPosFilter extends IntFilter implements RegionMatcher {
 		return false;
 	}
 
+	@Override
+	public Set<String> getProjection() {
+		return Set.of();
+	}
+
 	@Override
 	public ZPosFilter clone() {
 		return new ZPosFilter(getOperator(), getComparator(), value);
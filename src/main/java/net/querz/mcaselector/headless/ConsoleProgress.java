@@ -1,6 +1,5 @@
 package net.querz.mcaselector.headless;
 
-import net.querz.mcaselector.io.JobHandler;
 import net.querz.mcaselector.progress.Progress;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -10,10 +9,6 @@ public class ConsoleProgress implements Progress {
 	private final AtomicInteger progress = new AtomicInteger(0);
 	private Runnable doneAction;
 
-	public ConsoleProgress() {
-		JobHandler.setTrimSaveData(false);
-	}
-
 	@Override
 	public void cancelTask() {}
 
@@ -31,7 +26,7 @@ public class ConsoleProgress implements Progress {
 	public void updateProgress(String msg, int progress) {
 		this.progress.set(progress);
 		printProgress(msg);
-		if (this.progress.get() >= max) {
+		if (this.progress.get() >= max && doneAction != null) {
 			doneAction.run();
 		}
 	}
@@ -51,7 +46,7 @@ public class ConsoleProgress implements Progress {
 	public void incrementProgress(String msg, int progress) {
 		int currentProgress = this.progress.incrementAndGet();
 		printProgress(msg);
-		if (currentProgress >= max) {
+		if (currentProgress >= max && doneAction != null) {
 			doneAction.run();
 		}
 	}
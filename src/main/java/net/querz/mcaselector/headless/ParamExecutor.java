@@ -11,6 +11,7 @@ import net.querz.mcaselector.exception.ParseException;
 import net.querz.mcaselector.filter.FilterParser;
 import net.querz.mcaselector.filter.GroupFilter;
 import net.querz.mcaselector.io.*;
+import net.querz.mcaselector.io.job.BatchProcessor;
 import net.querz.mcaselector.io.job.ChunkFilterDeleter;
 import net.querz.mcaselector.io.job.ChunkFilterExporter;
 import net.querz.mcaselector.io.job.ChunkFilterSelector;
@@ -19,17 +20,22 @@ import net.querz.mcaselector.io.job.FieldChanger;
 import net.querz.mcaselector.io.job.SelectionDeleter;
 import net.querz.mcaselector.io.job.SelectionExporter;
 import net.querz.mcaselector.io.job.SelectionImageExporter;
+import net.querz.mcaselector.io.metrics.JobMetrics;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.point.Point3i;
 import net.querz.mcaselector.property.DataProperty;
 import net.querz.mcaselector.range.Range;
 import net.querz.mcaselector.range.RangeParser;
 import net.querz.mcaselector.text.Translation;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
@@ -38,6 +44,10 @@ import java.util.regex.Pattern;
 
 public final class ParamExecutor {
 
+	private static final String JOURNAL_FILE_NAME = ".mcaselector.journal";
+	// parameters that don't change the result of an operation, so they can differ when it is resumed
+	private static final Set<String> RUNTIME_PARAMS = Set.of("resume", "debug", "enablePrinting", "metrics", "metrics-interval", "process-threads", "write-threads", "max-loaded-files");
+
 	private final String[] args;
 	private Map<String, String> params;
 
@@ -102,6 +112,10 @@ public final class ParamExecutor {
 					printHeadlessSettings();
 					image(future);
 					break;
+				case "batch":
+					printHeadlessSettings();
+					batch(future);
+					break;
 				case "printMissingTranslations":
 					printMissingTranslations(future);
 					break;
@@ -133,11 +147,9 @@ public final class ParamExecutor {
 
 		Long2ObjectOpenHashMap<LongOpenHashSet> selection = new Long2ObjectOpenHashMap<>();
 		ConsoleProgress progress = new ConsoleProgress();
-		progress.onDone(() -> {
-			SelectionHelper.exportSelection(new SelectionData(selection, false), output);
-			future.run();
-		});
-		ChunkFilterSelector.selectFilter(query, selectionData, radius, (src) -> mergeSelections(src, selection), progress, true);
+		ChunkFilterSelector.selectFilter(query, selectionData, radius, (src) -> mergeSelections(src, selection), progress, true).await();
+		SelectionHelper.exportSelection(new SelectionData(selection, false), output);
+		future.run();
 	}
 
 	private void export(FutureTask<Boolean> future) throws IOException {
@@ -148,15 +160,20 @@ public final class ParamExecutor {
 		SelectionData selection = loadSelection();
 
 		ConsoleProgress progress = new ConsoleProgress();
-		progress.onDone(future);
 
+		OperationJournal journal = OperationJournal.disabled();
+		JobBatch batch;
 		if (query != null) {
-			ChunkFilterExporter.exportFilter(query, selection, outputDirectories, progress, true);
+			batch = ChunkFilterExporter.exportFilter(query, selection, outputDirectories, progress, true);
 		} else if (selection != null) {
-			SelectionExporter.exportSelection(selection, outputDirectories, progress);
+			journal = openJournal(outputDirectories);
+			batch = SelectionExporter.exportSelection(selection, outputDirectories, progress, journal);
 		} else {
 			throw new ParseException("missing query and/or selection");
 		}
+		batch.await();
+		journal.delete();
+		future.run();
 	}
 
 	private void imp(FutureTask<Boolean> future) throws IOException {
@@ -169,11 +186,18 @@ public final class ParamExecutor {
 		SelectionData targetSelection = loadSelection();
 		List<Range> sections = parseSections();
 
+		// regions that were already imported into would be read as sources again
+		if (params.containsKey("resume") && inputDirectories.sharesDirectories(Config.getWorldDirs())) {
+			throw new ParseException("resume is not supported when importing chunks from the same world");
+		}
+		OperationJournal journal = openJournal(Config.getWorldDirs());
+
 		ConsoleProgress progress = new ConsoleProgress();
-		progress.onDone(future);
 
 		DataProperty<Map<Point2i, RegionDirectories>> tempFiles = new DataProperty<>();
-		ChunkImporter.importChunks(inputDirectories, progress, true, overwrite, sourceSelection, targetSelection, sections, new Point3i(offsetX, 0, offsetZ), tempFiles);
+		// temp files can only be deleted when all jobs are done, because the jobs create and read them
+		ChunkImporter.importChunks(inputDirectories, progress, true, overwrite, sourceSelection, targetSelection, sections, new Point3i(offsetX, 0, offsetZ), tempFiles, journal).await();
+		journal.delete();
 		if (tempFiles.get() != null) {
 			for (RegionDirectories tempFile : tempFiles.get().values()) {
 				if (!tempFile.getRegion().delete()) {
@@ -187,6 +211,7 @@ public final class ParamExecutor {
 				}
 			}
 		}
+		future.run();
 	}
 
 	private void delete(FutureTask<Boolean> future) throws IOException {
@@ -195,15 +220,20 @@ public final class ParamExecutor {
 		SelectionData selection = loadSelection();
 
 		ConsoleProgress progress = new ConsoleProgress();
-		progress.onDone(future);
 
+		OperationJournal journal = OperationJournal.disabled();
+		JobBatch batch;
 		if (query != null) {
-			ChunkFilterDeleter.deleteFilter(query, selection, progress, true);
+			journal = openJournal(Config.getWorldDirs());
+			batch = ChunkFilterDeleter.deleteFilter(query, selection, progress, true, journal);
 		} else if (selection != null) {
-			SelectionDeleter.deleteSelection(selection, progress);
+			batch = SelectionDeleter.deleteSelection(selection, progress);
 		} else {
 			throw new ParseException("missing query and/or selection");
 		}
+		batch.await();
+		journal.delete();
+		future.run();
 	}
 
 	private void change(FutureTask<Boolean> future) throws IOException {
@@ -215,10 +245,13 @@ public final class ParamExecutor {
 			throw new ParseException("no fields to change");
 		}
 
+		OperationJournal journal = openJournal(Config.getWorldDirs());
+
 		ConsoleProgress progress = new ConsoleProgress();
-		progress.onDone(future);
 
-		FieldChanger.changeNBTFields(fields, force, selection, progress, true);
+		FieldChanger.changeNBTFields(fields, force, selection, progress, true, journal).await();
+		journal.delete();
+		future.run();
 	}
 
 	private void cache(FutureTask<Boolean> future) throws Exception {
@@ -234,9 +267,9 @@ public final class ParamExecutor {
 		HeadlessJFX.launch();
 
 		ConsoleProgress progress = new ConsoleProgress();
-		progress.onDone(future);
 
-		CacheHelper.forceGenerateCache(zoomLevel, progress);
+		CacheHelper.forceGenerateCache(zoomLevel, progress).await();
+		future.run();
 	}
 
 	private void image(FutureTask<Boolean> future) throws Exception {
@@ -284,6 +317,113 @@ public final class ParamExecutor {
 		pixels.set(SelectionImageExporter.exportSelectionImage(info, null, generateProgress));
 	}
 
+	// runs all operations of a json script in one pass over the world, e.g.
+	// [{"mode": "change", "fields": "LightPopulated = 1"}, {"mode": "delete", "query": "InhabitedTime < \"1 minute\""}]
+	// operations take the same parameters as the modes with the same name
+	private void batch(FutureTask<Boolean> future) throws Exception {
+		Config.setWorldDirs(parseWorldDirectories("region", "poi", "entities"));
+		SelectionData selection = loadSelection();
+		File script = parseFileAndTestExistence("script", "json");
+
+		JSONArray ops;
+		try {
+			ops = new JSONArray(Files.readString(script.toPath()));
+		} catch (JSONException ex) {
+			throw new ParseException("invalid batch script: " + ex.getMessage());
+		}
+
+		List<BatchProcessor.Operation> operations = new ArrayList<>();
+		Map<File, Long2ObjectOpenHashMap<LongOpenHashSet>> selections = new LinkedHashMap<>();
+		boolean cache = false;
+		Map<String, String> scriptParams = params;
+		try {
+			for (int i = 0; i < ops.length(); i++) {
+				params = parseOperationParams(ops.getJSONObject(i));
+				String mode = parseMode();
+				switch (mode) {
+					case "select":
+						File output = parseFileAndCreateParentDirectories("output", "csv");
+						GroupFilter selectQuery = parseQuery();
+						if (selectQuery == null) {
+							throw new ParseException("missing query for select");
+						}
+						Long2ObjectOpenHashMap<LongOpenHashSet> selected = new Long2ObjectOpenHashMap<>();
+						selections.put(output, selected);
+						operations.add(BatchProcessor.Operation.select(selectQuery, parseRadius(), src -> mergeSelections(src, selected)));
+						break;
+					case "change":
+						List<Field<?>> fields = parseFields();
+						if (fields == null) {
+							throw new ParseException("no fields to change");
+						}
+						operations.add(BatchProcessor.Operation.change(fields, params.containsKey("force")));
+						break;
+					case "delete":
+						GroupFilter deleteQuery = parseQuery();
+						if (deleteQuery == null) {
+							throw new ParseException("missing query for delete");
+						}
+						operations.add(BatchProcessor.Operation.delete(deleteQuery));
+						break;
+					case "cache":
+						if (cache) {
+							throw new ParseException("only one cache operation is allowed");
+						}
+						if (!HeadlessHelper.hasJavaFX()) {
+							throw new IOException("no JavaFX installation found");
+						}
+						Config.setCacheDir(parseAndCreateDirectory("output"));
+						Integer zoomLevel = parseZoomLevel();
+						List<Integer> zoomLevels = new ArrayList<>();
+						for (int z = Config.getMinZoomLevel(); z <= Config.getMaxZoomLevel(); z *= 2) {
+							if (zoomLevel == null || zoomLevel == z) {
+								zoomLevels.add(z);
+							}
+						}
+						operations.add(BatchProcessor.Operation.cache(zoomLevels.stream().mapToInt(Integer::intValue).toArray()));
+						cache = true;
+						break;
+					default:
+						throw new ParseException("unsupported batch operation " + mode);
+				}
+			}
+		} finally {
+			params = scriptParams;
+		}
+
+		if (operations.isEmpty()) {
+			throw new ParseException("no operations in batch script");
+		}
+
+		if (cache) {
+			HeadlessJFX.launch();
+		}
+
+		ConsoleProgress progress = new ConsoleProgress();
+
+		BatchProcessor.processBatch(operations, selection, progress, true).await();
+		for (Map.Entry<File, Long2ObjectOpenHashMap<LongOpenHashSet>> entry : selections.entrySet()) {
+			SelectionHelper.exportSelection(new SelectionData(entry.getValue(), false), entry.getKey());
+		}
+		future.run();
+	}
+
+	// flags like "force" are set with true, like they are passed without a value on the command line
+	private Map<String, String> parseOperationParams(JSONObject op) {
+		Map<String, String> opParams = new HashMap<>();
+		for (String key : op.keySet()) {
+			Object value = op.get(key);
+			if (value instanceof Boolean) {
+				if ((Boolean) value) {
+					opParams.put(key, null);
+				}
+			} else {
+				opParams.put(key, value.toString());
+			}
+		}
+		return opParams;
+	}
+
 	private void printMissingTranslations(FutureTask<Boolean> future) {
 		Set<Locale> locales = Translation.getAvailableLanguages();
 		for (Locale locale : locales) {
@@ -608,6 +748,28 @@ public final class ParamExecutor {
 		Config.setProcessThreads(parsePositiveInt("process-threads", Config.DEFAULT_PROCESS_THREADS));
 		Config.setWriteThreads(parsePositiveInt("write-threads",Config.DEFAULT_WRITE_THREADS));
 		Config.setMaxLoadedFiles(parsePositiveInt("max-loaded-files", Config.DEFAULT_MAX_LOADED_FILES));
+		if (params.containsKey("metrics")) {
+			File metrics = parseFileAndCreateParentDirectories("metrics", "json");
+			JobMetrics.startSnapshots(metrics, parsePositiveInt("metrics-interval", 5) * 1000L);
+		}
+	}
+
+	// every run records the completed regions in the world it writes to, so it can be continued with --resume when it was killed
+	private OperationJournal openJournal(WorldDirectories dirs) throws IOException {
+		File file = new File(dirs.getRegion(), JOURNAL_FILE_NAME);
+		boolean resume = params.containsKey("resume");
+		OperationJournal journal = OperationJournal.open(file, getOperationKey(), resume);
+		if (resume) {
+			int deleted = journal.deleteStaleTempFiles(dirs.getRegion(), dirs.getPoi(), dirs.getEntities());
+			Debug.printf("resuming from %s, %d regions already completed, deleted %d stale temp files", file, journal.size(), deleted);
+		}
+		return journal;
+	}
+
+	private String getOperationKey() {
+		Map<String, String> operation = new TreeMap<>(params);
+		operation.keySet().removeAll(RUNTIME_PARAMS);
+		return operation.toString();
 	}
 
 	private void printHeadlessSettings() {
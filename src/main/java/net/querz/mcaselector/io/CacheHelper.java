@@ -25,23 +25,29 @@ public final class CacheHelper {
 
 	private CacheHelper() {}
 
-	public static void forceGenerateCache(Integer zoomLevel, Progress progressChannel) {
+	// generates the cache images for zoomLevel, or for all zoom levels if zoomLevel is null.
+	// every region is only rendered once, no matter how many zoom levels are generated.
+	public static JobBatch forceGenerateCache(Integer zoomLevel, Progress progressChannel) {
 		File[] files = Config.getWorldDir().listFiles((d, n) -> n.matches(FileHelper.MCA_FILE_PATTERN));
 		if (files == null || files.length == 0) {
-			return;
+			return JobBatch.empty();
 		}
 
 		progressChannel.setMax(files.length);
 		progressChannel.updateProgress(files[0].getName(), 0);
 
+		int[] zoomLevels = zoomLevel == null ? RegionImageGenerator.getZoomLevels() : new int[]{zoomLevel};
+
+		JobBatch batch = new JobBatch();
 		for (File file : files) {
 			Matcher m = FileHelper.REGION_GROUP_PATTERN.matcher(file.getName());
 			if (m.find()) {
 				int x = Integer.parseInt(m.group("regionX"));
 				int z = Integer.parseInt(m.group("regionZ"));
-				RegionImageGenerator.generate(new Tile(new Point2i(x, z)), (i, u) -> {}, zoomLevel, progressChannel, false, null);
+				batch.add(RegionImageGenerator.generate(new Tile(new Point2i(x, z)), (i, u) -> {}, zoomLevels[0], zoomLevels, progressChannel, false, null, null, null));
 			}
 		}
+		return batch;
 	}
 
 	public static void clearAllCache(TileMap tileMap) {
@@ -0,0 +1,22 @@
+package net.querz.mcaselector.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Random access view on the raw bytes of an mca file. Out of bounds reads through
+ * {@link #readByte()} and {@link #readInt()} throw an {@link IndexOutOfBoundsException},
+ * reads through the {@link InputStream} methods throw an {@link IOException} instead.
+ */
+public abstract class DataPointer extends InputStream {
+
+	public abstract void seek(long pointer);
+
+	public abstract long getPosition();
+
+	public abstract long length();
+
+	public abstract byte readByte() throws IndexOutOfBoundsException;
+
+	public abstract int readInt() throws IndexOutOfBoundsException;
+}
@@ -1,26 +1,78 @@
 package net.querz.mcaselector.io;
 
 import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Predicate;
-
+import java.util.function.ToIntFunction;
+
+/**
+ * An unbounded blocking priority queue for elements whose priority changes over time.
+ * The priority of an element is computed once when it is added and cached in an indexed binary heap,
+ * so taking an element is O(log n). Priorities are updated either for a single element with {@link #update(Object)}
+ * in O(log n) or for all elements at once with {@link #refreshPriorities()} in O(n).
+ * Lower values are taken first, elements with the same priority are taken in the order they were added.
+ */
 public class DynamicPriorityBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
 
-	private Node<E> first;
-	private Node<E> last;
+	private final ToIntFunction<E> priorityFunction;
+
+	private Entry<E>[] heap;
 	private int size;
+	private long sequence;
+	private final Map<E, Entry<E>> entries = new IdentityHashMap<>();
 
 	private final ReentrantLock lock = new ReentrantLock();
 
 	private final Condition notEmpty = lock.newCondition();
 
-	public DynamicPriorityBlockingQueue() {
+	@SuppressWarnings("unchecked")
+	public DynamicPriorityBlockingQueue(ToIntFunction<E> priorityFunction) {
+		this.priorityFunction = priorityFunction;
+		heap = new Entry[64];
+	}
+
+	// recomputes the priorities of all elements and restores the heap in one pass
+	public void refreshPriorities() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			for (int i = 0; i < size; i++) {
+				heap[i].priority = priorityFunction.applyAsInt(heap[i].element);
+			}
+			heapify();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// recomputes the priority of a single element, returns false if the element is not in this queue
+	public boolean update(E e) {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			Entry<E> entry = entries.get(e);
+			if (entry == null) {
+				return false;
+			}
+			entry.priority = priorityFunction.applyAsInt(e);
+			siftUp(entry.index, entry);
+			siftDown(entry.index, entry);
+			return true;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	@Override
@@ -28,7 +80,11 @@ public class DynamicPriorityBlockingQueue<E> extends AbstractQueue<E> implements
 		final ReentrantLock lock = this.lock;
 		lock.lock();
 		try {
-			return new ElementIterator<>(first);
+			List<E> elements = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				elements.add(heap[i].element);
+			}
+			return new SnapshotIterator(elements);
 		} finally {
 			lock.unlock();
 		}
@@ -39,16 +95,49 @@ public class DynamicPriorityBlockingQueue<E> extends AbstractQueue<E> implements
 		final ReentrantLock lock = this.lock;
 		lock.lock();
 		try {
-			boolean removed = false;
-			Iterator<Node<E>> itr = new NodeIterator<>(first);
-			while (itr.hasNext()) {
-				Node<E> node = itr.next();
-				if (filter.test(node.element)) {
-					node.remove();
-					removed = true;
+			int kept = 0;
+			for (int i = 0; i < size; i++) {
+				Entry<E> entry = heap[i];
+				if (filter.test(entry.element)) {
+					entries.remove(entry.element);
+				} else {
+					heap[kept++] = entry;
 				}
 			}
-			return removed;
+			if (kept == size) {
+				return false;
+			}
+			Arrays.fill(heap, kept, size, null);
+			size = kept;
+			heapify();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			Entry<E> entry = entries.get(o);
+			if (entry == null) {
+				return false;
+			}
+			removeAt(entry.index);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return entries.containsKey(o);
 		} finally {
 			lock.unlock();
 		}
@@ -133,17 +222,21 @@ public class DynamicPriorityBlockingQueue<E> extends AbstractQueue<E> implements
 
 	@Override
 	public boolean offer(E e) {
+		if (e == null) {
+			throw new NullPointerException();
+		}
 		final ReentrantLock lock = this.lock;
 		lock.lock();
 		try {
-			if (first == null) {
-				first = new Node<>(e);
-				last = first;
-			} else {
-				last.next = new Node<>(e, last);
-				last = last.next;
+			if (entries.containsKey(e)) {
+				return false;
 			}
-			size++;
+			if (size == heap.length) {
+				heap = Arrays.copyOf(heap, size << 1);
+			}
+			Entry<E> entry = new Entry<>(e, priorityFunction.applyAsInt(e), sequence++);
+			entries.put(e, entry);
+			siftUp(size++, entry);
 			notEmpty.signal();
 		} finally {
 			lock.unlock();
@@ -167,10 +260,36 @@ public class DynamicPriorityBlockingQueue<E> extends AbstractQueue<E> implements
 		final ReentrantLock lock = this.lock;
 		lock.lock();
 		try {
-			if (first == null) {
-				return null;
+			return size == 0 ? null : heap[0].element;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// returns up to n elements in the order they would be taken from this queue, without removing them
+	public List<E> peek(int n) {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			List<E> elements = new ArrayList<>(Math.min(n, size));
+			if (size == 0) {
+				return elements;
 			}
-			return first.element;
+			// the next element is always one of the children of the elements that were already taken
+			PriorityQueue<Entry<E>> candidates = new PriorityQueue<>();
+			candidates.add(heap[0]);
+			while (elements.size() < n && !candidates.isEmpty()) {
+				Entry<E> entry = candidates.poll();
+				elements.add(entry.element);
+				int child = (entry.index << 1) + 1;
+				if (child < size) {
+					candidates.add(heap[child]);
+				}
+				if (child + 1 < size) {
+					candidates.add(heap[child + 1]);
+				}
+			}
+			return elements;
 		} finally {
 			lock.unlock();
 		}
@@ -181,13 +300,8 @@ public class DynamicPriorityBlockingQueue<E> extends AbstractQueue<E> implements
 		final ReentrantLock lock = this.lock;
 		lock.lock();
 		try {
-			Iterator<Node<E>> itr = new NodeIterator<>(first);
-			while (itr.hasNext()) {
-				Node<E> node = itr.next();
-				node.remove();
-			}
-			first = null;
-			last = null;
+			Arrays.fill(heap, 0, size, null);
+			entries.clear();
 			size = 0;
 		} finally {
 			lock.unlock();
@@ -195,109 +309,124 @@ public class DynamicPriorityBlockingQueue<E> extends AbstractQueue<E> implements
 	}
 
 	private E dequeue() {
-		if (first == null) {
+		if (size == 0) {
 			return null;
 		}
+		E result = heap[0].element;
+		removeAt(0);
+		return result;
+	}
 
-		// get element with highest priority
-		Node<E> current = first;
-		Iterator<Node<E>> itr = new NodeIterator<>(first);
-		while (itr.hasNext()) {
-			Node<E> node = itr.next();
-			if (node.compareTo(current) < 0) {
-				current = node;
+	private void removeAt(int index) {
+		Entry<E> removed = heap[index];
+		entries.remove(removed.element);
+		Entry<E> last = heap[--size];
+		heap[size] = null;
+		if (index != size) {
+			siftDown(index, last);
+			if (heap[index] == last) {
+				siftUp(index, last);
 			}
 		}
-		current.remove();
-		return current.element;
 	}
 
-	private class Node<V> implements Comparable<Node<V>> {
-
-		V element;
-		Node<V> next;
-		Node<V> previous;
-
-		Node(V element) {
-			this.element = element;
+	private void heapify() {
+		for (int i = 0; i < size; i++) {
+			heap[i].index = i;
 		}
-
-		Node(V element, Node<V> previous) {
-			this.element = element;
-			this.previous = previous;
+		for (int i = (size >>> 1) - 1; i >= 0; i--) {
+			siftDown(i, heap[i]);
 		}
+	}
 
-		@SuppressWarnings("unchecked")
-		@Override
-		public int compareTo(Node<V> o) {
-			return ((Comparable<V>) element).compareTo(o.element);
+	private void siftUp(int index, Entry<E> entry) {
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			Entry<E> p = heap[parent];
+			if (entry.compareTo(p) >= 0) {
+				break;
+			}
+			heap[index] = p;
+			p.index = index;
+			index = parent;
 		}
+		heap[index] = entry;
+		entry.index = index;
+	}
 
-		@SuppressWarnings("unchecked")
-		public void remove() {
-			if (previous != null) {
-				previous.next = next;
+	private void siftDown(int index, Entry<E> entry) {
+		int half = size >>> 1;
+		while (index < half) {
+			int child = (index << 1) + 1;
+			Entry<E> c = heap[child];
+			int right = child + 1;
+			if (right < size && c.compareTo(heap[right]) > 0) {
+				c = heap[child = right];
 			}
-			if (next != null) {
-				next.previous = previous;
+			if (entry.compareTo(c) <= 0) {
+				break;
 			}
-			if (this == first) {
-				first = (Node<E>) next;
-			}
-			if (this == last) {
-				last = (Node<E>) previous;
-			}
-			next = null;
-			previous = null;
-			size--;
+			heap[index] = c;
+			c.index = index;
+			index = child;
 		}
+		heap[index] = entry;
+		entry.index = index;
 	}
 
-	private class NodeIterator<V> implements Iterator<Node<V>> {
+	private static class Entry<V> implements Comparable<Entry<V>> {
 
-		Node<V> current;
+		final V element;
+		final long sequence;
+		int priority;
+		int index;
 
-		NodeIterator(Node<V> first) {
-			this.current = first;
-		}
-
-		@Override
-		public boolean hasNext() {
-			return current != null;
+		Entry(V element, int priority, long sequence) {
+			this.element = element;
+			this.priority = priority;
+			this.sequence = sequence;
 		}
 
 		@Override
-		public Node<V> next() {
-			if (current == null) {
-				throw new NoSuchElementException();
+		public int compareTo(Entry<V> o) {
+			if (priority == o.priority) {
+				return Long.compare(sequence, o.sequence);
 			}
-			Node<V> n = current;
-			current = current.next;
-			return n;
+			return Integer.compare(priority, o.priority);
 		}
 	}
 
-	private class ElementIterator<V> implements Iterator<V> {
+	// iterates over a snapshot of the elements, removing an element removes it from the queue
+	private class SnapshotIterator implements Iterator<E> {
 
-		Node<V> current;
+		final List<E> elements;
+		int cursor;
+		E last;
 
-		ElementIterator(Node<V> first) {
-			this.current = first;
+		SnapshotIterator(List<E> elements) {
+			this.elements = elements;
 		}
 
 		@Override
 		public boolean hasNext() {
-			return current != null;
+			return cursor < elements.size();
 		}
 
 		@Override
-		public V next() {
-			if (current == null) {
+		public E next() {
+			if (cursor >= elements.size()) {
 				throw new NoSuchElementException();
 			}
-			V e = current.element;
-			current = current.next;
-			return e;
+			return last = elements.get(cursor++);
+		}
+
+		@Override
+		public void remove() {
+			if (last == null) {
+				throw new IllegalStateException();
+			}
+			DynamicPriorityBlockingQueue.this.remove(last);
+			last = null;
 		}
 	}
-}
\ No newline at end of file
+}
@@ -36,22 +36,80 @@ public final class ImageHelper {
 	}
 
 	public static Image scaleDownFXImage(Image before, int newSize) {
-		WritableImage after = new WritableImage(newSize, newSize);
-		PixelReader reader = before.getPixelReader();
-		PixelWriter writer = after.getPixelWriter();
+		int size = (int) before.getWidth();
+		int scaleFactor = size / newSize;
+		if (scaleFactor <= 1) {
+			return before;
+		}
+
+		int[] pixels = new int[size * size];
+		before.getPixelReader().getPixels(0, 0, size, size, PixelFormat.getIntArgbPreInstance(), pixels, 0, size);
+		return createFXImage(scaleDown(pixels, size, scaleFactor), size / scaleFactor);
+	}
 
-		int scaleFactor = (int) (before.getWidth() / after.getWidth());
+	// scales a square image down by an integer factor by averaging all pixels in each factor x factor box.
+	// pixels are premultiplied argb, so transparent pixels don't darken the result.
+	public static int[] scaleDown(int[] pixels, int size, int factor) {
+		int newSize = size / factor;
+		int area = factor * factor;
+		int half = area / 2;
+		int[] after = new int[newSize * newSize];
 
 		for (int y = 0; y < newSize; y++) {
 			for (int x = 0; x < newSize; x++) {
-				int argb = reader.getArgb(x * scaleFactor, y * scaleFactor);
-				writer.setArgb(x, y, argb);
+				int a = 0, r = 0, g = 0, b = 0;
+				for (int by = y * factor; by < y * factor + factor; by++) {
+					int row = by * size;
+					for (int bx = x * factor; bx < x * factor + factor; bx++) {
+						int argb = pixels[row + bx];
+						a += argb >>> 24;
+						r += argb >> 16 & 0xFF;
+						g += argb >> 8 & 0xFF;
+						b += argb & 0xFF;
+					}
+				}
+				after[y * newSize + x] = (a + half) / area << 24 | (r + half) / area << 16 | (g + half) / area << 8 | (b + half) / area;
 			}
 		}
 
 		return after;
 	}
 
+	// creates the images of a full resolution tile image for all zoom levels, in the order of zoomLevels.
+	// each level is scaled down from the level above it, so every pixel of the full image is only read once.
+	public static Image[] createMipmaps(Image full, int[] zoomLevels) {
+		int size = (int) full.getWidth();
+		int maxZoomLevel = 1;
+		for (int zoomLevel : zoomLevels) {
+			maxZoomLevel = Math.max(maxZoomLevel, zoomLevel);
+		}
+
+		Image[] mipmaps = new Image[zoomLevels.length];
+		int[] pixels = null;
+		for (int zoomLevel = 1; zoomLevel <= maxZoomLevel; zoomLevel *= 2) {
+			if (zoomLevel == 2) {
+				pixels = new int[size * size];
+				full.getPixelReader().getPixels(0, 0, size, size, PixelFormat.getIntArgbPreInstance(), pixels, 0, size);
+			}
+			if (zoomLevel > 1) {
+				pixels = scaleDown(pixels, size, 2);
+				size /= 2;
+			}
+			for (int i = 0; i < zoomLevels.length; i++) {
+				if (zoomLevels[i] == zoomLevel) {
+					mipmaps[i] = zoomLevel == 1 ? full : createFXImage(pixels, size);
+				}
+			}
+		}
+		return mipmaps;
+	}
+
+	private static Image createFXImage(int[] pixels, int size) {
+		WritableImage image = new WritableImage(size, size);
+		image.getPixelWriter().setPixels(0, 0, size, size, PixelFormat.getIntArgbPreInstance(), pixels, 0, size);
+		return image;
+	}
+
 	public static Image renderGradient(int width, float min, float max, float low, float high, boolean inverted) {
 		WritableImage image = new WritableImage(width, 50);
 		PixelWriter pixelWriter = image.getPixelWriter();
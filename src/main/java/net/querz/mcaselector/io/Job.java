@@ -21,6 +21,17 @@ public abstract class Job implements Runnable {
 	// can be overwritten by individual jobs when something has to be done when this job is cancelled
 	public void cancel() {}
 
+	// set when a job is cancelled while it is already running, long running jobs check this between chunks
+	private volatile boolean cancelled;
+
+	void requestCancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
 	private boolean done;
 
 	public void done() {
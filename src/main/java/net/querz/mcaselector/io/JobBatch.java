@@ -0,0 +1,41 @@
+package net.querz.mcaselector.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Collects the futures of all jobs that were submitted for one operation, like deleting or importing chunks.
+ * The future of a job completes when the job is done or cancelled, including the data it handed to the save stages.
+ * An operation adds all of its jobs before it returns the batch, so waiting on a batch waits for the whole operation.
+ */
+public class JobBatch {
+
+	private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+	public synchronized void add(CompletableFuture<Void> future) {
+		futures.add(future);
+	}
+
+	public synchronized int size() {
+		return futures.size();
+	}
+
+	// completes when all jobs that were added to this batch until now are done
+	public synchronized CompletableFuture<Void> future() {
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+	}
+
+	public boolean isDone() {
+		return future().isDone();
+	}
+
+	// blocks until all jobs of this batch are done
+	public void await() {
+		future().join();
+	}
+
+	public static JobBatch empty() {
+		return new JobBatch();
+	}
+}
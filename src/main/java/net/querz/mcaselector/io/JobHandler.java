@@ -5,10 +5,13 @@ import net.querz.mcaselector.debug.Debug;
 import net.querz.mcaselector.io.job.ParseDataJob;
 import net.querz.mcaselector.io.job.ProcessDataJob;
 import net.querz.mcaselector.io.job.SaveDataJob;
+import net.querz.mcaselector.io.mca.CompressionPool;
+import net.querz.mcaselector.io.metrics.JobMetrics;
 import net.querz.mcaselector.progress.Timer;
 import net.querz.mcaselector.property.DataProperty;
 import net.querz.mcaselector.validation.ShutdownHooks;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -16,28 +19,62 @@ import java.util.function.Predicate;
 
 public final class JobHandler {
 
-	private static PausableThreadPoolExecutor processExecutor;
+	// process jobs move through the stages decode -> process, save jobs through encode -> write.
+	// reading files happens on the prefetch thread ahead of the decode stage.
+	private static JobStage decodeStage;
 
-	private static PausableThreadPoolExecutor saveExecutor;
+	private static JobStage processStage;
+
+	private static JobStage encodeStage;
+
+	private static JobStage writeStage;
 
 	private static ThreadPoolExecutor parseExecutor;
 
+	private static Thread prefetchThread;
+
+	// reads the files of multiple jobs at once if virtual threads are enabled, null if the prefetch thread reads them itself
+	private static ExecutorService prefetchReaders;
+
+	// jobs whose files are being read by the prefetch readers
+	private static final Set<ProcessDataJob> prefetching = ConcurrentHashMap.newKeySet();
+
+	// with virtual threads, a lot more files can be read at the same time within the prefetch budget
+	private static final int VIRTUAL_PREFETCH_DEPTH = 256;
+
+	private static final Object prefetchLock = new Object();
+
+	// bytes of files that were read ahead of time and have not been used by their job yet
+	private static final AtomicLong prefetchedBytes = new AtomicLong(0);
+
 	private static final AtomicInteger allTasks = new AtomicInteger(0);
 
-	private static final AtomicInteger runningTasks = new AtomicInteger(0);
+	// all jobs that are not done yet, so flushing can wait for their futures
+	private static final Set<WrapperJob> pendingJobs = ConcurrentHashMap.newKeySet();
 
-	private static boolean trimSaveData = true;
+	// the estimated heap memory of all jobs between the decode and the write stage
+	private static final MemoryBudget memoryBudget = new MemoryBudget(() -> Config.getJobMemory() * 1024L * 1024L);
 
-	public static void setTrimSaveData(boolean trimSaveData) {
-		Debug.dump((trimSaveData ? "enabled" : "disabled") + " trimming save data");
-		JobHandler.trimSaveData = trimSaveData;
-	}
+	// the job that is running on the current thread, so save jobs can take over its memory reservation
+	private static final ThreadLocal<WrapperJob> currentJob = new ThreadLocal<>();
 
 	static {
 		init();
-		ShutdownHooks.addShutdownHook(() -> processExecutor.shutdownNow());
-		ShutdownHooks.addShutdownHook(() -> saveExecutor.shutdownNow());
+		ShutdownHooks.addShutdownHook(() -> decodeStage.shutdownNow());
+		ShutdownHooks.addShutdownHook(() -> processStage.shutdownNow());
+		ShutdownHooks.addShutdownHook(() -> encodeStage.shutdownNow());
+		ShutdownHooks.addShutdownHook(() -> writeStage.shutdownNow());
 		ShutdownHooks.addShutdownHook(() -> parseExecutor.shutdownNow());
+		ShutdownHooks.addShutdownHook(() -> prefetchThread.interrupt());
+
+		JobMetrics.registerGauge("queue.decode", () -> decodeStage.getQueue().size());
+		JobMetrics.registerGauge("queue.process", () -> processStage.getQueue().size());
+		JobMetrics.registerGauge("queue.encode", () -> encodeStage.getQueue().size());
+		JobMetrics.registerGauge("queue.write", () -> writeStage.getQueue().size());
+		JobMetrics.registerGauge("queue.parse", () -> parseExecutor.getQueue().size());
+		JobMetrics.registerGauge("jobs.active", allTasks::get);
+		JobMetrics.registerGauge("memory.reserved", memoryBudget::getReserved);
+		JobMetrics.registerGauge("memory.prefetched", prefetchedBytes::get);
 	}
 
 	public static void init() {
@@ -45,92 +82,185 @@ public final class JobHandler {
 
 		clearQueues();
 
-		if (processExecutor != null) {
-			processExecutor.shutdownNow();
+		// stop the stages from the back, so jobs that are handed over while shutting down are cancelled
+		if (writeStage != null) {
+			writeStage.shutdownNow();
+		}
+		if (encodeStage != null) {
+			encodeStage.shutdownNow();
+		}
+		if (processStage != null) {
+			processStage.shutdownNow();
 		}
-		if (saveExecutor != null) {
-			saveExecutor.shutdownNow();
+		if (decodeStage != null) {
+			decodeStage.shutdownNow();
 		}
 		if (parseExecutor != null) {
 			parseExecutor.shutdownNow();
 		}
+		if (prefetchThread != null) {
+			prefetchThread.interrupt();
+		}
+		if (prefetchReaders != null) {
+			prefetchReaders.shutdownNow();
+		}
+
+		// the queue of the first stage holds all jobs that have not been started yet, sorted by priority.
+		// all other queues are bounded, so only a few decoded regions and a few regions waiting to be written are in memory.
+		int queueSize = Math.max(Config.getStageQueueSize(), 1);
+		decodeStage = new JobStage("decode", Config.getDecodeThreads(), new DynamicPriorityBlockingQueue<>(JobHandler::getPriority));
+		processStage = new JobStage("process", Config.getProcessThreads(), new ArrayBlockingQueue<>(Config.getProcessThreads() * queueSize));
+		encodeStage = new JobStage("encode", Config.getEncodeThreads(), new ArrayBlockingQueue<>(Config.getEncodeThreads() * queueSize));
+		writeStage = new JobStage("write", Config.getWriteThreads(), new ArrayBlockingQueue<>(Config.getWriteThreads() * queueSize));
 
-		processExecutor = new PausableThreadPoolExecutor(
-			Config.getProcessThreads(), Config.getProcessThreads(),
+		// overlay jobs are sorted by the same viewport priority as the render jobs in the decode stage
+		int parseThreads = Math.max(Config.getParseThreads(), 1);
+		parseExecutor = new ThreadPoolExecutor(
+			parseThreads, parseThreads,
 			0L, TimeUnit.MILLISECONDS,
-			new DynamicPriorityBlockingQueue<>(),
-			new NamedThreadFactory("processPool"),
-			job -> {
-				int i;
-				if ((i = runningTasks.incrementAndGet()) > Config.getProcessThreads() && !trimSaveData) {
-					processExecutor.pause("pausing process");
+			new DynamicPriorityBlockingQueue<>(JobHandler::getPriority),
+			new NamedThreadFactory("parsePool"));
+		Debug.dumpf("created data parser ThreadPoolExecutor with %d threads", parseThreads);
+
+		prefetchReaders = VirtualThreads.isEnabled() ? VirtualThreads.newExecutor("prefetchPool", 1) : null;
+		prefetchThread = new NamedThreadFactory("prefetchPool").newThread(JobHandler::prefetch);
+		prefetchThread.setDaemon(true);
+		prefetchThread.start();
+		Debug.dumpf("created prefetch thread with a budget of %d MB%s", Config.getPrefetchMemory(), prefetchReaders == null ? "" : " using virtual threads");
+	}
+
+	// reads the files of the next jobs in the decode queue into memory while the decode threads are busy,
+	// as long as the prefetched files that have not been used yet fit into the budget.
+	private static void prefetch() {
+		final DynamicPriorityBlockingQueue<Runnable> queue = (DynamicPriorityBlockingQueue<Runnable>) decodeStage.getQueue();
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				synchronized (prefetchLock) {
+					prefetchLock.wait(100);
 				}
-				Debug.dumpf("+ active jobs: %d (%d queued)", i, processExecutor.getQueue().size());
-			},
-			job -> {
-				if (job.isDone()) {
-					int i = runningTasks.decrementAndGet();
-					Debug.dumpf("- active jobs: %d (%d queued)", i, processExecutor.getQueue().size());
-
-					processExecutor.resume("freed up a task after processing");
+				long budget = Config.getPrefetchMemory() * 1024L * 1024L;
+				if (budget <= 0) {
+					continue;
+				}
+				ExecutorService readers = prefetchReaders;
+				int depth = readers == null ? decodeStage.getThreads() * 4 : VIRTUAL_PREFETCH_DEPTH;
+				for (Runnable r : queue.peek(depth)) {
+					if (!(((WrapperJob) r).job instanceof ProcessDataJob job) || prefetching.contains(job) || job.isPrefetched()) {
+						continue;
+					}
+					long estimate = job.getPrefetchSize();
+					if (prefetchedBytes.get() + estimate > budget) {
+						break;
+					}
+					if (readers == null) {
+						prefetch(job);
+						continue;
+					}
+					// the estimate is reserved until the files have been read
+					prefetchedBytes.addAndGet(estimate);
+					prefetching.add(job);
+					try {
+						readers.execute(() -> {
+							try {
+								prefetch(job);
+							} finally {
+								prefetching.remove(job);
+								releasePrefetchedBytes(estimate);
+							}
+						});
+					} catch (RejectedExecutionException ex) {
+						prefetching.remove(job);
+						prefetchedBytes.addAndGet(-estimate);
+						return;
+					}
 				}
-			});
+			}
+		} catch (InterruptedException ex) {
+			Debug.dump("prefetch thread interrupted");
+		}
+	}
 
-		Debug.dumpf("created data processor ThreadPoolExecutor with %d threads", Config.getProcessThreads());
+	private static void prefetch(ProcessDataJob job) {
+		Timer t = new Timer();
+		long size = job.prefetch();
+		prefetchedBytes.addAndGet(size);
+		if (size > 0) {
+			Debug.dumpf("took %s to prefetch %d bytes for %s", t, size, job.getRegionDirectories().getLocationAsFileName());
+		}
+	}
 
-		saveExecutor = new PausableThreadPoolExecutor(
-			Config.getWriteThreads(), Config.getWriteThreads(),
-			0L, TimeUnit.MILLISECONDS,
-			new LinkedBlockingDeque<>(),
-			new NamedThreadFactory("savePool"),
-			job -> {
-				int i = runningTasks.decrementAndGet();
-				Debug.dumpf("- active jobs: %d (%d queued)", i, processExecutor.getQueue().size());
-				processExecutor.resume("freed up a task after saving");
-			},
-			job -> {});
+	public static void releasePrefetchedBytes(long bytes) {
+		prefetchedBytes.addAndGet(-bytes);
+		synchronized (prefetchLock) {
+			prefetchLock.notifyAll();
+		}
+	}
 
-		Debug.dumpf("created data save ThreadPoolExecutor with %d threads", Config.getWriteThreads());
+	public static long getPrefetchedBytes() {
+		return prefetchedBytes.get();
+	}
 
-		parseExecutor = new ThreadPoolExecutor(
-			1, 1,
-			0L, TimeUnit.MILLISECONDS,
-			new DynamicPriorityBlockingQueue<>(),
-			new NamedThreadFactory("parsePool"));
-		Debug.dumpf("created data parser ThreadPoolExecutor with %d threads", 1);
+	private static int getPriority(Runnable job) {
+		return ((WrapperJob) job).job.getPriority();
 	}
 
-	public static void addJob(ProcessDataJob job) {
-		Debug.dumpf("adding job %s for %s to executor queue", job.getClass().getSimpleName(), job.getRegionDirectories().getLocation());
-		processExecutor.execute(new WrapperJob(job));
+	// the priorities of queued jobs are cached, this needs to be called when the priorities of tiles change
+	public static void refreshPriorities() {
+		Timer t = new Timer();
+		((DynamicPriorityBlockingQueue<Runnable>) decodeStage.getQueue()).refreshPriorities();
+		((DynamicPriorityBlockingQueue<Runnable>) parseExecutor.getQueue()).refreshPriorities();
+		Debug.dumpfToConsoleOnly("took %s to refresh job priorities", t);
 	}
 
-	public static void executeSaveData(SaveDataJob<?> job) {
-		if (runningTasks.get() <= Config.getProcessThreads() + 1) {
-			saveExecutor.execute(new WrapperJob(job));
-		} else {
-			if (!trimSaveData) {
-				processExecutor.pause("waiting for save data");
-				saveExecutor.execute(new WrapperJob(job));
-			} else {
-				int i;
-				if ((i = runningTasks.decrementAndGet()) <= Config.getProcessThreads() + 1) {
-					job.cancel();
-					processExecutor.resume("skipping save data");
-					Debug.dumpf("too many tasks: skipping save data");
-				}
+	// returns a future that completes when the job and the save job it hands its data to are done or cancelled
+	public static CompletableFuture<Void> addJob(ProcessDataJob job) {
+		Debug.dumpf("adding job %s for %s to executor queue", job.getClass().getSimpleName(), job.getRegionDirectories().getLocation());
+		WrapperJob wrapper = new WrapperJob(job, decodeStage);
+		decodeStage.submit(wrapper);
+		synchronized (prefetchLock) {
+			prefetchLock.notifyAll();
+		}
+		return wrapper.future;
+	}
 
-				Debug.dumpf("- active jobs: %d (%d queued)", i, processExecutor.getQueue().size());
-			}
+	// blocks the calling process thread while the encode stage is full.
+	// save jobs that can be skipped are cancelled instead, so they don't hold up loading and processing.
+	public static CompletableFuture<Void> executeSaveData(SaveDataJob<?> job) {
+		WrapperJob wrapper = new WrapperJob(job, encodeStage);
+		WrapperJob parent = currentJob.get();
+		if (parent != null) {
+			wrapper.reserved = parent.reserved;
+			parent.reserved = 0;
+			parent.saveJob = wrapper;
+		}
+		if (!job.canSkip()) {
+			encodeStage.submit(wrapper);
+		} else if (!encodeStage.trySubmit(wrapper)) {
+			Debug.dumpf("encode queue is full: skipping save data for %s", job.getRegionDirectories().getLocationAsFileName());
+			wrapper.cancel();
 		}
+		return wrapper.future;
 	}
 
-	public static void executeParseData(ParseDataJob job) {
-		parseExecutor.execute(new WrapperJob(job));
+	public static CompletableFuture<Void> executeParseData(ParseDataJob job) {
+		WrapperJob wrapper = new WrapperJob(job, null);
+		try {
+			parseExecutor.execute(wrapper);
+		} catch (RejectedExecutionException ex) {
+			wrapper.cancel();
+		}
+		return wrapper.future;
 	}
 
 	public static void validateJobs(Predicate<ProcessDataJob> p) {
-		processExecutor.getQueue().removeIf(r -> {
+		decodeStage.getQueue().removeIf(r -> {
+			if (p.test((ProcessDataJob) ((WrapperJob) r).job)) {
+				((WrapperJob) r).cancel();
+				return true;
+			}
+			return false;
+		});
+		processStage.getQueue().removeIf(r -> {
 			if (p.test((ProcessDataJob) ((WrapperJob) r).job)) {
 				((WrapperJob) r).cancel();
 				return true;
@@ -147,12 +277,16 @@ public final class JobHandler {
 	}
 
 	public static void clearQueues() {
-		int cancelledProcessJobs = cancelExecutorQueue(processExecutor);
-		int cancelledSaveJobs = cancelExecutorQueue(saveExecutor);
-		int cancelledParseJobs = cancelExecutorQueue(parseExecutor);
+		int cancelledDecodeJobs = cancelQueue(decodeStage == null ? null : decodeStage.getQueue());
+		int cancelledProcessJobs = cancelQueue(processStage == null ? null : processStage.getQueue());
+		int cancelledEncodeJobs = cancelQueue(encodeStage == null ? null : encodeStage.getQueue());
+		int cancelledWriteJobs = cancelQueue(writeStage == null ? null : writeStage.getQueue());
+		int cancelledParseJobs = cancelQueue(parseExecutor == null ? null : parseExecutor.getQueue());
 
+		Debug.dumpf("cancelled %d jobs in decode queue", cancelledDecodeJobs);
 		Debug.dumpf("cancelled %d jobs in process queue", cancelledProcessJobs);
-		Debug.dumpf("cancelled %d jobs in save queue", cancelledSaveJobs);
+		Debug.dumpf("cancelled %d jobs in encode queue", cancelledEncodeJobs);
+		Debug.dumpf("cancelled %d jobs in write queue", cancelledWriteJobs);
 		Debug.dumpf("cancelled %d jobs in parser queue", cancelledParseJobs);
 	}
 
@@ -167,11 +301,11 @@ public final class JobHandler {
 		}
 	}
 
-	private static int cancelExecutorQueue(ThreadPoolExecutor executor) {
+	private static int cancelQueue(BlockingQueue<Runnable> queue) {
 		DataProperty<Integer> cancelled = new DataProperty<>(0);
-		if (executor != null) {
-			synchronized (executor.getQueue()) {
-				executor.getQueue().removeIf(j -> {
+		if (queue != null) {
+			synchronized (queue) {
+				queue.removeIf(j -> {
 					((WrapperJob) j).cancel();
 					cancelled.set(cancelled.get() + 1);
 					return true;
@@ -192,15 +326,23 @@ public final class JobHandler {
 	public static void cancelAllJobsAndFlush() {
 		Timer t = new Timer();
 		clearQueues();
+		// jobs that are already running stop at the next chunk
+		for (WrapperJob job : pendingJobs) {
+			job.job.requestCancel();
+		}
 		flushExecutor();
 		clearQueues();
 		flushExecutor();
 		Debug.dumpf("took %s to cancel and flush all executors", t);
+		Debug.dumpf("compression pool: %s", CompressionPool.getStats());
 	}
 
+	// blocks until all jobs are done. jobs that are still running can submit save jobs, so this waits
+	// until no new jobs have been added while waiting.
 	private static void flushExecutor() {
-		while (allTasks.get() > 0) {
-			Thread.onSpinWait();
+		while (!pendingJobs.isEmpty()) {
+			CompletableFuture<?>[] futures = pendingJobs.stream().map(j -> j.future).toArray(CompletableFuture[]::new);
+			CompletableFuture.allOf(futures).join();
 		}
 	}
 
@@ -208,52 +350,149 @@ public final class JobHandler {
 		return allTasks.get();
 	}
 
+	// the number of regions that are waiting to be decoded or processed
+	public static int getQueuedRegions() {
+		return decodeStage.getQueue().size() + processStage.getQueue().size();
+	}
+
+	public static long getReservedMemory() {
+		return memoryBudget.getReserved();
+	}
+
+	public static long getMemoryBudget() {
+		return memoryBudget.getBudget();
+	}
+
 	private static final AtomicLong jobIDCounter = new AtomicLong(0);
 
 	public static void dumpMetrics() {
-		Queue<Runnable> queue = processExecutor.getQueue();
+		Queue<Runnable> queue = decodeStage.getQueue();
 
 		for (Runnable r : queue) {
 			Debug.dump(r);
 		}
+
+		Debug.dump(decodeStage);
+		Debug.dump(processStage);
+		Debug.dump(encodeStage);
+		Debug.dump(writeStage);
+		Debug.dumpf("reserved memory: %d of %d bytes, used heap: %d bytes", getReservedMemory(), getMemoryBudget(), Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
+
+		Debug.dumpf("compression pool: %s", CompressionPool.getStats());
+		Debug.dump(JobMetrics.toJSON().toString(2));
 	}
 
 	static class WrapperJob implements Runnable, Comparable<WrapperJob> {
 
 		Job job;
 		long jobID;
+		// the stage this job runs on next, null if it doesn't run in the pipeline
+		JobStage stage;
+		// the memory that was reserved for this job in the memory budget
+		long reserved;
+		// the save job this job handed its data to, if any
+		WrapperJob saveJob;
 		boolean done = false;
 		final static Object lock = new Object();
+		final CompletableFuture<Void> future = new CompletableFuture<>();
 
-		WrapperJob(Job job) {
+		WrapperJob(Job job, JobStage stage) {
 			jobID = jobIDCounter.incrementAndGet();
 			allTasks.incrementAndGet();
+			pendingJobs.add(this);
 			this.job = job;
+			this.stage = stage;
 		}
 
 		@Override
 		public void run() {
+			JobStage next = null;
+			currentJob.set(this);
 			try {
-				job.run();
+				next = runStage();
 			} finally {
-				synchronized (lock) {
-					if (!done) {
-						allTasks.decrementAndGet();
-					}
-					done = true;
+				currentJob.remove();
+				if (next == null) {
+					finish();
 				}
 			}
+			if (next != null) {
+				stage = next;
+				next.submit(this);
+			}
+		}
+
+		// runs the part of the job that belongs to the current stage and returns the stage it continues on
+		private JobStage runStage() {
+			// a job that was cancelled between two stages doesn't need to run the next one, save jobs still need to write their data
+			if (job.isCancelled() && !(job instanceof SaveDataJob)) {
+				job.cancel();
+				return null;
+			}
+			if (stage == decodeStage) {
+				ProcessDataJob processJob = (ProcessDataJob) job;
+				try {
+					memoryBudget.reserve(processJob.estimateMemory());
+					reserved = processJob.estimateMemory();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					job.cancel();
+					return null;
+				}
+				Timer t = new Timer();
+				boolean decoded = processJob.decode();
+				JobMetrics.record(getJobType(), JobMetrics.Phase.DECODE, t.getNano());
+				return decoded ? processStage : null;
+			} else if (stage == encodeStage) {
+				Timer t = new Timer();
+				((SaveDataJob<?>) job).encode();
+				JobMetrics.record(getJobType(), JobMetrics.Phase.ENCODE, t.getNano());
+				return writeStage;
+			}
+			Timer t = new Timer();
+			job.run();
+			JobMetrics.record(getJobType(), stage == writeStage ? JobMetrics.Phase.WRITE : JobMetrics.Phase.PROCESS, t.getNano());
+			return null;
+		}
+
+		private String getJobType() {
+			String name = job.getClass().getSimpleName();
+			return name.isEmpty() ? job.getClass().getName() : name;
 		}
 
 		public void cancel() {
 			try {
 				job.cancel();
 			} finally {
-				synchronized (lock) {
-					if (!done) {
-						allTasks.decrementAndGet();
-					}
-					done = true;
+				finish();
+			}
+		}
+
+		private void finish() {
+			releasePrefetched();
+			synchronized (lock) {
+				if (done) {
+					return;
+				}
+				allTasks.decrementAndGet();
+				memoryBudget.release(reserved);
+				reserved = 0;
+				done = true;
+			}
+			pendingJobs.remove(this);
+			// the save job was added to the pending jobs before this job was removed, so flushing can't miss it
+			if (saveJob == null) {
+				future.complete(null);
+			} else {
+				saveJob.future.whenComplete((r, ex) -> future.complete(null));
+			}
+		}
+
+		private void releasePrefetched() {
+			if (job instanceof ProcessDataJob) {
+				long unused = ((ProcessDataJob) job).releasePrefetched();
+				if (unused > 0) {
+					releasePrefetchedBytes(unused);
 				}
 			}
 		}
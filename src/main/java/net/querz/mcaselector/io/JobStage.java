@@ -0,0 +1,70 @@
+package net.querz.mcaselector.io;
+
+import net.querz.mcaselector.debug.Debug;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A stage of the job pipeline: a fixed number of threads that take jobs from their own queue.
+ * If the queue is bounded, handing a job to a stage with a full queue blocks until a thread of that stage
+ * takes the next job, so a slow stage slows down the stages in front of it instead of piling up data in memory.
+ */
+class JobStage {
+
+	private final String name;
+	private final ThreadPoolExecutor executor;
+
+	JobStage(String name, int threads, BlockingQueue<Runnable> queue) {
+		this.name = name;
+		executor = new ThreadPoolExecutor(
+			threads, threads,
+			0L, TimeUnit.MILLISECONDS,
+			queue,
+			new NamedThreadFactory(name + "Pool"));
+		// jobs are put into the queue directly, so all threads need to be running already
+		executor.prestartAllCoreThreads();
+		Debug.dumpf("created %s stage with %d threads and a queue capacity of %s", name, threads, queue.remainingCapacity() == Integer.MAX_VALUE ? "unbounded" : queue.remainingCapacity());
+	}
+
+	// blocks until there is space in the queue of this stage. the job is cancelled if this stage was shut down.
+	void submit(JobHandler.WrapperJob job) {
+		try {
+			while (!executor.isShutdown()) {
+				if (executor.getQueue().offer(job, 100, TimeUnit.MILLISECONDS)) {
+					return;
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		Debug.dumpf("%s stage is shut down, cancelling %s", name, job);
+		job.cancel();
+	}
+
+	// returns false without blocking if the queue of this stage is full
+	boolean trySubmit(JobHandler.WrapperJob job) {
+		return !executor.isShutdown() && executor.getQueue().offer(job);
+	}
+
+	BlockingQueue<Runnable> getQueue() {
+		return executor.getQueue();
+	}
+
+	int getThreads() {
+		return executor.getCorePoolSize();
+	}
+
+	void shutdownNow() {
+		List<Runnable> queued = executor.shutdownNow();
+		for (Runnable r : queued) {
+			((JobHandler.WrapperJob) r).cancel();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d active, %d queued", name, executor.getActiveCount(), executor.getQueue().size());
+	}
+}
@@ -0,0 +1,99 @@
+package net.querz.mcaselector.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link DataPointer} backed by a read-only memory mapping of a file.
+ * Mapping a file does not read it; the OS only pages in the sectors that are actually accessed,
+ * so reading the header and a few chunks of a region file touches only a few pages instead of the entire file.
+ * The mapping stays valid after the channel is closed and is released when this pointer is garbage collected.
+ */
+public class MappedFilePointer extends DataPointer {
+
+	// windows locks mapped files until the mapping is garbage collected, which would prevent us from replacing
+	// or deleting a region file right after reading it.
+	private static final boolean SUPPORTED = !System.getProperty("os.name").toLowerCase().contains("windows");
+
+	private final MappedByteBuffer buffer;
+	private final int length;
+	private int pointer = 0;
+
+	private MappedFilePointer(MappedByteBuffer buffer) {
+		this.buffer = buffer;
+		this.length = buffer.capacity();
+	}
+
+	public static boolean isSupported() {
+		return SUPPORTED;
+	}
+
+	// reads all pages of the file into memory, so later reads don't have to wait for the disk
+	public void load() {
+		buffer.load();
+	}
+
+	public static MappedFilePointer map(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("file " + file + " is too large to be mapped (" + size + " bytes)");
+			}
+			return new MappedFilePointer(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		}
+	}
+
+	@Override
+	public void seek(long pointer) {
+		this.pointer = (int) pointer;
+	}
+
+	@Override
+	public long getPosition() {
+		return pointer;
+	}
+
+	@Override
+	public long length() {
+		return length;
+	}
+
+	@Override
+	public byte readByte() throws IndexOutOfBoundsException {
+		return buffer.get(pointer++);
+	}
+
+	@Override
+	public int readInt() throws IndexOutOfBoundsException {
+		int i = buffer.getInt(pointer);
+		pointer += 4;
+		return i;
+	}
+
+	@Override
+	public int read() throws IOException {
+		try {
+			return buffer.get(pointer++) & 0xFF;
+		} catch (IndexOutOfBoundsException ex) {
+			// rethrow as IOException, because InputStream treats it as EOF when reading into byte[]
+			throw new IOException(ex);
+		}
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (pointer >= length || pointer < 0) {
+			throw new IOException(new IndexOutOfBoundsException(pointer));
+		}
+		int n = Math.min(len, length - pointer);
+		buffer.get(pointer, b, off, n);
+		pointer += n;
+		return n;
+	}
+}
@@ -0,0 +1,43 @@
+package net.querz.mcaselector.io;
+
+import net.querz.mcaselector.debug.Debug;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the estimated heap memory of all jobs that are in flight.
+ * A job reserves its estimated size before its data is decoded and releases it when it is done,
+ * which for jobs that save data is after the data was written.
+ * A job is always admitted if nothing else is reserved, so a job that is larger than the budget can't block forever.
+ */
+class MemoryBudget {
+
+	private final LongSupplier budget;
+	private long reserved;
+
+	MemoryBudget(LongSupplier budget) {
+		this.budget = budget;
+	}
+
+	// blocks until the bytes fit into the budget
+	synchronized void reserve(long bytes) throws InterruptedException {
+		long max;
+		while (reserved > 0 && (max = budget.getAsLong()) > 0 && reserved + bytes > max) {
+			Debug.dumpf("waiting for %d bytes of memory, %d of %d bytes reserved", bytes, reserved, max);
+			wait();
+		}
+		reserved += bytes;
+	}
+
+	synchronized void release(long bytes) {
+		reserved -= bytes;
+		notifyAll();
+	}
+
+	synchronized long getReserved() {
+		return reserved;
+	}
+
+	long getBudget() {
+		return budget.getAsLong();
+	}
+}
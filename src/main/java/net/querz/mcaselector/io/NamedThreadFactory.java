@@ -1,5 +1,6 @@
 package net.querz.mcaselector.io;
 
+import net.querz.mcaselector.io.mca.CompressionPool;
 import java.util.concurrent.ThreadFactory;
 
 public class NamedThreadFactory implements ThreadFactory {
@@ -13,6 +14,13 @@ public class NamedThreadFactory implements ThreadFactory {
 
 	@Override
 	public Thread newThread(Runnable r) {
-		return new Thread(r, name + "-thread-" + count++);
+		// free the native zlib contexts of this thread as soon as it terminates
+		return new Thread(() -> {
+			try {
+				r.run();
+			} finally {
+				CompressionPool.release();
+			}
+		}, name + "-thread-" + count++);
 	}
 }
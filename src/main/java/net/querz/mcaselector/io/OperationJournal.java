@@ -0,0 +1,203 @@
+package net.querz.mcaselector.io;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.querz.mcaselector.debug.Debug;
+import net.querz.mcaselector.point.Point2i;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records the regions that an operation has completed, so the operation can be resumed after it was killed.
+ * The journal starts with a header that identifies the operation, followed by the location of every completed
+ * region as a long. The files of a region are forced to disk before its location is appended and forced as well,
+ * so every region in the journal has been written completely. A torn last entry is dropped when the journal is opened.
+ */
+public class OperationJournal implements Closeable {
+
+	private static final int MAGIC = 0x4D43414A;
+	private static final int VERSION = 1;
+
+	// temp files created while a journal is open start with its prefix, so a resumed operation only deletes its own
+	// temp files and not those of other instances that write to the same directories
+	private static volatile String tempFilePrefix;
+
+	private static final OperationJournal DISABLED = new OperationJournal(null, null, 0, new LongOpenHashSet(0), 0);
+
+	private final File file;
+	private final FileChannel channel;
+	private final LongOpenHashSet completed;
+	private final String prefix;
+	private long position;
+
+	private OperationJournal(File file, FileChannel channel, long created, LongOpenHashSet completed, long position) {
+		this.file = file;
+		this.channel = channel;
+		this.completed = completed;
+		this.position = position;
+		// the prefix stays the same when the operation is resumed
+		this.prefix = file == null ? null : String.format("mcaselector-%x-%x-", created, file.getAbsolutePath().hashCode());
+		if (channel != null) {
+			tempFilePrefix = prefix;
+		}
+	}
+
+	// opens the journal for the operation. if resume is false or the journal doesn't exist yet, a new journal is started.
+	public static OperationJournal open(File file, String operation, boolean resume) throws IOException {
+		if (resume && file.exists()) {
+			byte[] data = Files.readAllBytes(file.toPath());
+			ByteBuffer buf = ByteBuffer.wrap(data);
+			if (data.length < 18 || buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+				throw new IOException("invalid journal " + file);
+			}
+			long created = buf.getLong();
+			int length = buf.getShort() & 0xFFFF;
+			if (buf.remaining() < length) {
+				throw new IOException("invalid journal " + file);
+			}
+			String journalOperation = new String(data, buf.position(), length, StandardCharsets.UTF_8);
+			if (!journalOperation.equals(operation)) {
+				throw new IOException("journal " + file + " was written by a different operation: " + journalOperation);
+			}
+			buf.position(buf.position() + length);
+
+			LongOpenHashSet completed = new LongOpenHashSet(buf.remaining() / 8);
+			while (buf.remaining() >= 8) {
+				completed.add(buf.getLong());
+			}
+
+			FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+			// drop an entry that was only partially written
+			long position = buf.position();
+			channel.truncate(position);
+			channel.force(true);
+			return new OperationJournal(file, channel, created, completed, position);
+		}
+
+		byte[] op = operation.getBytes(StandardCharsets.UTF_8);
+		long created = System.currentTimeMillis();
+		ByteBuffer header = ByteBuffer.allocate(18 + op.length);
+		header.putInt(MAGIC).putInt(VERSION).putLong(created).putShort((short) op.length).put(op).flip();
+
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		while (header.hasRemaining()) {
+			channel.write(header);
+		}
+		channel.force(true);
+		return new OperationJournal(file, channel, created, new LongOpenHashSet(), header.limit());
+	}
+
+	// a journal that doesn't record anything, for operations that can't be resumed
+	public static OperationJournal disabled() {
+		return DISABLED;
+	}
+
+	public synchronized boolean isCompleted(Point2i region) {
+		return completed.contains(region.asLong());
+	}
+
+	public synchronized int size() {
+		return completed.size();
+	}
+
+	// forces the files of the region to disk and records it as completed.
+	// if this fails, the region is processed again when the operation is resumed.
+	public void complete(RegionDirectories dirs) {
+		if (channel == null) {
+			return;
+		}
+		try {
+			force(dirs.getRegion());
+			force(dirs.getPoi());
+			force(dirs.getEntities());
+
+			synchronized (this) {
+				ByteBuffer entry = ByteBuffer.allocate(8);
+				entry.putLong(dirs.getLocation().asLong()).flip();
+				while (entry.hasRemaining()) {
+					position += channel.write(entry, position);
+				}
+				channel.force(false);
+				completed.add(dirs.getLocation().asLong());
+			}
+		} catch (IOException ex) {
+			Debug.dumpException("failed to record " + dirs.getLocationAsFileName() + " in journal " + file, ex);
+		}
+	}
+
+	private static void force(File file) throws IOException {
+		if (file == null || !file.exists()) {
+			return;
+		}
+		try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+			fc.force(true);
+		}
+	}
+
+	// creates a temp file like File.createTempFile(), with the prefix of the open journal if there is one
+	public static File createTempFile(String name, File dir) throws IOException {
+		String prefix = tempFilePrefix;
+		return File.createTempFile(prefix == null ? name : prefix + name, null, dir);
+	}
+
+	// deletes the temp files of this operation in the temp directory and in dirs that were left behind when it was killed
+	public int deleteStaleTempFiles(File... dirs) {
+		if (channel == null) {
+			return 0;
+		}
+		int deleted = 0;
+		deleted += deleteStaleTempFiles(new File(System.getProperty("java.io.tmpdir")));
+		for (File dir : dirs) {
+			if (dir != null) {
+				deleted += deleteStaleTempFiles(dir);
+			}
+		}
+		return deleted;
+	}
+
+	private int deleteStaleTempFiles(File dir) {
+		File[] files = dir.listFiles((d, name) -> name.startsWith(prefix) && name.endsWith(".tmp"));
+		if (files == null) {
+			return 0;
+		}
+		int deleted = 0;
+		for (File f : files) {
+			if (f.delete()) {
+				Debug.dumpf("deleted stale temp file %s", f);
+				deleted++;
+			}
+		}
+		return deleted;
+	}
+
+	// closes and deletes the journal once the operation has finished
+	public void delete() {
+		if (channel == null) {
+			return;
+		}
+		close();
+		if (!file.delete()) {
+			Debug.errorf("failed to delete journal %s", file);
+		}
+	}
+
+	@Override
+	public void close() {
+		if (channel == null) {
+			return;
+		}
+		if (prefix.equals(tempFilePrefix)) {
+			tempFilePrefix = null;
+		}
+		try {
+			channel.close();
+		} catch (IOException ex) {
+			Debug.dumpException("failed to close journal " + file, ex);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package net.querz.mcaselector.io;
+
+import net.querz.mcaselector.Config;
+import net.querz.mcaselector.debug.Debug;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates executors that start a new virtual thread for every task, for work that mostly waits for I/O.
+ * Virtual threads only exist on Java 21 and newer, so they are looked up with reflection.
+ * On older versions, or if they are disabled in the config, a fixed pool of platform threads is used instead.
+ */
+public final class VirtualThreads {
+
+	private static final Method ofVirtual;
+	private static final Method builderName;
+	private static final Method builderFactory;
+	private static final Method newThreadPerTaskExecutor;
+
+	static {
+		Method ov = null, bn = null, bf = null, ntpte = null;
+		try {
+			ov = Thread.class.getMethod("ofVirtual");
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			bn = builder.getMethod("name", String.class, long.class);
+			bf = builder.getMethod("factory");
+			ntpte = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+		} catch (ReflectiveOperationException ex) {
+			Debug.dumpf("virtual threads are not supported by java %s", System.getProperty("java.version"));
+			ov = bn = bf = ntpte = null;
+		}
+		ofVirtual = ov;
+		builderName = bn;
+		builderFactory = bf;
+		newThreadPerTaskExecutor = ntpte;
+	}
+
+	private VirtualThreads() {}
+
+	public static boolean isSupported() {
+		return ofVirtual != null;
+	}
+
+	public static boolean isEnabled() {
+		return Config.useVirtualThreads() && isSupported();
+	}
+
+	// returns an executor that runs every task on a new virtual thread if virtual threads are enabled,
+	// or an executor with the given number of platform threads otherwise
+	public static ExecutorService newExecutor(String name, int platformThreads) {
+		if (isEnabled()) {
+			try {
+				Object builder = builderName.invoke(ofVirtual.invoke(null), name + "-virtual-", 0L);
+				ThreadFactory factory = (ThreadFactory) builderFactory.invoke(builder);
+				Debug.dumpf("created virtual thread per task executor %s", name);
+				return (ExecutorService) newThreadPerTaskExecutor.invoke(null, factory);
+			} catch (ReflectiveOperationException ex) {
+				Debug.dumpException("failed to create virtual thread executor " + name + ", falling back to platform threads", ex);
+			}
+		}
+		return new ThreadPoolExecutor(
+			platformThreads, platformThreads,
+			0L, TimeUnit.MILLISECONDS,
+			new LinkedBlockingQueue<>(),
+			new NamedThreadFactory(name));
+	}
+}
@@ -18,12 +18,16 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 public final class CacheDBController {
 
 	private volatile Connection connection;
+	// completed when a connection was opened, replaced when it is closed
+	private volatile CompletableFuture<Connection> connectionOpened = new CompletableFuture<>();
 	private String dbPath;
 	private ShutdownHooks.ShutdownJob closeShutdownHook;
 	private List<String> allTables;
@@ -80,6 +84,22 @@ public final class CacheDBController {
 		addCloseShutdownHook();
 
 		initTables(parsers);
+		connectionOpened.complete(connection);
+	}
+
+	// blocks until a connection was opened
+	private void awaitConnection() throws SQLException {
+		if (connection != null) {
+			return;
+		}
+		try {
+			connectionOpened.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("interrupted while waiting for cache db connection", ex);
+		} catch (ExecutionException ex) {
+			throw new SQLException("failed to open cache db connection", ex.getCause());
+		}
 	}
 
 	public void initTables(List<OverlayParser> parsers) throws SQLException {
@@ -95,6 +115,12 @@ public final class CacheDBController {
 			"p BIGINT PRIMARY KEY, " +
 			"t BIGINT);");
 
+		statement.executeUpdate("CREATE TABLE IF NOT EXISTS chunk_times (" +
+			"p BIGINT, " +
+			"z INT, " +
+			"d BLOB, " +
+			"PRIMARY KEY (p, z));");
+
 		allTables = new ArrayList<>();
 		ResultSet result = statement.executeQuery("SELECT name FROM sqlite_master WHERE type='table';");
 		while (result.next()) {
@@ -112,6 +138,7 @@ public final class CacheDBController {
 			}
 			dbPath = null;
 			connection = null;
+			connectionOpened = new CompletableFuture<>();
 		}
 	}
 
@@ -139,9 +166,7 @@ public final class CacheDBController {
 	}
 
 	public long getFileTime(Point2i region) throws SQLException {
-		while (connection == null) {
-			Thread.onSpinWait();
-		}
+		awaitConnection();
 		Statement statement = connection.createStatement();
 		ResultSet result = statement.executeQuery(String.format("SELECT t FROM file_times WHERE p=%s;", region.asLong()));
 		if (!result.next()) {
@@ -151,9 +176,7 @@ public final class CacheDBController {
 	}
 
 	public void setFileTime(Point2i region, long time) throws SQLException {
-		while (connection == null) {
-			Thread.onSpinWait();
-		}
+		awaitConnection();
 		PreparedStatement ps = connection.prepareStatement(
 			"INSERT INTO file_times (p, t) " +
 				"VALUES (?, ?) " +
@@ -166,6 +189,49 @@ public final class CacheDBController {
 		ps.executeBatch();
 	}
 
+	// the chunk timestamps from the region header at the time the cached image for this zoom level was rendered
+	public int[] getChunkTimes(Point2i region, int zoomLevel) throws IOException, SQLException {
+		awaitConnection();
+		Statement statement = connection.createStatement();
+		ResultSet result = statement.executeQuery(String.format("SELECT d FROM chunk_times WHERE p=%s AND z=%d;", region.asLong(), zoomLevel));
+		if (!result.next()) {
+			return null;
+		}
+		int[] times = new int[1024];
+		try (DataInputStream dis = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(result.getBytes(1))))) {
+			for (int i = 0; i < 1024; i++) {
+				times[i] = dis.readInt();
+			}
+		}
+		return times;
+	}
+
+	// chunk times are only needed to update images shown in the ui, so they are not recorded without an open cache db
+	public void setChunkTimes(Point2i region, int zoomLevel, int[] times) throws IOException, SQLException {
+		Connection connection = this.connection;
+		if (connection == null) {
+			return;
+		}
+		PreparedStatement ps = connection.prepareStatement(
+			"INSERT INTO chunk_times (p, z, d) " +
+				"VALUES (?, ?, ?) " +
+				"ON CONFLICT(p, z) DO UPDATE " +
+				"SET d=?;");
+		ps.setLong(1, region.asLong());
+		ps.setInt(2, zoomLevel);
+		ByteArrayOutputStream baos;
+		try (DataOutputStream dos = new DataOutputStream(new GZIPOutputStream(baos = new ByteArrayOutputStream()))) {
+			for (int i = 0; i < 1024; i++) {
+				dos.writeInt(times[i]);
+			}
+		}
+		byte[] gzipped = baos.toByteArray();
+		ps.setBytes(3, gzipped);
+		ps.setBytes(4, gzipped);
+		ps.addBatch();
+		ps.executeBatch();
+	}
+
 	public int[] getData(OverlayParser parser, Point2i region) throws IOException, SQLException {
 		Statement statement = connection.createStatement();
 		ResultSet result = statement.executeQuery(String.format(
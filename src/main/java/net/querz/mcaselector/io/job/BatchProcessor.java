@@ -0,0 +1,302 @@
+package net.querz.mcaselector.io.job;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import javafx.scene.image.Image;
+import net.querz.mcaselector.Config;
+import net.querz.mcaselector.changer.Field;
+import net.querz.mcaselector.debug.Debug;
+import net.querz.mcaselector.filter.GroupFilter;
+import net.querz.mcaselector.io.DataPointer;
+import net.querz.mcaselector.io.FileHelper;
+import net.querz.mcaselector.io.ImageHelper;
+import net.querz.mcaselector.io.JobBatch;
+import net.querz.mcaselector.io.JobHandler;
+import net.querz.mcaselector.io.RegionDirectories;
+import net.querz.mcaselector.io.SelectionData;
+import net.querz.mcaselector.io.WorldDirectories;
+import net.querz.mcaselector.io.mca.Region;
+import net.querz.mcaselector.point.Point2i;
+import net.querz.mcaselector.progress.Progress;
+import net.querz.mcaselector.progress.Timer;
+import net.querz.mcaselector.text.Translation;
+import net.querz.mcaselector.tiles.Tile;
+import net.querz.mcaselector.tiles.TileImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Runs a list of operations on every region in one pass. Every region is read and decoded once, all operations are
+ * applied in order to the same data and the region is written at most once afterwards, together with its cache images.
+ */
+public final class BatchProcessor {
+
+	private BatchProcessor() {}
+
+	public enum Type {
+		SELECT, CHANGE, DELETE, CACHE
+	}
+
+	public static class Operation {
+
+		private final Type type;
+		private GroupFilter filter;
+		private int radius;
+		private Consumer<Long2ObjectOpenHashMap<LongOpenHashSet>> callback;
+		private List<Field<?>> fields;
+		private boolean force;
+		private int[] zoomLevels;
+
+		private Operation(Type type) {
+			this.type = type;
+		}
+
+		public static Operation select(GroupFilter filter, int radius, Consumer<Long2ObjectOpenHashMap<LongOpenHashSet>> callback) {
+			Operation op = new Operation(Type.SELECT);
+			op.filter = filter;
+			op.radius = radius;
+			op.callback = callback;
+			return op;
+		}
+
+		public static Operation change(List<Field<?>> fields, boolean force) {
+			Operation op = new Operation(Type.CHANGE);
+			op.fields = fields;
+			op.force = force;
+			return op;
+		}
+
+		public static Operation delete(GroupFilter filter) {
+			Operation op = new Operation(Type.DELETE);
+			op.filter = filter;
+			return op;
+		}
+
+		// renders the region at every zoom level, the images are written to Config.getCacheDir()
+		public static Operation cache(int... zoomLevels) {
+			Operation op = new Operation(Type.CACHE);
+			op.zoomLevels = zoomLevels;
+			return op;
+		}
+
+		public Type getType() {
+			return type;
+		}
+
+		@Override
+		public String toString() {
+			return type.name().toLowerCase();
+		}
+	}
+
+	public static JobBatch processBatch(List<Operation> operations, SelectionData selection, Progress progressChannel, boolean headless) {
+		WorldDirectories wd = Config.getWorldDirs();
+		RegionDirectories[] rd = wd.listRegions(selection);
+		if (rd == null || rd.length == 0) {
+			if (headless) {
+				progressChannel.done("no files");
+			} else {
+				progressChannel.done(Translation.DIALOG_PROGRESS_NO_FILES.toString());
+			}
+			return JobBatch.empty();
+		}
+
+		JobHandler.clearQueues();
+
+		progressChannel.setMax(rd.length);
+		progressChannel.updateProgress(rd[0].getLocationAsFileName(), 0);
+
+		JobBatch batch = new JobBatch();
+		for (RegionDirectories r : rd) {
+			batch.add(JobHandler.addJob(new BatchProcessJob(r, operations, selection, progressChannel)));
+		}
+		return batch;
+	}
+
+	private static class BatchProcessJob extends ProcessDataJob {
+
+		private final Progress progressChannel;
+		private final List<Operation> operations;
+		private final SelectionData selection;
+		private Region region;
+
+		private BatchProcessJob(RegionDirectories dirs, List<Operation> operations, SelectionData selection, Progress progressChannel) {
+			super(dirs, PRIORITY_LOW);
+			this.operations = operations;
+			this.selection = selection;
+			this.progressChannel = progressChannel;
+		}
+
+		@Override
+		public boolean decode() {
+			if (selection != null && !selection.isRegionSelected(getRegionDirectories().getLocation())) {
+				Debug.dumpf("%s is not selected, skipping batch", getRegionDirectories().getLocationAsFileName());
+				progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
+				return false;
+			}
+
+			// all data is loaded, so every operation can work on the same region
+			DataPointer regionData = loadRegion();
+			DataPointer poiData = loadPoi();
+			DataPointer entitiesData = loadEntities();
+
+			if (regionData == null && poiData == null && entitiesData == null) {
+				Debug.errorf("failed to load any data from %s", getRegionDirectories().getLocationAsFileName());
+				progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
+				return false;
+			}
+
+			try {
+				region = Region.loadRegion(getRegionDirectories(), regionData, poiData, entitiesData);
+				return true;
+			} catch (Exception ex) {
+				progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
+				Debug.dumpException("error loading " + getRegionDirectories().getLocationAsFileName(), ex);
+			}
+			return false;
+		}
+
+		@Override
+		public boolean execute() {
+			Point2i location = getRegionDirectories().getLocation();
+			BooleanSupplier cancelled = () -> isCancelled() || progressChannel.taskCancelled();
+			boolean changed = false;
+			List<CacheImage> images = new ArrayList<>();
+
+			try {
+				for (Operation op : operations) {
+					Timer t = new Timer();
+					switch (op.type) {
+						case SELECT:
+							if (!op.filter.appliesToRegion(location) || region.getRegion() == null) {
+								break;
+							}
+							LongOpenHashSet chunks = region.getFilteredChunks(op.filter, selection, cancelled);
+							if (chunks == null) {
+								return cancel(location);
+							}
+							if (chunks.size() > 0) {
+								if (chunks.size() == Tile.CHUNKS) {
+									chunks = null;
+								}
+								Long2ObjectOpenHashMap<LongOpenHashSet> selected = new Long2ObjectOpenHashMap<>();
+								selected.put(location.asLong(), chunks);
+								op.callback.accept(ChunkFilterSelector.applyRadius(selected, selection, op.radius));
+							}
+							break;
+						case CHANGE:
+							if (!region.applyFieldChanges(op.fields, op.force, selection, cancelled)) {
+								return cancel(location);
+							}
+							changed = true;
+							break;
+						case DELETE:
+							if (!op.filter.appliesToRegion(location) || region.getRegion() == null) {
+								break;
+							}
+							changed |= region.deleteChunks(op.filter, selection);
+							break;
+						case CACHE:
+							if (region.getRegion() == null) {
+								break;
+							}
+							// render once in full resolution and scale it down for every zoom level
+							Image full = TileImage.generateImage(region.getRegion(), 1, cancelled);
+							if (full == null) {
+								if (cancelled.getAsBoolean()) {
+									return cancel(location);
+								}
+								break;
+							}
+							Image[] mipmaps = ImageHelper.createMipmaps(full, op.zoomLevels);
+							for (int i = 0; i < op.zoomLevels.length; i++) {
+								images.add(new CacheImage(mipmaps[i], op.zoomLevels[i]));
+							}
+							break;
+					}
+					Debug.dumpf("took %s to %s %s", t, op, getRegionDirectories().getLocationAsFileName());
+				}
+			} catch (Exception ex) {
+				progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
+				Debug.dumpException("error processing batch for " + getRegionDirectories().getLocationAsFileName(), ex);
+				return true;
+			}
+
+			if (!changed && images.isEmpty()) {
+				Debug.dumpf("nothing to save for %s", getRegionDirectories().getLocationAsFileName());
+				progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
+				return true;
+			}
+
+			JobHandler.executeSaveData(new BatchSaveJob(getRegionDirectories(), changed ? region : null, images, progressChannel));
+			return false;
+		}
+
+		private boolean cancel(Point2i location) {
+			Debug.dumpf("cancelled batch for %s", FileHelper.createMCAFileName(location));
+			region = null;
+			return true;
+		}
+	}
+
+	private static class CacheImage {
+
+		final Image image;
+		final int zoomLevel;
+		byte[] png;
+
+		CacheImage(Image image, int zoomLevel) {
+			this.image = image;
+			this.zoomLevel = zoomLevel;
+		}
+	}
+
+	private static class BatchSaveJob extends SaveDataJob<Region> {
+
+		private final Progress progressChannel;
+		private final List<CacheImage> images;
+
+		private BatchSaveJob(RegionDirectories dirs, Region region, List<CacheImage> images, Progress progressChannel) {
+			super(dirs, region);
+			this.images = images;
+			this.progressChannel = progressChannel;
+		}
+
+		@Override
+		public void encode() {
+			Timer t = new Timer();
+			try {
+				if (getData() != null) {
+					getData().encode();
+				}
+			} catch (Exception ex) {
+				Debug.dumpException("failed to encode batch for " + getRegionDirectories().getLocationAsFileName(), ex);
+			}
+			for (CacheImage image : images) {
+				image.png = RegionImageGenerator.encodePNG(image.image, getRegionDirectories().getLocation());
+			}
+			Debug.dumpf("took %s to encode data for %s", t, getRegionDirectories().getLocationAsFileName());
+		}
+
+		@Override
+		public void execute() {
+			Timer t = new Timer();
+			try {
+				if (getData() != null) {
+					getData().saveInPlace();
+				}
+			} catch (Exception ex) {
+				Debug.dumpException("failed to save batch for " + getRegionDirectories().getLocationAsFileName(), ex);
+			}
+			for (CacheImage image : images) {
+				if (image.png != null) {
+					RegionImageGenerator.writeCacheFile(FileHelper.createPNGFilePath(Config.getCacheDirForWorldUUID(null, image.zoomLevel), getRegionDirectories().getLocation()), image.png);
+				}
+			}
+			progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
+			Debug.dumpf("took %s to save data for %s", t, getRegionDirectories().getLocationAsFileName());
+		}
+	}
+}
@@ -2,12 +2,15 @@ package net.querz.mcaselector.io.job;
 
 import javafx.scene.image.Image;
 import net.querz.mcaselector.debug.Debug;
+import net.querz.mcaselector.io.DataPointer;
 import net.querz.mcaselector.io.ImageHelper;
 import net.querz.mcaselector.io.JobHandler;
 import net.querz.mcaselector.io.RegionDirectories;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.tiles.Tile;
 import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
@@ -49,6 +52,18 @@ public class CachedImageLoadJob extends ProcessDataJob {
 		this.callback = callback;
 	}
 
+	// the png is read ahead of time like mca files, so the I/O happens on the prefetch thread
+	@Override
+	protected List<File> getPrefetchFiles() {
+		return List.of(cachedImageFile);
+	}
+
+	// the decoded image and the png
+	@Override
+	public long estimateMemory() {
+		return (long) Tile.SIZE * Tile.SIZE * 4 / loadZoomLevel / loadZoomLevel + cachedImageFile.length();
+	}
+
 	@Override
 	public boolean execute() {
 		Image cachedImg = loadImageFromDiskCache(cachedImageFile);
@@ -66,7 +81,17 @@ public class CachedImageLoadJob extends ProcessDataJob {
 	}
 
 	private Image loadImageFromDiskCache(File cachedImgFile) {
-		Image cachedImg = new Image(cachedImgFile.toURI().toString(), false);
+		Image cachedImg;
+		try (DataPointer ptr = load(cachedImgFile)) {
+			if (ptr == null) {
+				Debug.dump("failed to load image from cache: " + cachedImgFile.getAbsolutePath());
+				return null;
+			}
+			cachedImg = new Image(ptr);
+		} catch (IOException ex) {
+			Debug.dumpException("failed to load image from cache: " + cachedImgFile.getAbsolutePath(), ex);
+			return null;
+		}
 
 		if (cachedImg.isError()) {
 			// don't set image to null, we might already have an image
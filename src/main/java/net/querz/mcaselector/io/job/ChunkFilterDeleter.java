@@ -2,8 +2,12 @@ package net.querz.mcaselector.io.job;
 
 import net.querz.mcaselector.Config;
 import net.querz.mcaselector.filter.GroupFilter;
+import net.querz.mcaselector.filter.RequiredData;
 import net.querz.mcaselector.debug.Debug;
+import net.querz.mcaselector.io.DataPointer;
+import net.querz.mcaselector.io.JobBatch;
 import net.querz.mcaselector.io.JobHandler;
+import net.querz.mcaselector.io.OperationJournal;
 import net.querz.mcaselector.io.RegionDirectories;
 import net.querz.mcaselector.io.SelectionData;
 import net.querz.mcaselector.io.WorldDirectories;
@@ -11,12 +15,20 @@ import net.querz.mcaselector.io.mca.Region;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.progress.Progress;
 import net.querz.mcaselector.text.Translation;
+import java.io.File;
+import java.util.EnumSet;
+import java.util.List;
 
 public final class ChunkFilterDeleter {
 
 	private ChunkFilterDeleter() {}
 
-	public static void deleteFilter(GroupFilter filter, SelectionData selection, Progress progressChannel, boolean headless) {
+	public static JobBatch deleteFilter(GroupFilter filter, SelectionData selection, Progress progressChannel, boolean headless) {
+		return deleteFilter(filter, selection, progressChannel, headless, OperationJournal.disabled());
+	}
+
+	// regions that are already completed in the journal are skipped
+	public static JobBatch deleteFilter(GroupFilter filter, SelectionData selection, Progress progressChannel, boolean headless, OperationJournal journal) {
 		WorldDirectories wd = Config.getWorldDirs();
 		RegionDirectories[] rd = wd.listRegions(selection);
 		if (rd == null || rd.length == 0) {
@@ -25,7 +37,7 @@ public final class ChunkFilterDeleter {
 			} else {
 				progressChannel.done(Translation.DIALOG_PROGRESS_NO_FILES.toString());
 			}
-			return;
+			return JobBatch.empty();
 		}
 
 		JobHandler.clearQueues();
@@ -33,9 +45,15 @@ public final class ChunkFilterDeleter {
 		progressChannel.setMax(rd.length);
 		progressChannel.updateProgress(rd[0].getLocationAsFileName(), 0);
 
+		JobBatch batch = new JobBatch();
 		for (RegionDirectories r : rd) {
-			JobHandler.addJob(new MCADeleteFilterProcessJob(r, filter, selection, progressChannel));
+			if (journal.isCompleted(r.getLocation())) {
+				progressChannel.incrementProgress(r.getLocationAsFileName());
+				continue;
+			}
+			batch.add(JobHandler.addJob(new MCADeleteFilterProcessJob(r, filter, selection, progressChannel, journal)));
 		}
+		return batch;
 	}
 
 	private static class MCADeleteFilterProcessJob extends ProcessDataJob {
@@ -43,12 +61,19 @@ public final class ChunkFilterDeleter {
 		private final Progress progressChannel;
 		private final GroupFilter filter;
 		private final SelectionData selection;
+		private final OperationJournal journal;
 
-		private MCADeleteFilterProcessJob(RegionDirectories dirs, GroupFilter filter, SelectionData selection, Progress progressChannel) {
+		private MCADeleteFilterProcessJob(RegionDirectories dirs, GroupFilter filter, SelectionData selection, Progress progressChannel, OperationJournal journal) {
 			super(dirs, PRIORITY_LOW);
 			this.filter = filter;
 			this.selection = selection;
 			this.progressChannel = progressChannel;
+			this.journal = journal;
+		}
+
+		@Override
+		protected List<File> getPrefetchFiles() {
+			return getFiles(filter.getRequiredData());
 		}
 
 		@Override
@@ -58,13 +83,16 @@ public final class ChunkFilterDeleter {
 
 			if (!filter.appliesToRegion(location) || selection != null && !selection.isRegionSelected(location)) {
 				Debug.dump("filter does not apply to region " + getRegionDirectories().getLocation());
+				journal.complete(getRegionDirectories());
 				progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
 				return true;
 			}
 
-			byte[] regionData = loadRegion();
-			byte[] poiData = loadPoi();
-			byte[] entitiesData = loadEntities();
+			// only load what the filter needs to evaluate the chunks, the headers are enough for everything else
+			EnumSet<RequiredData> required = filter.getRequiredData();
+			DataPointer regionData = loadRegion(required);
+			DataPointer poiData = loadPoi(required);
+			DataPointer entitiesData = loadEntities(required);
 
 			if (regionData == null && poiData == null && entitiesData == null) {
 				Debug.errorf("failed to load any data from %s", getRegionDirectories().getLocationAsFileName());
@@ -75,13 +103,15 @@ public final class ChunkFilterDeleter {
 
 			try {
 				// parse raw data
-				Region region = Region.loadRegion(getRegionDirectories(), regionData, poiData, entitiesData);
+				Region region = Region.loadRegion(getRegionDirectories(), regionData, poiData, entitiesData, required);
+				region.setProjection(filter.getProjection());
 
 				if (region.deleteChunks(filter, selection)) {
 					// only save file if we actually deleted something
-					JobHandler.executeSaveData(new MCADeleteFilterSaveJob(getRegionDirectories(), region, progressChannel));
+					JobHandler.executeSaveData(new MCADeleteFilterSaveJob(getRegionDirectories(), region, progressChannel, journal));
 					return false;
 				} else {
+					journal.complete(getRegionDirectories());
 					progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
 					Debug.dumpf("nothing to delete in %s, not saving", getRegionDirectories().getLocationAsFileName());
 				}
@@ -96,16 +126,19 @@ public final class ChunkFilterDeleter {
 	private static class MCADeleteFilterSaveJob extends SaveDataJob<Region> {
 
 		private final Progress progressChannel;
+		private final OperationJournal journal;
 
-		private MCADeleteFilterSaveJob(RegionDirectories dirs, Region region, Progress progressChannel) {
+		private MCADeleteFilterSaveJob(RegionDirectories dirs, Region region, Progress progressChannel, OperationJournal journal) {
 			super(dirs, region);
 			this.progressChannel = progressChannel;
+			this.journal = journal;
 		}
 
 		@Override
 		public void execute() {
 			try {
 				getData().deFragment();
+				journal.complete(getRegionDirectories());
 			} catch (Exception ex) {
 				Debug.dumpException("failed to delete filtered chunks from " + getRegionDirectories().getLocationAsFileName(), ex);
 			}
@@ -2,7 +2,10 @@ package net.querz.mcaselector.io.job;
 
 import net.querz.mcaselector.Config;
 import net.querz.mcaselector.filter.GroupFilter;
+import net.querz.mcaselector.filter.RequiredData;
 import net.querz.mcaselector.debug.Debug;
+import net.querz.mcaselector.io.DataPointer;
+import net.querz.mcaselector.io.JobBatch;
 import net.querz.mcaselector.io.JobHandler;
 import net.querz.mcaselector.io.RegionDirectories;
 import net.querz.mcaselector.io.SelectionData;
@@ -13,12 +16,14 @@ import net.querz.mcaselector.progress.Progress;
 import net.querz.mcaselector.progress.Timer;
 import net.querz.mcaselector.text.Translation;
 import java.io.File;
+import java.util.EnumSet;
+import java.util.List;
 
 public final class ChunkFilterExporter {
 
 	private ChunkFilterExporter() {}
 
-	public static void exportFilter(GroupFilter filter, SelectionData selection, WorldDirectories destination, Progress progressChannel, boolean headless) {
+	public static JobBatch exportFilter(GroupFilter filter, SelectionData selection, WorldDirectories destination, Progress progressChannel, boolean headless) {
 		WorldDirectories wd = Config.getWorldDirs();
 		RegionDirectories[] rd = wd.listRegions(selection);
 		if (rd == null || rd.length == 0) {
@@ -27,7 +32,7 @@ public final class ChunkFilterExporter {
 			} else {
 				progressChannel.done(Translation.DIALOG_PROGRESS_NO_FILES.toString());
 			}
-			return;
+			return JobBatch.empty();
 		}
 
 		JobHandler.clearQueues();
@@ -35,9 +40,11 @@ public final class ChunkFilterExporter {
 		progressChannel.setMax(rd.length);
 		progressChannel.updateProgress(rd[0].getLocationAsFileName(), 0);
 
+		JobBatch batch = new JobBatch();
 		for (RegionDirectories r : rd) {
-			JobHandler.addJob(new MCAExportFilterProcessJob(r, filter, selection, destination, progressChannel));
+			batch.add(JobHandler.addJob(new MCAExportFilterProcessJob(r, filter, selection, destination, progressChannel)));
 		}
+		return batch;
 	}
 
 	private static class MCAExportFilterProcessJob extends ProcessDataJob {
@@ -55,6 +62,11 @@ public final class ChunkFilterExporter {
 			this.progressChannel = progressChannel;
 		}
 
+		@Override
+		protected List<File> getPrefetchFiles() {
+			return getFiles(filter.getRequiredData());
+		}
+
 		@Override
 		public boolean execute() {
 			Point2i location = getRegionDirectories().getLocation();
@@ -76,9 +88,11 @@ public final class ChunkFilterExporter {
 
 			RegionDirectories to = new RegionDirectories(getRegionDirectories().getLocation(), toRegion, toPoi, toEntities);
 
-			byte[] regionData = loadRegion();
-			byte[] poiData = loadPoi();
-			byte[] entitiesData = loadEntities();
+			// only load what the filter needs to evaluate the chunks, the headers are enough for everything else
+			EnumSet<RequiredData> required = filter.getRequiredData();
+			DataPointer regionData = loadRegion(required);
+			DataPointer poiData = loadPoi(required);
+			DataPointer entitiesData = loadEntities(required);
 
 			if (regionData == null && poiData == null && entitiesData == null) {
 				Debug.errorf("failed to load any data from %s", getRegionDirectories().getLocationAsFileName());
@@ -89,7 +103,8 @@ public final class ChunkFilterExporter {
 
 			// load MCAFile
 			try {
-				Region region = Region.loadRegion(getRegionDirectories(), regionData, poiData, entitiesData);
+				Region region = Region.loadRegion(getRegionDirectories(), regionData, poiData, entitiesData, required);
+				region.setProjection(filter.getProjection());
 
 				region.keepChunks(filter, selection);
 
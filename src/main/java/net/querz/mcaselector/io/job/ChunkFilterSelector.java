@@ -5,6 +5,9 @@ import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import net.querz.mcaselector.Config;
 import net.querz.mcaselector.filter.GroupFilter;
+import net.querz.mcaselector.filter.RequiredData;
+import net.querz.mcaselector.io.DataPointer;
+import net.querz.mcaselector.io.JobBatch;
 import net.querz.mcaselector.io.JobHandler;
 import net.querz.mcaselector.io.RegionDirectories;
 import net.querz.mcaselector.io.SelectionData;
@@ -16,13 +19,16 @@ import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.progress.Progress;
 import net.querz.mcaselector.progress.Timer;
 import net.querz.mcaselector.text.Translation;
+import java.io.File;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.function.Consumer;
 
 public final class ChunkFilterSelector {
 
 	private ChunkFilterSelector() {}
 
-	public static void selectFilter(GroupFilter filter, SelectionData selection, int radius, Consumer<Long2ObjectOpenHashMap<LongOpenHashSet>> callback, Progress progressChannel, boolean headless) {
+	public static JobBatch selectFilter(GroupFilter filter, SelectionData selection, int radius, Consumer<Long2ObjectOpenHashMap<LongOpenHashSet>> callback, Progress progressChannel, boolean headless) {
 		WorldDirectories wd = Config.getWorldDirs();
 		RegionDirectories[] rd = wd.listRegions(selection);
 		if (rd == null || rd.length == 0) {
@@ -31,7 +37,7 @@ public final class ChunkFilterSelector {
 			} else {
 				progressChannel.done(Translation.DIALOG_PROGRESS_NO_FILES.toString());
 			}
-			return;
+			return JobBatch.empty();
 		}
 
 		JobHandler.clearQueues();
@@ -39,9 +45,11 @@ public final class ChunkFilterSelector {
 		progressChannel.setMax(rd.length);
 		progressChannel.updateProgress(rd[0].getLocationAsFileName(), 0);
 
+		JobBatch batch = new JobBatch();
 		for (RegionDirectories r : rd) {
-			JobHandler.addJob(new MCASelectFilterProcessJob(r, filter, selection, callback, radius, progressChannel));
+			batch.add(JobHandler.addJob(new MCASelectFilterProcessJob(r, filter, selection, callback, radius, progressChannel)));
 		}
+		return batch;
 	}
 
 	private static class MCASelectFilterProcessJob extends ProcessDataJob {
@@ -61,6 +69,11 @@ public final class ChunkFilterSelector {
 			this.radius = radius;
 		}
 
+		@Override
+		protected List<File> getPrefetchFiles() {
+			return getFiles(filter.getRequiredData());
+		}
+
 		@Override
 		public boolean execute() {
 			// load all files
@@ -72,9 +85,11 @@ public final class ChunkFilterSelector {
 				return true;
 			}
 
-			byte[] regionData = loadRegion();
-			byte[] poiData = loadPoi();
-			byte[] entitiesData = loadEntities();
+			// only load what the filter needs to evaluate the chunks, the headers are enough for everything else
+			EnumSet<RequiredData> required = filter.getRequiredData();
+			DataPointer regionData = loadRegion(required);
+			DataPointer poiData = loadPoi(required);
+			DataPointer entitiesData = loadEntities(required);
 
 			if (regionData == null && poiData == null && entitiesData == null) {
 				Debug.errorf("failed to load any data from %s", getRegionDirectories().getLocationAsFileName());
@@ -85,9 +100,14 @@ public final class ChunkFilterSelector {
 			// load MCAFile
 			Timer t = new Timer();
 			try {
-				Region region = Region.loadRegion(getRegionDirectories(), regionData, poiData, entitiesData);
+				Region region = Region.loadRegion(getRegionDirectories(), regionData, poiData, entitiesData, required);
+				region.setProjection(filter.getProjection());
 
-				LongOpenHashSet chunks = region.getFilteredChunks(filter, this.selection);
+				LongOpenHashSet chunks = region.getFilteredChunks(filter, this.selection, () -> isCancelled() || progressChannel.taskCancelled());
+				if (chunks == null) {
+					Debug.dumpf("cancelled selecting chunks in %s", getRegionDirectories().getLocationAsFileName());
+					return true;
+				}
 				if (chunks.size() > 0) {
 					if (chunks.size() == Tile.CHUNKS) {
 						chunks = null;
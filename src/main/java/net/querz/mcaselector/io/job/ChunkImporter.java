@@ -5,9 +5,11 @@ import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import net.querz.mcaselector.Config;
 import net.querz.mcaselector.debug.Debug;
-import net.querz.mcaselector.io.ByteArrayPointer;
+import net.querz.mcaselector.io.DataPointer;
 import net.querz.mcaselector.io.FileHelper;
+import net.querz.mcaselector.io.JobBatch;
 import net.querz.mcaselector.io.JobHandler;
+import net.querz.mcaselector.io.OperationJournal;
 import net.querz.mcaselector.io.RegionDirectories;
 import net.querz.mcaselector.io.SelectionData;
 import net.querz.mcaselector.io.WorldDirectories;
@@ -28,12 +30,19 @@ import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.BooleanSupplier;
 
 public final class ChunkImporter {
 
 	private ChunkImporter() {}
 
-	public static void importChunks(WorldDirectories source, Progress progressChannel, boolean headless, boolean overwrite, SelectionData sourceSelection, SelectionData targetSelection, List<Range> ranges, Point3i offset, DataProperty<Map<Point2i, RegionDirectories>> tempFiles) {
+	public static JobBatch importChunks(WorldDirectories source, Progress progressChannel, boolean headless, boolean overwrite, SelectionData sourceSelection, SelectionData targetSelection, List<Range> ranges, Point3i offset, DataProperty<Map<Point2i, RegionDirectories>> tempFiles) {
+		return importChunks(source, progressChannel, headless, overwrite, sourceSelection, targetSelection, ranges, offset, tempFiles, OperationJournal.disabled());
+	}
+
+	// target regions that are already completed in the journal are skipped
+	public static JobBatch importChunks(WorldDirectories source, Progress progressChannel, boolean headless, boolean overwrite, SelectionData sourceSelection, SelectionData targetSelection, List<Range> ranges, Point3i offset, DataProperty<Map<Point2i, RegionDirectories>> tempFiles, OperationJournal journal) {
+		JobBatch batch = new JobBatch();
 		try {
 			WorldDirectories wd = Config.getWorldDirs();
 			RegionDirectories[] rd = wd.listRegions(targetSelection);
@@ -43,7 +52,7 @@ public final class ChunkImporter {
 				} else {
 					progressChannel.done(Translation.DIALOG_PROGRESS_NO_FILES.toString());
 				}
-				return;
+				return JobBatch.empty();
 			}
 
 			JobHandler.clearQueues();
@@ -72,6 +81,11 @@ public final class ChunkImporter {
 				long targetRegion = entry.getLongKey();
 				LongOpenHashSet sourceRegions = entry.getValue();
 
+				if (journal.isCompleted(new Point2i(targetRegion))) {
+					progressChannel.incrementProgress(FileHelper.createMCAFileName(new Point2i(targetRegion)));
+					continue;
+				}
+
 				Long2ObjectOpenHashMap<LongOpenHashSet> localSourceSelection = new Long2ObjectOpenHashMap<>();
 				LongOpenHashSet localTargetSelection;
 
@@ -99,11 +113,12 @@ public final class ChunkImporter {
 				Point2i target = new Point2i(targetRegion);
 				RegionDirectories targetDirs = FileHelper.createRegionDirectories(target);
 
-				JobHandler.addJob(new MCAChunkImporterProcessJob(targetDirs, source, target, sourceRegions, offset, progressChannel, overwrite, localSourceSelection, sourceInverted, localTargetSelection, targetInverted, ranges, tempFilesMap));
+				batch.add(JobHandler.addJob(new MCAChunkImporterProcessJob(targetDirs, source, target, sourceRegions, offset, progressChannel, overwrite, localSourceSelection, sourceInverted, localTargetSelection, targetInverted, ranges, tempFilesMap, journal)));
 			}
 		} catch (Exception ex) {
 			Debug.dumpException("failed creating jobs to import chunks", ex);
 		}
+		return batch;
 	}
 
 	// returns a map where the key is a target region and the value is a set of all source regions, if they exist
@@ -173,8 +188,14 @@ public final class ChunkImporter {
 		private final boolean targetChunksInverted;
 		private final List<Range> ranges;
 		private final Map<Point2i, RegionDirectories> tempFilesMap;
+		private final OperationJournal journal;
 
-		private MCAChunkImporterProcessJob(RegionDirectories targetDirs, WorldDirectories sourceDirs, Point2i target, LongOpenHashSet sources, Point3i offset, Progress progressChannel, boolean overwrite, Long2ObjectOpenHashMap<LongOpenHashSet> sourceChunks, boolean sourceChunksInverted, LongOpenHashSet selection, boolean targetChunksInverted, List<Range> ranges, Map<Point2i, RegionDirectories> tempFilesMap) {
+		private Region targetRegion;
+		private final Map<Point2i, RegionMCAFile> sourceRegions = new HashMap<>();
+		private final Map<Point2i, PoiMCAFile> sourcePois = new HashMap<>();
+		private final Map<Point2i, EntitiesMCAFile> sourceEntities = new HashMap<>();
+
+		private MCAChunkImporterProcessJob(RegionDirectories targetDirs, WorldDirectories sourceDirs, Point2i target, LongOpenHashSet sources, Point3i offset, Progress progressChannel, boolean overwrite, Long2ObjectOpenHashMap<LongOpenHashSet> sourceChunks, boolean sourceChunksInverted, LongOpenHashSet selection, boolean targetChunksInverted, List<Range> ranges, Map<Point2i, RegionDirectories> tempFilesMap, OperationJournal journal) {
 			super(targetDirs, PRIORITY_LOW);
 			this.sourceDirs = sourceDirs;
 			this.sources = sources;
@@ -188,10 +209,39 @@ public final class ChunkImporter {
 			this.targetChunksInverted = targetChunksInverted;
 			this.ranges = ranges;
 			this.tempFilesMap = tempFilesMap;
+			this.journal = journal;
 		}
 
+		// the target files and all source files that are merged into them
 		@Override
-		public boolean execute() {
+		protected List<File> getPrefetchFiles() {
+			List<File> files = super.getPrefetchFiles();
+			for (long source : sources) {
+				Point2i s = new Point2i(source);
+				RegionDirectories tempDirs = tempFilesMap == null ? null : tempFilesMap.get(s);
+				String fileName = FileHelper.createMCAFileName(s);
+				if (tempDirs != null && tempDirs.getRegion() != null) {
+					files.add(tempDirs.getRegion());
+				} else {
+					files.add(new File(sourceDirs.getRegion(), fileName));
+				}
+				if (tempDirs != null && tempDirs.getPoi() != null) {
+					files.add(tempDirs.getPoi());
+				} else if (sourceDirs.getPoi() != null) {
+					files.add(new File(sourceDirs.getPoi(), fileName));
+				}
+				if (tempDirs != null && tempDirs.getEntities() != null) {
+					files.add(tempDirs.getEntities());
+				} else if (sourceDirs.getEntities() != null) {
+					files.add(new File(sourceDirs.getEntities(), fileName));
+				}
+			}
+			files.removeIf(f -> !f.exists());
+			return files;
+		}
+
+		@Override
+		public boolean decode() {
 			// try to copy files directly if there is no offset, no selection and the target file does not exist
 			if (offset.getX() == 0 && offset.getY() == 0 && offset.getZ() == 0 && (selection == null || selection.size() == 0)) {
 				boolean allCopied = true;
@@ -238,16 +288,16 @@ public final class ChunkImporter {
 
 				if (allCopied) {
 					progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
-					return true;
+					return false;
 				}
 			}
 
 			// ---------------------------------------------------------------------------------------------------------
 
 			// LOAD SOURCE DATA
-			Map<Point2i, byte[]> sourceDataMappingRegion = new HashMap<>();
-			Map<Point2i, byte[]> sourceDataMappingPoi = new HashMap<>();
-			Map<Point2i, byte[]> sourceDataMappingEntities = new HashMap<>();
+			Map<Point2i, DataPointer> sourceDataMappingRegion = new HashMap<>();
+			Map<Point2i, DataPointer> sourceDataMappingPoi = new HashMap<>();
+			Map<Point2i, DataPointer> sourceDataMappingEntities = new HashMap<>();
 
 			for (long source : sources) {
 				Point2i s = new Point2i(source);
@@ -259,7 +309,7 @@ public final class ChunkImporter {
 				}
 
 				File sourceFile;
-				byte[] sourceData;
+				DataPointer sourceData;
 
 				// region
 				if (sourceDirs.getRegion() != null) {
@@ -313,47 +363,80 @@ public final class ChunkImporter {
 			if (sourceDataMappingRegion.isEmpty() && sourceDataMappingPoi.isEmpty() && sourceDataMappingEntities.isEmpty()) {
 				Debug.errorf("did not load any source mca files to merge into %s", getRegionDirectories().getLocationAsFileName());
 				progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
-				return true;
+				return false;
 			}
 
 			// ---------------------------------------------------------------------------------------------------------
 
 			// LOAD DESTINATION DATA
-			byte[] destDataRegion = null;
+			DataPointer destDataRegion = null;
 			if (getRegionDirectories().getRegion().exists() && getRegionDirectories().getRegion().length() > 0) {
 				destDataRegion = load(getRegionDirectories().getRegion());
 				if (destDataRegion == null) {
 					Debug.errorf("failed to load destination mca file %s", getRegionDirectories().getRegion());
 					progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
-					return true;
+					return false;
 				}
 			}
 
-			byte[] destDataPoi = null;
+			DataPointer destDataPoi = null;
 			if (getRegionDirectories().getPoi().exists() && getRegionDirectories().getPoi().length() > 0) {
 				destDataPoi = load(getRegionDirectories().getPoi());
 				if (destDataPoi == null) {
 					Debug.errorf("failed to load destination mca file %s", getRegionDirectories().getPoi());
 					progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
-					return true;
+					return false;
 				}
 			}
 
-			byte[] destDataEntities = null;
+			DataPointer destDataEntities = null;
 			if (getRegionDirectories().getEntities().exists() && getRegionDirectories().getEntities().length() > 0) {
 				destDataEntities = load(getRegionDirectories().getEntities());
 				if (destDataEntities == null) {
 					Debug.errorf("failed to load destination mca file %s", getRegionDirectories().getEntities());
 					progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
-					return true;
+					return false;
 				}
 			}
 
 			Timer t = new Timer();
 			try {
 				// load target region
-				Region targetRegion = Region.loadRegion(getRegionDirectories(), destDataRegion, destDataPoi, destDataEntities);
+				targetRegion = Region.loadRegion(getRegionDirectories(), destDataRegion, destDataPoi, destDataEntities);
 
+				// load source regions
+				for (Map.Entry<Point2i, DataPointer> sourceData : sourceDataMappingRegion.entrySet()) {
+					RegionMCAFile source = new RegionMCAFile(new File(sourceDirs.getRegion(), FileHelper.createMCAFileName(sourceData.getKey())));
+					source.load(sourceData.getValue());
+					sourceRegions.put(sourceData.getKey(), source);
+				}
+
+				for (Map.Entry<Point2i, DataPointer> sourceData : sourceDataMappingPoi.entrySet()) {
+					PoiMCAFile source = new PoiMCAFile(new File(sourceDirs.getPoi(), FileHelper.createMCAFileName(sourceData.getKey())));
+					source.load(sourceData.getValue());
+					sourcePois.put(sourceData.getKey(), source);
+				}
+
+				for (Map.Entry<Point2i, DataPointer> sourceData : sourceDataMappingEntities.entrySet()) {
+					EntitiesMCAFile source = new EntitiesMCAFile(new File(sourceDirs.getEntities(), FileHelper.createMCAFileName(sourceData.getKey())));
+					source.load(sourceData.getValue());
+					sourceEntities.put(sourceData.getKey(), source);
+				}
+
+				Debug.dumpf("took %s to load chunks to merge into %s", t, getRegionDirectories().getLocation());
+				return true;
+			} catch (Exception ex) {
+				Debug.dumpException("failed to load chunks to import into " + getRegionDirectories().getLocationAsFileName(), ex);
+				progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
+			}
+
+			return false;
+		}
+
+		@Override
+		public boolean execute() {
+			Timer t = new Timer();
+			try {
 				LongOpenHashSet selection = this.selection;
 				// invert target selection if necessary
 				if (targetChunksInverted) {
@@ -366,48 +449,50 @@ public final class ChunkImporter {
 					sourceChunks.replaceAll(SelectionData::createInvertedRegionSet);
 				}
 
-				for (Map.Entry<Point2i, byte[]> sourceData : sourceDataMappingRegion.entrySet()) {
-					RegionMCAFile source = new RegionMCAFile(new File(sourceDirs.getRegion(), FileHelper.createMCAFileName(sourceData.getKey())));
-					source.load(new ByteArrayPointer(sourceData.getValue()));
+				BooleanSupplier cancelled = () -> isCancelled() || progressChannel.taskCancelled();
 
-					Debug.dumpf("merging region chunks from %s into %s", sourceData.getKey(), target);
+				for (Map.Entry<Point2i, RegionMCAFile> source : sourceRegions.entrySet()) {
+					Debug.dumpf("merging region chunks from %s into %s", source.getKey(), target);
 
 					if (targetRegion.getRegion() == null) {
 						targetRegion.setRegion(new RegionMCAFile(getRegionDirectories().getRegion()));
 					}
 
-					source.mergeChunksInto(targetRegion.getRegion(), offset, overwrite, sourceChunks == null ? null : sourceChunks.get(sourceData.getKey().asLong()), selection == null ? null : selection.size() == 0 ? null : selection, ranges);
+					source.getValue().mergeChunksInto(targetRegion.getRegion(), offset, overwrite, sourceChunks == null ? null : sourceChunks.get(source.getKey().asLong()), selection == null ? null : selection.size() == 0 ? null : selection, ranges, cancelled);
 				}
 
-				for (Map.Entry<Point2i, byte[]> sourceData : sourceDataMappingPoi.entrySet()) {
-					PoiMCAFile source = new PoiMCAFile(new File(sourceDirs.getPoi(), FileHelper.createMCAFileName(sourceData.getKey())));
-					source.load(new ByteArrayPointer(sourceData.getValue()));
-
-					Debug.dumpf("merging poi chunks from %s into %s", sourceData.getKey(), target);
+				for (Map.Entry<Point2i, PoiMCAFile> source : sourcePois.entrySet()) {
+					Debug.dumpf("merging poi chunks from %s into %s", source.getKey(), target);
 
 					if (targetRegion.getPoi() == null) {
 						targetRegion.setPoi(new PoiMCAFile(getRegionDirectories().getPoi()));
 					}
 
-					source.mergeChunksInto(targetRegion.getPoi(), offset, overwrite, sourceChunks == null ? null : sourceChunks.get(sourceData.getKey().asLong()), selection == null ? null : selection.size() == 0 ? null : selection, ranges);
+					source.getValue().mergeChunksInto(targetRegion.getPoi(), offset, overwrite, sourceChunks == null ? null : sourceChunks.get(source.getKey().asLong()), selection == null ? null : selection.size() == 0 ? null : selection, ranges, cancelled);
 				}
 
-				for (Map.Entry<Point2i, byte[]> sourceData : sourceDataMappingEntities.entrySet()) {
-					EntitiesMCAFile source = new EntitiesMCAFile(new File(sourceDirs.getEntities(), FileHelper.createMCAFileName(sourceData.getKey())));
-					source.load(new ByteArrayPointer(sourceData.getValue()));
-
-					Debug.dumpf("merging entities chunks from %s into %s", sourceData.getKey(), target);
+				for (Map.Entry<Point2i, EntitiesMCAFile> source : sourceEntities.entrySet()) {
+					Debug.dumpf("merging entities chunks from %s into %s", source.getKey(), target);
 
 					if (targetRegion.getEntities() == null) {
 						targetRegion.setEntities(new EntitiesMCAFile(getRegionDirectories().getEntities()));
 					}
 
-					source.mergeChunksInto(targetRegion.getEntities(), offset, overwrite, sourceChunks == null ? null : sourceChunks.get(sourceData.getKey().asLong()), selection == null ? null : selection.size() == 0 ? null : selection, ranges);
+					source.getValue().mergeChunksInto(targetRegion.getEntities(), offset, overwrite, sourceChunks == null ? null : sourceChunks.get(source.getKey().asLong()), selection == null ? null : selection.size() == 0 ? null : selection, ranges, cancelled);
 				}
 
 				// -----------------------------------------------------------------------------------------------------
 
-				JobHandler.executeSaveData(new MCAChunkImporterSaveJob(getRegionDirectories(), targetRegion, progressChannel));
+				if (cancelled.getAsBoolean()) {
+					Debug.dumpf("cancelled merging chunks into %s", getRegionDirectories().getLocationAsFileName());
+					sourceRegions.clear();
+					sourcePois.clear();
+					sourceEntities.clear();
+					targetRegion = null;
+					return true;
+				}
+
+				JobHandler.executeSaveData(new MCAChunkImporterSaveJob(getRegionDirectories(), targetRegion, progressChannel, journal));
 				Debug.dumpf("took %s to merge chunks into %s with offset %s", t, getRegionDirectories().getLocation(), offset);
 				return false;
 
@@ -423,10 +508,23 @@ public final class ChunkImporter {
 	private static class MCAChunkImporterSaveJob extends SaveDataJob<Region> {
 
 		private final Progress progressChannel;
+		private final OperationJournal journal;
 
-		private MCAChunkImporterSaveJob(RegionDirectories targetDirs, Region data, Progress progressChannel) {
+		private MCAChunkImporterSaveJob(RegionDirectories targetDirs, Region data, Progress progressChannel, OperationJournal journal) {
 			super(targetDirs, data);
 			this.progressChannel = progressChannel;
+			this.journal = journal;
+		}
+
+		@Override
+		public void encode() {
+			Timer t = new Timer();
+			try {
+				getData().encode();
+			} catch (Exception ex) {
+				Debug.dumpException("failed to encode imported chunks for " + getRegionDirectories().getLocationAsFileName(), ex);
+			}
+			Debug.dumpf("took %s to encode data for %s", t, getRegionDirectories().getLocationAsFileName());
 		}
 
 		@Override
@@ -434,6 +532,7 @@ public final class ChunkImporter {
 			Timer t = new Timer();
 			try {
 				getData().saveWithTempFiles();
+				journal.complete(getRegionDirectories());
 			} catch (Exception ex) {
 				Debug.dumpException("failed to save imported chunks to " + getRegionDirectories().getLocationAsFileName(), ex);
 			}
@@ -3,7 +3,10 @@ package net.querz.mcaselector.io.job;
 import net.querz.mcaselector.Config;
 import net.querz.mcaselector.changer.Field;
 import net.querz.mcaselector.debug.Debug;
+import net.querz.mcaselector.io.DataPointer;
+import net.querz.mcaselector.io.JobBatch;
 import net.querz.mcaselector.io.JobHandler;
+import net.querz.mcaselector.io.OperationJournal;
 import net.querz.mcaselector.io.RegionDirectories;
 import net.querz.mcaselector.io.SelectionData;
 import net.querz.mcaselector.io.WorldDirectories;
@@ -18,7 +21,12 @@ public final class FieldChanger {
 
 	private FieldChanger() {}
 
-	public static void changeNBTFields(List<Field<?>> fields, boolean force, SelectionData selection, Progress progressChannel, boolean headless) {
+	public static JobBatch changeNBTFields(List<Field<?>> fields, boolean force, SelectionData selection, Progress progressChannel, boolean headless) {
+		return changeNBTFields(fields, force, selection, progressChannel, headless, OperationJournal.disabled());
+	}
+
+	// regions that are already completed in the journal are skipped
+	public static JobBatch changeNBTFields(List<Field<?>> fields, boolean force, SelectionData selection, Progress progressChannel, boolean headless, OperationJournal journal) {
 		WorldDirectories wd = Config.getWorldDirs();
 		RegionDirectories[] rd = wd.listRegions(selection);
 		if (rd == null || rd.length == 0) {
@@ -27,7 +35,7 @@ public final class FieldChanger {
 			} else {
 				progressChannel.done(Translation.DIALOG_PROGRESS_NO_FILES.toString());
 			}
-			return;
+			return JobBatch.empty();
 		}
 
 		JobHandler.clearQueues();
@@ -35,9 +43,15 @@ public final class FieldChanger {
 		progressChannel.setMax(rd.length);
 		progressChannel.updateProgress(rd[0].getLocationAsFileName(), 0);
 
+		JobBatch batch = new JobBatch();
 		for (RegionDirectories r : rd) {
-			JobHandler.addJob(new MCAFieldChangeProcessJob(r, fields, force, selection, progressChannel));
+			if (journal.isCompleted(r.getLocation())) {
+				progressChannel.incrementProgress(r.getLocationAsFileName());
+				continue;
+			}
+			batch.add(JobHandler.addJob(new MCAFieldChangeProcessJob(r, fields, force, selection, progressChannel, journal)));
 		}
+		return batch;
 	}
 
 	public static class MCAFieldChangeProcessJob extends ProcessDataJob {
@@ -46,43 +60,61 @@ public final class FieldChanger {
 		private final List<Field<?>> fields;
 		private final boolean force;
 		private final SelectionData selection;
+		private final OperationJournal journal;
+		private Region region;
 
-		private MCAFieldChangeProcessJob(RegionDirectories dirs, List<Field<?>> fields, boolean force, SelectionData selection, Progress progressChannel) {
+		private MCAFieldChangeProcessJob(RegionDirectories dirs, List<Field<?>> fields, boolean force, SelectionData selection, Progress progressChannel, OperationJournal journal) {
 			super(dirs, PRIORITY_LOW);
 			this.fields = fields;
 			this.force = force;
 			this.selection = selection;
 			this.progressChannel = progressChannel;
+			this.journal = journal;
 		}
 
 		@Override
-		public boolean execute() {
+		public boolean decode() {
 			if (selection != null) {
 				Point2i location = getRegionDirectories().getLocation();
 				if (!selection.isRegionSelected(location)) {
 					Debug.dumpf("will not apply nbt changes to %s", getRegionDirectories().getLocationAsFileName());
+					journal.complete(getRegionDirectories());
 					progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
-					return true;
+					return false;
 				}
 			}
 
-			byte[] regionData = loadRegion();
-			byte[] poiData = loadPoi();
-			byte[] entitiesData = loadEntities();
+			DataPointer regionData = loadRegion();
+			DataPointer poiData = loadPoi();
+			DataPointer entitiesData = loadEntities();
 
 			if (regionData == null && poiData == null && entitiesData == null) {
 				Debug.errorf("failed to load any data from %s", getRegionDirectories().getLocationAsFileName());
 				progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
-				return true;
+				return false;
 			}
 
 			//load MCAFile
 			try {
-				Region region = Region.loadRegion(getRegionDirectories(), regionData, poiData, entitiesData);
+				region = Region.loadRegion(getRegionDirectories(), regionData, poiData, entitiesData);
+				return true;
+			} catch (Exception ex) {
+				progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
+				Debug.dumpException("error loading " + getRegionDirectories().getLocationAsFileName(), ex);
+			}
+			return false;
+		}
 
-				region.applyFieldChanges(fields, force, selection);
+		@Override
+		public boolean execute() {
+			try {
+				if (!region.applyFieldChanges(fields, force, selection, () -> isCancelled() || progressChannel.taskCancelled())) {
+					Debug.dumpf("cancelled changing fields in %s", getRegionDirectories().getLocationAsFileName());
+					region = null;
+					return true;
+				}
 
-				JobHandler.executeSaveData(new MCAFieldChangeSaveJob(getRegionDirectories(), region, progressChannel));
+				JobHandler.executeSaveData(new MCAFieldChangeSaveJob(getRegionDirectories(), region, progressChannel, journal));
 				return false;
 			} catch (Exception ex) {
 				progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
@@ -95,17 +127,31 @@ public final class FieldChanger {
 	public static class MCAFieldChangeSaveJob extends SaveDataJob<Region> {
 
 		private final Progress progressChannel;
+		private final OperationJournal journal;
 
-		private MCAFieldChangeSaveJob(RegionDirectories file, Region region, Progress progressChannel) {
+		private MCAFieldChangeSaveJob(RegionDirectories file, Region region, Progress progressChannel, OperationJournal journal) {
 			super(file, region);
 			this.progressChannel = progressChannel;
+			this.journal = journal;
+		}
+
+		@Override
+		public void encode() {
+			Timer t = new Timer();
+			try {
+				getData().encode();
+			} catch (Exception ex) {
+				Debug.dumpException("failed to encode changed fields for " + getRegionDirectories().getLocationAsFileName(), ex);
+			}
+			Debug.dumpf("took %s to encode data for %s", t, getRegionDirectories().getLocationAsFileName());
 		}
 
 		@Override
 		public void execute() {
 			Timer t = new Timer();
 			try {
-				getData().saveWithTempFiles();
+				getData().saveInPlace();
+				journal.complete(getRegionDirectories());
 			} catch (Exception ex) {
 				Debug.dumpException("failed to save changed fields for " + getRegionDirectories().getLocationAsFileName(), ex);
 			}
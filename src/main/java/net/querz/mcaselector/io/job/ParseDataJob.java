@@ -1,7 +1,7 @@
 package net.querz.mcaselector.io.job;
 
 import net.querz.mcaselector.debug.Debug;
-import net.querz.mcaselector.io.ByteArrayPointer;
+import net.querz.mcaselector.io.DataPointer;
 import net.querz.mcaselector.io.RegionDirectories;
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.io.mca.EntitiesMCAFile;
@@ -63,15 +63,18 @@ public class ParseDataJob extends ProcessDataJob {
 	public boolean execute() {
 		Timer t = new Timer();
 
-		RegionMCAFile regionMCAFile = null;
-		if (getRegionDirectories().getRegion() != null && getRegionDirectories().getRegion().exists() && getRegionDirectories().getRegion().length() > 0) {
-			byte[] regionData = loadRegion();
+		// if the tile of this region is being rendered right now, the region is already decoded
+		RegionMCAFile regionMCAFile = getDecodedRegionMCAFile();
+		if (regionMCAFile != null) {
+			Debug.dumpf("using decoded region of render job for %s", getRegionDirectories().getLocationAsFileName());
+		} else if (getRegionDirectories().getRegion() != null && getRegionDirectories().getRegion().exists() && getRegionDirectories().getRegion().length() > 0) {
+			DataPointer ptr = loadRegion();
 			regionMCAFile = new RegionMCAFile(getRegionDirectories().getRegion());
-			if (regionData != null) {
+			if (ptr != null) {
 				// load EntitiesMCAFile
-				ByteArrayPointer ptr = new ByteArrayPointer(regionData);
 				try {
 					regionMCAFile.load(ptr);
+					regionMCAFile.setProjection(parser.getProjection());
 				} catch (IOException ex) {
 					Debug.errorf("failed to read mca file header from %s", getRegionDirectories().getRegion());
 				}
@@ -80,11 +83,10 @@ public class ParseDataJob extends ProcessDataJob {
 
 		EntitiesMCAFile entitiesMCAFile = null;
 		if (getRegionDirectories().getEntities() != null && getRegionDirectories().getEntities().exists() && getRegionDirectories().getEntities().length() > 0) {
-			byte[] entitiesData = loadEntities();
+			DataPointer ptr = loadEntities();
 			entitiesMCAFile = new EntitiesMCAFile(getRegionDirectories().getEntities());
-			if (entitiesData != null) {
+			if (ptr != null) {
 				// load EntitiesMCAFile
-				ByteArrayPointer ptr = new ByteArrayPointer(entitiesData);
 				try {
 					entitiesMCAFile.load(ptr);
 				} catch (IOException ex) {
@@ -95,11 +97,10 @@ public class ParseDataJob extends ProcessDataJob {
 
 		PoiMCAFile poiMCAFile = null;
 		if (getRegionDirectories().getPoi() != null && getRegionDirectories().getPoi().exists() && getRegionDirectories().getPoi().length() > 0) {
-			byte[] poiData = loadPoi();
+			DataPointer ptr = loadPoi();
 			poiMCAFile = new PoiMCAFile(getRegionDirectories().getPoi());
-			if (poiData != null) {
+			if (ptr != null) {
 				// load PoiMCAFile
-				ByteArrayPointer ptr = new ByteArrayPointer(poiData);
 				try {
 					poiMCAFile.load(ptr);
 				} catch (IOException ex) {
@@ -135,6 +136,17 @@ public class ParseDataJob extends ProcessDataJob {
 		return true;
 	}
 
+	private RegionMCAFile getDecodedRegionMCAFile() {
+		if (getRegionDirectories().getRegion() == null) {
+			return null;
+		}
+		RegionMCAFile decoded = RegionImageGenerator.awaitDecodedRegionMCAFile(getRegionDirectories().getLocation());
+		if (decoded == null || !getRegionDirectories().getRegion().equals(decoded.getFile())) {
+			return null;
+		}
+		return decoded;
+	}
+
 	@Override
 	public void cancel() {
 		setLoading(tile, false);
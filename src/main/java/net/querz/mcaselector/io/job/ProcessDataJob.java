@@ -1,30 +1,47 @@
 package net.querz.mcaselector.io.job;
 
 import net.querz.mcaselector.debug.Debug;
+import net.querz.mcaselector.filter.RequiredData;
+import net.querz.mcaselector.io.ByteArrayPointer;
+import net.querz.mcaselector.io.DataPointer;
 import net.querz.mcaselector.io.Job;
+import net.querz.mcaselector.io.JobHandler;
+import net.querz.mcaselector.io.MappedFilePointer;
 import net.querz.mcaselector.io.RegionDirectories;
+import net.querz.mcaselector.io.mca.MCAFile;
+import net.querz.mcaselector.io.metrics.JobMetrics;
 import net.querz.mcaselector.progress.Timer;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public abstract class ProcessDataJob extends Job {
 
+	// files that were read ahead of time by JobHandler, they are handed out by load(File)
+	private final Map<File, DataPointer> prefetched = new HashMap<>();
+	private boolean prefetchDone;
+
 	public ProcessDataJob(RegionDirectories dirs, int priority) {
 		super(dirs, priority);
 	}
 
-	public byte[] loadPoi() {
+	public DataPointer loadPoi() {
 		return load(getRegionDirectories().getPoi());
 	}
 
-	public byte[] loadEntities() {
+	public DataPointer loadEntities() {
 		return load(getRegionDirectories().getEntities());
 	}
 
-	public byte[] loadRegion() {
+	public DataPointer loadRegion() {
 		return load(getRegionDirectories().getRegion());
 	}
 
@@ -40,15 +57,168 @@ public abstract class ProcessDataJob extends Job {
 		return load(getRegionDirectories().getRegion(), 8192);
 	}
 
-	protected byte[] load(File file) {
+	// only loads the header of a file if its chunk data is not required
+	public DataPointer loadPoi(EnumSet<RequiredData> required) {
+		return required.contains(RequiredData.POI) ? loadPoi() : toPointer(loadPoiHeader());
+	}
+
+	public DataPointer loadEntities(EnumSet<RequiredData> required) {
+		return required.contains(RequiredData.ENTITIES) ? loadEntities() : toPointer(loadEntitiesHeader());
+	}
+
+	public DataPointer loadRegion(EnumSet<RequiredData> required) {
+		return required.contains(RequiredData.REGION) ? loadRegion() : toPointer(loadRegionHeader());
+	}
+
+	private static DataPointer toPointer(byte[] data) {
+		return data == null ? null : new ByteArrayPointer(data);
+	}
+
+	// the files this job reads completely, can be overwritten by jobs that read other files or only headers
+	protected List<File> getPrefetchFiles() {
+		return getFiles(EnumSet.allOf(RequiredData.class));
+	}
+
+	protected List<File> getFiles(EnumSet<RequiredData> required) {
+		List<File> files = new ArrayList<>(3);
+		RegionDirectories dirs = getRegionDirectories();
+		if (required.contains(RequiredData.REGION) && dirs.getRegion() != null) {
+			files.add(dirs.getRegion());
+		}
+		if (required.contains(RequiredData.POI) && dirs.getPoi() != null) {
+			files.add(dirs.getPoi());
+		}
+		if (required.contains(RequiredData.ENTITIES) && dirs.getEntities() != null) {
+			files.add(dirs.getEntities());
+		}
+		return files;
+	}
+
+	public long getPrefetchSize() {
+		long size = 0;
+		for (File file : getPrefetchFiles()) {
+			size += file.length();
+		}
+		return size;
+	}
+
+	// decoded nbt data takes up a lot more heap memory than its compressed form in a file
+	private static final int DECODED_SIZE_FACTOR = 8;
+
+	private long memoryEstimate = -1;
+
+	// the heap memory this job is expected to use while its data is decoded, processed and saved.
+	// files that are read completely count with the size of their chunk data, all other files only with their header.
+	public long estimateMemory() {
+		if (memoryEstimate < 0) {
+			long size = 3 * 8192;
+			for (File file : getPrefetchFiles()) {
+				size += getChunkDataSize(file) * DECODED_SIZE_FACTOR;
+			}
+			memoryEstimate = size;
+		}
+		return memoryEstimate;
+	}
+
+	// the number of bytes used by chunks according to the sector counts in the header of an mca file,
+	// the length of the file if the header can't be read
+	private static long getChunkDataSize(File file) {
+		if (!file.exists()) {
+			return 0;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			byte[] offsets = new byte[4096];
+			raf.readFully(offsets);
+			long sectors = 0;
+			for (int i = 3; i < 4096; i += 4) {
+				sectors += offsets[i] & 0xFF;
+			}
+			return sectors * 4096;
+		} catch (IOException ex) {
+			return file.length();
+		}
+	}
+
+	public boolean isPrefetched() {
+		synchronized (prefetched) {
+			return prefetchDone;
+		}
+	}
+
+	// reads all files of this job into memory and returns the number of bytes read
+	public long prefetch() {
+		synchronized (prefetched) {
+			if (prefetchDone) {
+				return 0;
+			}
+			prefetchDone = true;
+			long size = 0;
+			for (File file : getPrefetchFiles()) {
+				DataPointer ptr = read(file);
+				if (ptr == null) {
+					continue;
+				}
+				if (ptr instanceof MappedFilePointer) {
+					((MappedFilePointer) ptr).load();
+				}
+				prefetched.put(file, ptr);
+				size += ptr.length();
+			}
+			return size;
+		}
+	}
+
+	// drops all prefetched files that were not used and returns their size
+	public long releasePrefetched() {
+		synchronized (prefetched) {
+			prefetchDone = true;
+			long size = 0;
+			for (DataPointer ptr : prefetched.values()) {
+				size += ptr.length();
+			}
+			prefetched.clear();
+			return size;
+		}
+	}
+
+	protected DataPointer load(File file) {
+		if (file == null) {
+			return null;
+		}
+		synchronized (prefetched) {
+			DataPointer ptr = prefetched.remove(file);
+			if (ptr != null) {
+				JobHandler.releasePrefetchedBytes(ptr.length());
+				return ptr;
+			}
+		}
+		return read(file);
+	}
+
+	// maps the file into memory if possible, so only the pages of chunks that are actually read are loaded from disk
+	private DataPointer read(File file) {
 		if (file == null) {
 			return null;
 		}
 		long length = file.length();
-		if (length > 0) {
-			return load(file, (int) length);
+		if (length <= 0) {
+			return null;
+		}
+		// the header of a file with a journal may be replaced in memory, which a mapped file doesn't allow
+		if (MappedFilePointer.isSupported() && !MCAFile.hasHeaderJournal(file)) {
+			Timer t = new Timer();
+			try {
+				MappedFilePointer ptr = MappedFilePointer.map(file);
+				// mapped pages are only read when they are accessed, so this only measures mapping the file
+				recordRead(ptr.length(), t);
+				Debug.dumpf("mapped %d bytes from %s in %s", ptr.length(), file.getAbsolutePath(), t);
+				return ptr;
+			} catch (IOException ex) {
+				Debug.dumpException("failed to map data from " + file + ", falling back to reading it", ex);
+			}
 		}
-		return null;
+		byte[] data = load(file, (int) length);
+		return data == null ? null : new ByteArrayPointer(data);
 	}
 
 	protected byte[] load(File file, int length) {
@@ -64,10 +234,31 @@ public abstract class ProcessDataJob extends Job {
 			Debug.dumpException("failed to read data from " + file, ex);
 			return null;
 		}
+		recordRead(Math.max(read, 0), t);
 		Debug.dumpf("read %d bytes from %s in %s", read, file.getAbsolutePath(), t);
+
+		// an in-place save of this file was interrupted while writing the header. the file itself is only repaired
+		// by the next save, because writing to it here would race with other jobs that save it.
+		byte[] header = MCAFile.readHeaderJournal(file);
+		if (header != null) {
+			Debug.dumpf("using header from journal for %s", file);
+			System.arraycopy(header, 0, data, 0, Math.min(header.length, Math.max(read, 0)));
+		}
 		return data;
 	}
 
+	private void recordRead(long bytes, Timer t) {
+		JobMetrics.record(getClass().getSimpleName(), JobMetrics.Phase.READ, t.getNano());
+		JobMetrics.addBytesRead(bytes);
+	}
+
+	// reads and decompresses the data of this job on the decode stage, before execute() is called on the process stage.
+	// returns false if the job is already finished, in which case execute() is not called.
+	// jobs that don't overwrite this do all their work in execute().
+	public boolean decode() {
+		return true;
+	}
+
 	@Override
 	public void run() {
 		if (execute()) {
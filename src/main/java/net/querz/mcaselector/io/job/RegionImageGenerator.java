@@ -4,7 +4,9 @@ import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.image.Image;
 import net.querz.mcaselector.Config;
 import net.querz.mcaselector.io.*;
+import net.querz.mcaselector.io.db.CacheDBController;
 import net.querz.mcaselector.io.mca.RegionMCAFile;
+import net.querz.mcaselector.io.metrics.JobMetrics;
 import net.querz.mcaselector.tiles.Tile;
 import net.querz.mcaselector.tiles.TileImage;
 import net.querz.mcaselector.debug.Debug;
@@ -13,11 +15,17 @@ import net.querz.mcaselector.progress.Progress;
 import net.querz.mcaselector.progress.Timer;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -30,12 +38,36 @@ public final class RegionImageGenerator {
 
 	private static final Object cacheLock = new Object();
 
+	// regions that are being decoded or rendered right now, so overlay jobs for the same region can use the
+	// decoded data instead of reading and decoding the same file again
+	private static final Map<Point2i, CompletableFuture<RegionMCAFile>> decoding = new ConcurrentHashMap<>();
+
 	private RegionImageGenerator() {}
 
-	public static void generate(Tile tile, BiConsumer<Image, UniqueID> callback, int scale, Progress progressChannel, boolean canSkipSaving, Supplier<Integer> prioritySupplier) {
+	public static CompletableFuture<Void> generate(Tile tile, BiConsumer<Image, UniqueID> callback, int scale, Progress progressChannel, boolean canSkipSaving, Supplier<Integer> prioritySupplier) {
+		return generate(tile, callback, scale, progressChannel, canSkipSaving, prioritySupplier, null, null);
+	}
+
+	// if previous is the full resolution image of the tile and previousChunkTimes are the chunk timestamps it was rendered with,
+	// only the chunks whose timestamps changed since are drawn again
+	public static CompletableFuture<Void> generate(Tile tile, BiConsumer<Image, UniqueID> callback, int scale, Progress progressChannel, boolean canSkipSaving, Supplier<Integer> prioritySupplier, Image previous, int[] previousChunkTimes) {
+		return generate(tile, callback, scale, getZoomLevels(), progressChannel, canSkipSaving, prioritySupplier, previous, previousChunkTimes);
+	}
+
+	// the region is always rendered in full resolution, the images of all zoomLevels are scaled down from it and
+	// written to the cache. the callback receives the image for scale.
+	public static CompletableFuture<Void> generate(Tile tile, BiConsumer<Image, UniqueID> callback, int scale, int[] zoomLevels, Progress progressChannel, boolean canSkipSaving, Supplier<Integer> prioritySupplier, Image previous, int[] previousChunkTimes) {
 		Debug.dumpf("adding job %s, tile:%s, scale:%d, loading:%s, image:%s, loaded:%s",
 			MCAImageProcessJob.class.getSimpleName(), tile.getLocation(), scale, isLoading(tile), tile.getImage() == null ? "null" : tile.getImage().getHeight() + "x" + tile.getImage().getWidth(), tile.isLoaded());
-		JobHandler.addJob(new MCAImageProcessJob(tile, new UniqueID(), callback, scale, progressChannel, canSkipSaving, prioritySupplier));
+		return JobHandler.addJob(new MCAImageProcessJob(tile, new UniqueID(), callback, scale, zoomLevels, progressChannel, canSkipSaving, prioritySupplier, previous, previousChunkTimes));
+	}
+
+	public static int[] getZoomLevels() {
+		List<Integer> zoomLevels = new ArrayList<>();
+		for (int zoomLevel = Config.getMinZoomLevel(); zoomLevel <= Config.getMaxZoomLevel(); zoomLevel *= 2) {
+			zoomLevels.add(zoomLevel);
+		}
+		return zoomLevels.stream().mapToInt(Integer::intValue).toArray();
 	}
 
 	public static RegionMCAFile getCachedRegionMCAFile(Point2i region) {
@@ -60,6 +92,23 @@ public final class RegionImageGenerator {
 		}
 	}
 
+	// returns the region that a render job is decoding or rendering right now, after it has been decoded.
+	// returns null if no render job is working on this region or if decoding it failed.
+	public static RegionMCAFile awaitDecodedRegionMCAFile(Point2i region) {
+		CompletableFuture<RegionMCAFile> future = decoding.get(region);
+		if (future == null) {
+			return null;
+		}
+		try {
+			return future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException ex) {
+			Debug.dumpException("failed to wait for region " + region + " to be decoded", ex);
+		}
+		return null;
+	}
+
 	public static void uncacheRegionMCAFile(Point2i region) {
 		synchronized (cacheLock) {
 			cachedMCAFiles.remove(region);
@@ -76,6 +125,32 @@ public final class RegionImageGenerator {
 		}
 	}
 
+	// compresses an image to png, returns null if that failed
+	static byte[] encodePNG(Image image, Point2i location) {
+		try {
+			BufferedImage img = SwingFXUtils.fromFXImage(image, null);
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			ImageIO.write(img, "png", baos);
+			return baos.toByteArray();
+		} catch (IOException ex) {
+			Debug.dumpException("failed to encode image of " + location, ex);
+		}
+		return null;
+	}
+
+	static void writeCacheFile(File cacheFile, byte[] png) {
+		if (!cacheFile.getParentFile().exists() && !cacheFile.getParentFile().mkdirs()) {
+			Debug.errorf("failed to create cache directory for %s", cacheFile.getAbsolutePath());
+		}
+		Debug.dumpf("writing cache file %s", cacheFile.getAbsolutePath());
+		try {
+			Files.write(cacheFile.toPath(), png);
+			JobMetrics.addBytesWritten(png.length);
+		} catch (IOException ex) {
+			Debug.dumpException("failed to save image to cache file " + cacheFile, ex);
+		}
+	}
+
 	public static boolean isLoading(Tile tile) {
 		return loading.contains(tile.getLocation());
 	}
@@ -100,7 +175,7 @@ public final class RegionImageGenerator {
 		private final boolean shadeWater;
 		private final boolean caves;
 
-		private UniqueID() {
+		UniqueID() {
 			this.world = Config.getWorldUUID();
 			this.height = Config.getRenderHeight();
 			this.layerOnly = Config.renderLayerOnly();
@@ -125,62 +200,148 @@ public final class RegionImageGenerator {
 		private final UniqueID uniqueID;
 		private final BiConsumer<Image, UniqueID> callback;
 		private final int scale;
+		private final int[] zoomLevels;
 		private final Progress progressChannel;
 		private final boolean canSkipSaving;
 		private final Supplier<Integer> prioritySupplier;
+		private final Image previous;
+		private final int[] previousChunkTimes;
+		private RegionMCAFile region;
+		private boolean isCached;
+		private CompletableFuture<RegionMCAFile> decoded;
 
-		private MCAImageProcessJob(Tile tile, UniqueID uniqueID, BiConsumer<Image, UniqueID> callback, int scale, Progress progressChannel, boolean canSkipSaving, Supplier<Integer> prioritySupplier) {
+		MCAImageProcessJob(Tile tile, UniqueID uniqueID, BiConsumer<Image, UniqueID> callback, int scale, int[] zoomLevels, Progress progressChannel, boolean canSkipSaving, Supplier<Integer> prioritySupplier, Image previous, int[] previousChunkTimes) {
 			super(new RegionDirectories(tile.getLocation(), null, null, null), PRIORITY_LOW);
 			this.tile = tile;
 			this.uniqueID = uniqueID;
 			this.callback = callback;
 			this.scale = scale;
+			this.zoomLevels = zoomLevels;
 			this.progressChannel = progressChannel;
 			this.canSkipSaving = canSkipSaving;
 			this.prioritySupplier = prioritySupplier;
+			this.previous = previous;
+			this.previousChunkTimes = previousChunkTimes;
 		}
 
 		@Override
-		public boolean execute() {
+		protected List<File> getPrefetchFiles() {
+			return getCachedRegionMCAFile(tile.getLocation()) == null ? List.of(tile.getMCAFile()) : Collections.emptyList();
+		}
+
+		@Override
+		public boolean decode() {
+			// cached regions are minimized for rendering, so they are not shared with overlay jobs
 			RegionMCAFile cachedRegion = getCachedRegionMCAFile(tile.getLocation());
-			byte[] data = null;
-			if (cachedRegion == null) {
-				data = load(tile.getMCAFile());
+			if (cachedRegion != null) {
+				isCached = true;
+				region = cachedRegion;
+				return true;
 			}
-			if (data == null && cachedRegion == null) {
+
+			decoded = new CompletableFuture<>();
+			decoding.put(tile.getLocation(), decoded);
+			boolean success = false;
+			try {
+				success = decodeRegion();
+				return success;
+			} finally {
+				if (success) {
+					decoded.complete(region);
+				} else {
+					releaseDecoded();
+				}
+			}
+		}
+
+		private boolean decodeRegion() {
+			DataPointer ptr = load(tile.getMCAFile());
+			if (ptr == null) {
 				callback.accept(null, uniqueID);
 				if (progressChannel != null) {
 					progressChannel.incrementProgress(FileHelper.createMCAFileName(tile.getLocation()));
 				}
-				return true;
+				return false;
+			}
+
+			File file = tile.getMCAFile();
+			RegionMCAFile regionMCAFile = new RegionMCAFile(file);
+			try {
+				Timer t = new Timer();
+				regionMCAFile.load(ptr);
+				Debug.dumpf("took %s to read mca file %s", t, regionMCAFile.getFile().getName());
+			} catch (IOException ex) {
+				Debug.dumpf("failed to load mca file %s", regionMCAFile.getFile().getName());
 			}
+			region = regionMCAFile;
+			return true;
+		}
 
+		private void releaseDecoded() {
+			if (decoded != null) {
+				decoded.complete(null);
+				decoding.remove(tile.getLocation(), decoded);
+				decoded = null;
+			}
+		}
+
+		@Override
+		public boolean execute() {
 			Debug.dumpf("generating image for %s", tile.getMCAFile().getAbsolutePath());
 
-			File file = tile.getMCAFile();
-			ByteArrayPointer ptr = new ByteArrayPointer(data);
-			boolean isCached = false;
-			if (cachedRegion == null) {
-				cachedRegion = new RegionMCAFile(file);
-				try {
-					Timer t = new Timer();
-					cachedRegion.load(ptr);
-					Debug.dumpf("took %s to read mca file %s", t, cachedRegion.getFile().getName());
-				} catch (IOException ex) {
-					Debug.dumpf("failed to load mca file %s", cachedRegion.getFile().getName());
+			BooleanSupplier cancelled = () -> isCancelled() || progressChannel != null && progressChannel.taskCancelled();
+			int[] chunkTimes = new int[Tile.CHUNKS];
+			for (int i = 0; i < Tile.CHUNKS; i++) {
+				chunkTimes[i] = region.getTimestamp(i);
+			}
+
+			Image full;
+			try {
+				if (previous != null && previousChunkTimes != null) {
+					BitSet changedChunks = new BitSet(Tile.CHUNKS);
+					for (int i = 0; i < Tile.CHUNKS; i++) {
+						if (chunkTimes[i] != previousChunkTimes[i]) {
+							changedChunks.set(i);
+						}
+					}
+					Debug.dumpf("updating %d changed chunks in image of %s", changedChunks.cardinality(), tile.getMCAFile().getName());
+					full = TileImage.updateImage(region, 1, previous, changedChunks, cancelled);
+				} else {
+					full = TileImage.generateImage(region, 1, cancelled);
 				}
-			} else {
-				isCached = true;
+			} finally {
+				releaseDecoded();
 			}
 
-			Image image = TileImage.generateImage(cachedRegion, scale);
+			if (cancelled.getAsBoolean()) {
+				region = null;
+				cancel();
+				return true;
+			}
+
+			// derive all zoom levels from the full resolution image, so zooming doesn't need to decode the region again
+			Image image = null;
+			Image[] images = null;
+			if (full != null) {
+				Timer t = new Timer();
+				images = ImageHelper.createMipmaps(full, zoomLevels);
+				for (int i = 0; i < zoomLevels.length; i++) {
+					if (zoomLevels[i] == scale) {
+						image = images[i];
+					}
+				}
+				if (image == null) {
+					image = ImageHelper.scaleDownFXImage(full, Tile.SIZE / scale);
+				}
+				Debug.dumpf("took %s to scale down image of %s", t, tile.getMCAFile().getName());
+			}
 
 			callback.accept(image, uniqueID);
 
-			cacheRegionMCAFile(cachedRegion, uniqueID);
+			cacheRegionMCAFile(region, uniqueID);
 
-			if (image != null && !isCached) {
-				JobHandler.executeSaveData(new MCAImageSaveCacheJob(image, tile, uniqueID, scale, progressChannel, canSkipSaving));
+			if (images != null && !isCached) {
+				JobHandler.executeSaveData(new MCAImageSaveCacheJob(images, zoomLevels, chunkTimes, tile, uniqueID, progressChannel, canSkipSaving));
 				return false;
 			} else {
 				if (progressChannel != null) {
@@ -196,6 +357,7 @@ public final class RegionImageGenerator {
 				MCAImageProcessJob.class.getSimpleName(), tile.getLocation(), scale, isLoading(tile), tile.getImage() == null ? "null" : tile.getImage().getHeight() + "x" + tile.getImage().getWidth(), tile.isLoaded());
 
 			setLoading(tile, false);
+			releaseDecoded();
 
 			if (progressChannel != null) {
 				progressChannel.incrementProgress(FileHelper.createMCAFileName(tile.getLocation()));
@@ -215,45 +377,64 @@ public final class RegionImageGenerator {
 		}
 	}
 
-	private static class MCAImageSaveCacheJob extends SaveDataJob<Image> {
+	private static class MCAImageSaveCacheJob extends SaveDataJob<Image[]> {
 
 		private final Tile tile;
 		private final UniqueID uniqueID;
-		private final int zoomLevel;
+		private final int[] zoomLevels;
 		private final Progress progressChannel;
 		private final boolean canSkip;
+		private final int[] chunkTimes;
+		private byte[][] pngs;
 
-		private MCAImageSaveCacheJob(Image data, Tile tile, UniqueID uniqueID, int zoomLevel, Progress progressChannel, boolean canSkip) {
+		private MCAImageSaveCacheJob(Image[] data, int[] zoomLevels, int[] chunkTimes, Tile tile, UniqueID uniqueID, Progress progressChannel, boolean canSkip) {
 			super(new RegionDirectories(tile.getLocation(), null, null, null), data);
+			this.zoomLevels = zoomLevels;
+			this.chunkTimes = chunkTimes;
 			this.tile = tile;
 			this.uniqueID = uniqueID;
-			this.zoomLevel = zoomLevel;
 			this.progressChannel = progressChannel;
 			this.canSkip = canSkip;
 		}
 
+		@Override
+		public void encode() {
+			Timer t = new Timer();
+
+			pngs = new byte[zoomLevels.length][];
+			for (int i = 0; i < zoomLevels.length; i++) {
+				pngs[i] = encodePNG(getData()[i], tile.getLocation());
+			}
+
+			Debug.dumpf("took %s to encode images of %s", t, tile.getMCAFile().getName());
+		}
+
 		@Override
 		public void execute() {
 			Timer t = new Timer();
 
-			// save image to cache
-			try {
-				BufferedImage img = SwingFXUtils.fromFXImage(getData(), null);
-				File cacheFile = FileHelper.createPNGFilePath(Config.getCacheDirForWorldUUID(uniqueID.world, zoomLevel), tile.getLocation());
-				if (!cacheFile.getParentFile().exists() && !cacheFile.getParentFile().mkdirs()) {
-					Debug.errorf("failed to create cache directory for %s", cacheFile.getAbsolutePath());
+			// save images to cache
+			for (int i = 0; i < zoomLevels.length; i++) {
+				if (pngs[i] == null) {
+					continue;
+				}
+				writeCacheFile(FileHelper.createPNGFilePath(Config.getCacheDirForWorldUUID(uniqueID.world, zoomLevels[i]), tile.getLocation()), pngs[i]);
+
+				// remember which chunks the full resolution image shows, so it can be updated when only some of them change
+				if (zoomLevels[i] == 1 && Objects.equals(uniqueID.world, Config.getWorldUUID())) {
+					try {
+						CacheDBController.getInstance().setChunkTimes(tile.getLocation(), 1, chunkTimes);
+					} catch (IOException | SQLException ex) {
+						Debug.dumpException("failed to save chunk times of " + tile.getMCAFile().getName(), ex);
+					}
 				}
-				Debug.dumpf("writing cache file %s", cacheFile.getAbsolutePath());
-				ImageIO.write(img, "png", cacheFile);
-			} catch (IOException ex) {
-				Debug.dumpException("failed to save images to cache for " + tile.getLocation(), ex);
 			}
 
 			if (progressChannel != null) {
 				progressChannel.incrementProgress(FileHelper.createMCAFileName(tile.getLocation()));
 			}
 
-			Debug.dumpf("took %s to cache image of %s to %s", t, tile.getMCAFile().getName(), FileHelper.createPNGFileName(tile.getLocation()));
+			Debug.dumpf("took %s to cache images of %s to %s", t, tile.getMCAFile().getName(), FileHelper.createPNGFileName(tile.getLocation()));
 
 			done();
 		}
@@ -21,6 +21,10 @@ public abstract class SaveDataJob<T> extends Job {
 		execute();
 	}
 
+	// serializes and compresses the data of this job on the encode stage, before execute() writes it on the write stage.
+	// jobs that don't overwrite this do all their work in execute().
+	public void encode() {}
+
 	public abstract void execute();
 
 	// can be overwritten to indicate that this job can be skipped in favor for load and process jobs
@@ -5,6 +5,7 @@ import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import net.querz.mcaselector.debug.Debug;
 import net.querz.mcaselector.io.FileHelper;
+import net.querz.mcaselector.io.JobBatch;
 import net.querz.mcaselector.io.JobHandler;
 import net.querz.mcaselector.io.RegionDirectories;
 import net.querz.mcaselector.io.SelectionData;
@@ -13,15 +14,18 @@ import net.querz.mcaselector.io.mca.Region;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.progress.Progress;
 import net.querz.mcaselector.progress.Timer;
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
 
 public final class SelectionDeleter {
 
 	private SelectionDeleter() {}
 
-	public static void deleteSelection(SelectionData selection, Progress progressChannel) {
+	public static JobBatch deleteSelection(SelectionData selection, Progress progressChannel) {
 		if (selection.selection().isEmpty() && !selection.inverted()) {
 			progressChannel.done("no selection");
-			return;
+			return JobBatch.empty();
 		}
 
 		JobHandler.clearQueues();
@@ -36,15 +40,18 @@ public final class SelectionDeleter {
 
 		progressChannel.updateProgress(FileHelper.createMCAFileName(first), 0);
 
+		JobBatch batch = new JobBatch();
 		for (Long2ObjectMap.Entry<LongOpenHashSet> entry : sel.long2ObjectEntrySet()) {
-			JobHandler.addJob(new MCADeleteSelectionProcessJob(FileHelper.createRegionDirectories(new Point2i(entry.getLongKey())), entry.getValue(), progressChannel));
+			batch.add(JobHandler.addJob(new MCADeleteSelectionProcessJob(FileHelper.createRegionDirectories(new Point2i(entry.getLongKey())), entry.getValue(), progressChannel)));
 		}
+		return batch;
 	}
 
 	private static class MCADeleteSelectionProcessJob extends ProcessDataJob {
 
 		private final Progress progressChannel;
 		private final LongOpenHashSet selection;
+		private Region region;
 
 		private MCADeleteSelectionProcessJob(RegionDirectories dirs, LongOpenHashSet selection, Progress progressChannel) {
 			super(dirs, PRIORITY_LOW);
@@ -52,8 +59,14 @@ public final class SelectionDeleter {
 			this.progressChannel = progressChannel;
 		}
 
+		// only the headers are read
 		@Override
-		public boolean execute() {
+		protected List<File> getPrefetchFiles() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public boolean decode() {
 			// delete whole files if everything is selected
 			if (selection == null) {
 				// delete region
@@ -78,7 +91,7 @@ public final class SelectionDeleter {
 				}
 
 				progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
-				return true;
+				return false;
 			}
 
 			byte[] regionData = loadRegionHeader();
@@ -88,14 +101,24 @@ public final class SelectionDeleter {
 			if (regionData == null && poiData == null && entitiesData == null) {
 				Debug.errorf("failed to load any data from %s", getRegionDirectories().getLocationAsFileName());
 				progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
-				return true;
+				return false;
 			}
 
 			// load MCAFile
 			try {
 				// only load headers, we don't care for chunk contents
-				Region region = Region.loadRegionHeaders(getRegionDirectories(), regionData, poiData, entitiesData);
+				region = Region.loadRegionHeaders(getRegionDirectories(), regionData, poiData, entitiesData);
+				return true;
+			} catch (Exception ex) {
+				progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
+				Debug.dumpException("error loading headers of " + getRegionDirectories().getLocationAsFileName(), ex);
+			}
+			return false;
+		}
 
+		@Override
+		public boolean execute() {
+			try {
 				region.deleteChunks(selection);
 
 				JobHandler.executeSaveData(new MCADeleteSelectionSaveJob(getRegionDirectories(), region, progressChannel));
@@ -4,7 +4,9 @@ import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import net.querz.mcaselector.io.FileHelper;
+import net.querz.mcaselector.io.JobBatch;
 import net.querz.mcaselector.io.JobHandler;
+import net.querz.mcaselector.io.OperationJournal;
 import net.querz.mcaselector.io.RegionDirectories;
 import net.querz.mcaselector.io.SelectionData;
 import net.querz.mcaselector.io.SelectionHelper;
@@ -17,15 +19,22 @@ import net.querz.mcaselector.progress.Progress;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
 
 public final class SelectionExporter {
 
 	private SelectionExporter() {}
 
-	public static void exportSelection(SelectionData selection, WorldDirectories destination, Progress progressChannel) {
+	public static JobBatch exportSelection(SelectionData selection, WorldDirectories destination, Progress progressChannel) {
+		return exportSelection(selection, destination, progressChannel, OperationJournal.disabled());
+	}
+
+	// regions that are already completed in the journal are skipped
+	public static JobBatch exportSelection(SelectionData selection, WorldDirectories destination, Progress progressChannel, OperationJournal journal) {
 		if (selection.selection().isEmpty() && !selection.inverted()) {
 			progressChannel.done("no selection");
-			return;
+			return JobBatch.empty();
 		}
 
 		JobHandler.clearQueues();
@@ -36,13 +45,21 @@ public final class SelectionExporter {
 		Point2i first = new Point2i(sel.long2ObjectEntrySet().iterator().next().getLongKey());
 		progressChannel.updateProgress(FileHelper.createMCAFileName(first), 0);
 
+		JobBatch batch = new JobBatch();
 		for (Long2ObjectMap.Entry<LongOpenHashSet> entry : sel.long2ObjectEntrySet()) {
-			JobHandler.addJob(new MCADeleteSelectionProcessJob(
-					FileHelper.createRegionDirectories(new Point2i(entry.getLongKey())),
+			Point2i location = new Point2i(entry.getLongKey());
+			if (journal.isCompleted(location)) {
+				progressChannel.incrementProgress(FileHelper.createMCAFileName(location));
+				continue;
+			}
+			batch.add(JobHandler.addJob(new MCADeleteSelectionProcessJob(
+					FileHelper.createRegionDirectories(location),
 					entry.getValue(),
 					destination,
-					progressChannel));
+					progressChannel,
+					journal)));
 		}
+		return batch;
 	}
 
 	private static class MCADeleteSelectionProcessJob extends ProcessDataJob {
@@ -50,12 +67,20 @@ public final class SelectionExporter {
 		private final Progress progressChannel;
 		private final LongOpenHashSet chunksToBeExported;
 		private final WorldDirectories destination;
+		private final OperationJournal journal;
 
-		private MCADeleteSelectionProcessJob(RegionDirectories dirs, LongOpenHashSet chunksToBeExported, WorldDirectories destination, Progress progressChannel) {
+		private MCADeleteSelectionProcessJob(RegionDirectories dirs, LongOpenHashSet chunksToBeExported, WorldDirectories destination, Progress progressChannel, OperationJournal journal) {
 			super(dirs, PRIORITY_LOW);
 			this.chunksToBeExported = chunksToBeExported;
 			this.destination = destination;
 			this.progressChannel = progressChannel;
+			this.journal = journal;
+		}
+
+		// only the headers are read
+		@Override
+		protected List<File> getPrefetchFiles() {
+			return Collections.emptyList();
 		}
 
 		@Override
@@ -75,7 +100,7 @@ public final class SelectionExporter {
 
 				// copy region
 				try {
-					Files.copy(getRegionDirectories().getRegion().toPath(), to.getRegion().toPath(), StandardCopyOption.REPLACE_EXISTING);
+					copy(getRegionDirectories().getRegion(), to.getRegion());
 					Debug.dumpf("copied file %s", getRegionDirectories().getRegion());
 				} catch (Exception ex) {
 					Debug.dumpException("failed to copy file " + getRegionDirectories().getRegion(), ex);
@@ -83,7 +108,7 @@ public final class SelectionExporter {
 
 				// copy poi
 				try {
-					Files.copy(getRegionDirectories().getPoi().toPath(), to.getPoi().toPath(), StandardCopyOption.REPLACE_EXISTING);
+					copy(getRegionDirectories().getPoi(), to.getPoi());
 					Debug.dumpf("copied file %s", getRegionDirectories().getPoi());
 				} catch (Exception ex) {
 					Debug.dumpException("failed to copy file " + getRegionDirectories().getPoi(), ex);
@@ -91,12 +116,13 @@ public final class SelectionExporter {
 
 				// copy entities
 				try {
-					Files.copy(getRegionDirectories().getEntities().toPath(), to.getEntities().toPath(), StandardCopyOption.REPLACE_EXISTING);
+					copy(getRegionDirectories().getEntities(), to.getEntities());
 					Debug.dumpf("copied file %s", getRegionDirectories().getEntities());
 				} catch (Exception ex) {
 					Debug.dumpException("failed to copy file " + getRegionDirectories().getEntities(), ex);
 				}
 
+				journal.complete(to);
 				progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
 				return true;
 			}
@@ -128,7 +154,7 @@ public final class SelectionExporter {
 				}
 
 				region.deleteChunks(inverted);
-				JobHandler.executeSaveData(new MCADeleteSelectionSaveJob(getRegionDirectories(), region, to, progressChannel));
+				JobHandler.executeSaveData(new MCADeleteSelectionSaveJob(getRegionDirectories(), region, to, progressChannel, journal));
 				return false;
 
 			} catch (Exception ex) {
@@ -137,23 +163,37 @@ public final class SelectionExporter {
 			}
 			return true;
 		}
+
+		// copies into a temp file next to the destination first, so a killed export never leaves a partial file behind
+		private static void copy(File from, File to) throws IOException {
+			File tmp = OperationJournal.createTempFile(to.getName(), to.getParentFile());
+			try {
+				Files.copy(from.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				Files.move(tmp.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				Files.deleteIfExists(tmp.toPath());
+			}
+		}
 	}
 
 	private static class MCADeleteSelectionSaveJob extends SaveDataJob<Region> {
 
 		private final Progress progressChannel;
 		private final RegionDirectories destinations;
+		private final OperationJournal journal;
 
-		private MCADeleteSelectionSaveJob(RegionDirectories dirs, Region region, RegionDirectories destinations, Progress progressChannel) {
+		private MCADeleteSelectionSaveJob(RegionDirectories dirs, Region region, RegionDirectories destinations, Progress progressChannel, OperationJournal journal) {
 			super(dirs, region);
 			this.destinations = destinations;
 			this.progressChannel = progressChannel;
+			this.journal = journal;
 		}
 
 		@Override
 		public void execute() {
 			try {
 				getData().deFragment(destinations);
+				journal.complete(destinations);
 			} catch (Exception ex) {
 				Debug.dumpException("failed to export filtered chunks from " + getRegionDirectories().getLocationAsFileName(), ex);
 			}
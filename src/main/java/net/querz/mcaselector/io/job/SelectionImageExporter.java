@@ -9,7 +9,7 @@ import javafx.scene.image.PixelFormat;
 import javafx.scene.image.PixelReader;
 import net.querz.mcaselector.Config;
 import net.querz.mcaselector.debug.Debug;
-import net.querz.mcaselector.io.ByteArrayPointer;
+import net.querz.mcaselector.io.DataPointer;
 import net.querz.mcaselector.io.FileHelper;
 import net.querz.mcaselector.io.ImageHelper;
 import net.querz.mcaselector.io.JobHandler;
@@ -107,21 +107,21 @@ public final class SelectionImageExporter {
 			} else if (regionFile.exists()) {
 				// generate image from region file
 
-				byte[] data = load(regionFile);
-				if (data == null) {
+				DataPointer ptr = load(regionFile);
+				if (ptr == null) {
 					progressChannel.incrementProgress(regionFile.getName());
 					return true;
 				}
 
 				RegionMCAFile mcaFile = new RegionMCAFile(regionFile);
 				try {
-					mcaFile.load(new ByteArrayPointer(data));
+					mcaFile.load(ptr);
 				} catch (IOException ex) {
 					progressChannel.incrementProgress(regionFile.getName());
 					return true;
 				}
 
-				image = TileImage.generateImage(mcaFile, 1);
+				image = TileImage.generateImage(mcaFile, 1, () -> isCancelled() || progressChannel.taskCancelled());
 			}
 
 			if (image == null) {
@@ -1,6 +1,8 @@
 package net.querz.mcaselector.io.mca;
 
-import net.querz.mcaselector.io.ByteArrayPointer;
+import net.querz.mcaselector.debug.Debug;
+import net.querz.mcaselector.io.DataPointer;
+import net.querz.mcaselector.io.metrics.JobMetrics;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.point.Point3i;
 import net.querz.mcaselector.range.Range;
@@ -10,22 +12,20 @@ import net.querz.nbt.io.NBTSerializer;
 import net.querz.nbt.io.NamedTag;
 import net.querz.nbt.io.SNBTUtil;
 import net.querz.nbt.tag.CompoundTag;
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Function;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.Deflater;
 import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
 
 public abstract class Chunk {
 
@@ -34,65 +34,228 @@ public abstract class Chunk {
 	protected CompressionType compressionType;
 	protected final Point2i absoluteLocation;
 
+	// location of the compressed data of a lazily loaded chunk that has not been decompressed yet
+	private volatile DataPointer raw;
+	private long rawPosition;
+	private int rawLength;
+
+	// if set, only these nbt paths are read when a lazily loaded chunk is accessed.
+	// the compressed data is kept, because the projection is incomplete and can't be saved.
+	private volatile Set<String> projection;
+
+	// chunks that were only created from the mca header exist, but don't have any data
+	boolean headerOnly;
+
 	public Chunk(Point2i absoluteLocation) {
 		this.absoluteLocation = absoluteLocation;
 	}
 
-	public void load(ByteArrayPointer ptr) throws IOException {
+	// only reads the chunk's length and compression type and remembers where its data is located.
+	// the data is decompressed when it is first accessed, or copied to the new file as is if it never is.
+	public void loadLazy(DataPointer ptr) throws IOException {
+		long position = ptr.getPosition();
 		int length = ptr.readInt();
 		compressionType = CompressionType.fromByte(ptr.readByte());
 
-		DataInputStream nbtIn = switch (compressionType) {
-			case GZIP -> new DataInputStream(new BufferedInputStream(new GZIPInputStream(ptr, length)));
-			case ZLIB -> new DataInputStream(new BufferedInputStream(new InflaterInputStream(ptr, new Inflater(), length)));
-			case NONE -> new DataInputStream(ptr);
-			case GZIP_EXT -> new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(getMCCFile()))));
-			case ZLIB_EXT -> new DataInputStream(new BufferedInputStream(new InflaterInputStream(new FileInputStream(getMCCFile()))));
-			case NONE_EXT -> new DataInputStream(new BufferedInputStream(new FileInputStream(getMCCFile())));
-		};
+		// oversized chunks are stored in an external file, so there is nothing we could copy
+		if (compressionType.isExternal()) {
+			ptr.seek(position);
+			load(ptr);
+			return;
+		}
 
-		NamedTag tag = new NBTDeserializer(false).fromStream(nbtIn);
+		if (length <= 1 || position + 4 + length > ptr.length()) {
+			throw new IOException("invalid chunk data length " + length);
+		}
 
-		if (tag.getTag() instanceof CompoundTag) {
-			data = (CompoundTag) tag.getTag();
-		} else {
-			throw new IOException("unexpected chunk data tag type " + tag.getTag().getID() + ", expected " + CompoundTag.ID);
+		raw = ptr;
+		rawPosition = position;
+		rawLength = length;
+	}
+
+	public boolean isLoaded() {
+		return raw == null;
+	}
+
+	// the position of the compressed data in the file this chunk is lazily loaded from, or -1 if it has been loaded
+	long getRawPosition() {
+		return raw == null ? -1 : rawPosition;
+	}
+
+	private void loadRaw() {
+		DataPointer ptr = raw;
+		if (ptr == null) {
+			return;
+		}
+		synchronized (this) {
+			Set<String> projection = this.projection;
+			if (raw == null || data != null && projection != null) {
+				return;
+			}
+			try {
+				CompressionPool pool = CompressionPool.get();
+				int length;
+				// chunks of the same file share the same pointer, but only reading the compressed data needs to be exclusive
+				synchronized (ptr) {
+					ptr.seek(rawPosition);
+					length = readCompressed(ptr, pool);
+				}
+				DataInputStream nbtIn = decompress(pool, length);
+				if (projection != null) {
+					long start = System.nanoTime();
+					data = NBTProjectionReader.read(nbtIn, projection);
+					JobMetrics.recordChunk(JobMetrics.Phase.PARSE, System.nanoTime() - start);
+					return;
+				}
+				data = readCompoundTag(nbtIn);
+			} catch (Exception ex) {
+				data = null;
+				Debug.dumpException("failed to load chunk at " + absoluteLocation, ex);
+			}
+			raw = null;
+		}
+	}
+
+	public void load(DataPointer ptr) throws IOException {
+		data = readCompoundTag(openStream(ptr));
+	}
+
+	// reads the compressed data into a pooled buffer and decompresses it at once, the returned stream is only
+	// valid until the next chunk is loaded or saved on this thread
+	private DataInputStream openStream(DataPointer ptr) throws IOException {
+		CompressionPool pool = CompressionPool.get();
+		return decompress(pool, readCompressed(ptr, pool));
+	}
+
+	// reads the compressed data into the input buffer of the pool and returns its length
+	private int readCompressed(DataPointer ptr, CompressionPool pool) throws IOException {
+		int length = ptr.readInt();
+		compressionType = CompressionType.fromByte(ptr.readByte());
+
+		if (compressionType.isExternal()) {
+			return readMCCFile(pool);
 		}
+
+		if (length <= 1 || length - 1 > ptr.length() - ptr.getPosition()) {
+			throw new IOException("invalid chunk data length " + length);
+		}
+		byte[] input = pool.getInputBuffer(length - 1);
+		if (ptr.readNBytes(input, 0, length - 1) != length - 1) {
+			throw new IOException("unexpected end of chunk data at " + absoluteLocation);
+		}
+		return length - 1;
 	}
 
 	public void load(RandomAccessFile raf) throws IOException {
 		int length = raf.readInt();
 		compressionType = CompressionType.fromByte(raf.readByte());
 
-		DataInputStream nbtIn = switch (compressionType) {
-			case GZIP -> new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(raf.getFD()))));
-			case ZLIB -> new DataInputStream(new BufferedInputStream(new InflaterInputStream(new FileInputStream(raf.getFD()))));
-			case NONE -> new DataInputStream(new BufferedInputStream(new FileInputStream(raf.getFD()), length - 1));
-			case GZIP_EXT -> new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(getMCCFile()))));
-			case ZLIB_EXT -> new DataInputStream(new BufferedInputStream(new InflaterInputStream(new FileInputStream(getMCCFile()))));
-			case NONE_EXT -> new DataInputStream(new BufferedInputStream(new FileInputStream(getMCCFile())));
-		};
+		CompressionPool pool = CompressionPool.get();
+		if (compressionType.isExternal()) {
+			data = readCompoundTag(decompress(pool, readMCCFile(pool)));
+			return;
+		}
+
+		if (length <= 1 || length - 1 > raf.length() - raf.getFilePointer()) {
+			throw new IOException("invalid chunk data length " + length);
+		}
+		byte[] input = pool.getInputBuffer(length - 1);
+		raf.readFully(input, 0, length - 1);
+		data = readCompoundTag(decompress(pool, length - 1));
+	}
+
+	private int readMCCFile(CompressionPool pool) throws IOException {
+		File mcc = getMCCFile();
+		long length = mcc.length();
+		if (length <= 0 || length > Integer.MAX_VALUE) {
+			throw new IOException("invalid mcc file length " + length + " of " + mcc);
+		}
+		byte[] input = pool.getInputBuffer((int) length);
+		try (InputStream is = new FileInputStream(mcc)) {
+			if (is.readNBytes(input, 0, (int) length) != length) {
+				throw new IOException("unexpected end of mcc file " + mcc);
+			}
+		}
+		return (int) length;
+	}
+
+	// decompresses the first length bytes of the input buffer of the pool
+	private DataInputStream decompress(CompressionPool pool, int length) throws IOException {
+		long start = System.nanoTime();
+		byte[] input = pool.getInputBuffer();
+		ExposedByteArrayOutputStream out;
+		switch (compressionType) {
+			case GZIP, GZIP_EXT -> {
+				out = pool.getDataBuffer();
+				GZIPCodec.inflate(pool.getRawInflater(), input, 0, length, out);
+			}
+			case ZLIB, ZLIB_EXT -> {
+				out = pool.getDataBuffer();
+				Inflater inflater = pool.getInflater();
+				inflater.setInput(input, 0, length);
+				out.inflate(inflater);
+			}
+			default -> {
+				return new DataInputStream(new ByteArrayInputStream(input, 0, length));
+			}
+		}
+		JobMetrics.recordChunk(JobMetrics.Phase.INFLATE, System.nanoTime() - start);
+		return new DataInputStream(new ByteArrayInputStream(out.getBuffer(), 0, out.size()));
+	}
 
+	private static CompoundTag readCompoundTag(DataInputStream nbtIn) throws IOException {
+		long start = System.nanoTime();
 		NamedTag tag = new NBTDeserializer(false).fromStream(nbtIn);
+		JobMetrics.recordChunk(JobMetrics.Phase.PARSE, System.nanoTime() - start);
 
 		if (tag.getTag() instanceof CompoundTag) {
-			data = (CompoundTag) tag.getTag();
+			return (CompoundTag) tag.getTag();
 		} else {
 			throw new IOException("unexpected chunk data tag type " + tag.getTag().getID() + ", expected " + CompoundTag.ID);
 		}
 	}
 
 	public int save(RandomAccessFile raf) throws IOException {
-		ExposedByteArrayOutputStream baos = null;
+		byte[] saved = saveToArray();
+		raf.write(saved);
+		return saved.length;
+	}
+
+	// returns the chunk exactly as it is stored in an mca file: 4 length bytes, 1 compression type byte and the data.
+	// this doesn't touch any shared state apart from the mcc file of this chunk, so it can be called for multiple chunks in parallel.
+	public byte[] saveToArray() throws IOException {
+		if (headerOnly) {
+			throw new IOException("chunk at " + absoluteLocation + " was only loaded from the mca header and can't be saved");
+		}
+		if (raw != null) {
+			return saveRaw();
+		}
 
-		DataOutputStream nbtOut = switch (compressionType) {
-			case GZIP, GZIP_EXT -> new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(baos = new ExposedByteArrayOutputStream())));
-			case ZLIB, ZLIB_EXT -> new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(baos = new ExposedByteArrayOutputStream())));
-			case NONE, NONE_EXT -> new DataOutputStream(new BufferedOutputStream(baos = new ExposedByteArrayOutputStream()));
-		};
+		CompressionPool pool = CompressionPool.get();
+		ExposedByteArrayOutputStream nbt = pool.getDataBuffer();
+		long start = System.nanoTime();
+		new NBTSerializer(false).toStream(new NamedTag(null, data), nbt);
+		long serialized = System.nanoTime();
+		JobMetrics.recordChunk(JobMetrics.Phase.SERIALIZE, serialized - start);
 
-		new NBTSerializer(false).toStream(new NamedTag(null, data), nbtOut);
-		nbtOut.close();
+		ExposedByteArrayOutputStream baos;
+		switch (compressionType) {
+			case GZIP, GZIP_EXT -> {
+				baos = pool.getCompressedBuffer();
+				GZIPCodec.deflate(pool.getRawDeflater(), nbt.getBuffer(), 0, nbt.size(), baos);
+			}
+			case ZLIB, ZLIB_EXT -> {
+				baos = pool.getCompressedBuffer();
+				Deflater deflater = pool.getDeflater();
+				deflater.setInput(nbt.getBuffer(), 0, nbt.size());
+				deflater.finish();
+				baos.deflate(deflater);
+			}
+			default -> baos = nbt;
+		}
+		if (baos != nbt) {
+			JobMetrics.recordChunk(JobMetrics.Phase.DEFLATE, System.nanoTime() - serialized);
+		}
 
 		// save mcc file if chunk doesn't fit in mca file
 		if (baos.size() > 1048576) {
@@ -105,18 +268,39 @@ public abstract class Chunk {
 				throw new RuntimeException("chunk at " + absoluteLocation + " is oversized and can't be saved when DataVersion is below 2203");
 			}
 
-			raf.writeInt(1);
-			raf.writeByte(compressionType.getExternal().getByte());
 			try (BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(getMCCFile()), baos.size())) {
 				bos.write(baos.getBuffer(), 0, baos.size());
 			}
-			return 5;
+			return createChunkHeader(1, compressionType.getExternal(), 0);
 		} else {
-			raf.writeInt(baos.size() + 1); // length includes the compression type byte
-			raf.writeByte(compressionType.getByte());
-			raf.write(baos.getBuffer(), 0, baos.size());
-			return baos.size() + 5; // data length + 1 compression type byte + 4 length bytes
+			// length includes the compression type byte
+			byte[] saved = createChunkHeader(baos.size() + 1, compressionType, baos.size());
+			System.arraycopy(baos.getBuffer(), 0, saved, 5, baos.size());
+			return saved;
+		}
+	}
+
+	private static byte[] createChunkHeader(int length, CompressionType compressionType, int dataLength) {
+		byte[] saved = new byte[dataLength + 5];
+		saved[0] = (byte) (length >>> 24);
+		saved[1] = (byte) (length >>> 16);
+		saved[2] = (byte) (length >>> 8);
+		saved[3] = (byte) length;
+		saved[4] = compressionType.getByte();
+		return saved;
+	}
+
+	// returns the compressed data of a chunk that has not been decompressed without touching it
+	private byte[] saveRaw() throws IOException {
+		byte[] saved = new byte[rawLength + 4];
+		DataPointer ptr = raw;
+		synchronized (ptr) {
+			ptr.seek(rawPosition);
+			if (ptr.readNBytes(saved, 0, saved.length) != saved.length) {
+				throw new IOException("unexpected end of chunk data at " + absoluteLocation);
+			}
 		}
+		return saved;
 	}
 
 	public abstract boolean relocate(Point3i offset);
@@ -126,15 +310,24 @@ public abstract class Chunk {
 	public abstract File getMCCFile();
 
 	public boolean isEmpty() {
-		return data == null;
+		return !headerOnly && getData() == null;
 	}
 
 	public CompoundTag getData() {
+		if (raw != null && (data == null || projection == null)) {
+			loadRaw();
+		}
 		return data;
 	}
 
+	public void setProjection(Set<String> projection) {
+		this.projection = projection;
+	}
+
 	public void setData(CompoundTag data) {
 		this.data = data;
+		raw = null;
+		headerOnly = false;
 	}
 
 	public CompressionType getCompressionType() {
@@ -142,6 +335,9 @@ public abstract class Chunk {
 	}
 
 	public void setCompressionType(CompressionType compressionType) {
+		if (raw != null && compressionType != this.compressionType) {
+			loadRaw();
+		}
 		this.compressionType = compressionType;
 	}
 
@@ -172,7 +368,14 @@ public abstract class Chunk {
 		T clone = chunkConstructor.apply(absoluteLocation);
 		clone.compressionType = compressionType;
 		clone.timestamp = timestamp;
-		if (data != null) {
+		clone.headerOnly = headerOnly;
+		if (raw != null) {
+			Chunk c = clone;
+			c.raw = raw;
+			c.rawPosition = rawPosition;
+			c.rawLength = rawLength;
+			c.projection = projection;
+		} else if (data != null) {
 			clone.data = data.clone();
 		}
 		return clone;
@@ -0,0 +1,89 @@
+package net.querz.mcaselector.io.mca;
+
+import net.querz.mcaselector.Config;
+import net.querz.mcaselector.io.JobHandler;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+/**
+ * Splits work on the 1024 chunks of a single region across a shared work-stealing pool.
+ * Regions are already processed in parallel, so the chunks of a region are only split up while fewer regions
+ * are waiting to be processed than there are process threads. Otherwise, all chunks are handled on the calling thread.
+ */
+public final class ChunkForkJoin {
+
+	// a separate pool, so the threads can release their pooled compression contexts when they terminate
+	static final ForkJoinPool POOL = new ForkJoinPool(
+		Runtime.getRuntime().availableProcessors(),
+		pool -> {
+			ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {
+				@Override
+				protected void onTermination(Throwable exception) {
+					CompressionPool.release();
+					super.onTermination(exception);
+				}
+			};
+			thread.setName("chunkForkJoinPool-" + thread.getPoolIndex());
+			return thread;
+		},
+		null, false);
+
+	// chunks are small, so don't split the work further than this
+	private static final int THRESHOLD = 16;
+
+	private ChunkForkJoin() {}
+
+	public static boolean shouldSplit() {
+		return POOL.getParallelism() > 1 && JobHandler.getQueuedRegions() < Config.getProcessThreads();
+	}
+
+	// calls action with every chunk index from 0 to 1023, in parallel if there are idle threads.
+	// the action must only touch data of the chunk with that index.
+	public static void forEachChunk(IntConsumer action) {
+		forEachChunk(action, () -> false);
+	}
+
+	// stops calling action as soon as cancelled returns true and returns false if it did
+	public static boolean forEachChunk(IntConsumer action, BooleanSupplier cancelled) {
+		if (shouldSplit()) {
+			POOL.invoke(new ChunkTask(action, cancelled, 0, 1024));
+		} else {
+			for (int i = 0; i < 1024 && !cancelled.getAsBoolean(); i++) {
+				action.accept(i);
+			}
+		}
+		return !cancelled.getAsBoolean();
+	}
+
+	private static class ChunkTask extends RecursiveAction {
+
+		private final IntConsumer action;
+		private final BooleanSupplier cancelled;
+		private final int from, to;
+
+		private ChunkTask(IntConsumer action, BooleanSupplier cancelled, int from, int to) {
+			this.action = action;
+			this.cancelled = cancelled;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= THRESHOLD) {
+				for (int i = from; i < to && !cancelled.getAsBoolean(); i++) {
+					action.accept(i);
+				}
+				return;
+			}
+			if (cancelled.getAsBoolean()) {
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new ChunkTask(action, cancelled, from, middle), new ChunkTask(action, cancelled, middle, to));
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package net.querz.mcaselector.io.mca;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps one Inflater, one Deflater and a few growable buffers per thread, so decompressing and
+ * compressing chunks doesn't create a new native zlib context and new buffers for every chunk.
+ * Inflaters and Deflaters that are never ended only free their native memory when they are garbage collected,
+ * so threads that used the pool should call {@link #release()} when they are done with it.
+ */
+public final class CompressionPool {
+
+	private static final ThreadLocal<CompressionPool> pools = new ThreadLocal<>();
+
+	// buffers that grew larger than this (e.g. because of oversized chunks) are not kept after use
+	private static final int MAX_RETAINED_BUFFER_SIZE = 4 * 1024 * 1024;
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+	private static final LongAdder inflatersCreated = new LongAdder();
+	private static final LongAdder inflatersReused = new LongAdder();
+	private static final LongAdder deflatersCreated = new LongAdder();
+	private static final LongAdder deflatersReused = new LongAdder();
+	private static final LongAdder buffersCreated = new LongAdder();
+	private static final LongAdder buffersReused = new LongAdder();
+
+	private Inflater inflater;
+	private Deflater deflater;
+	// gzip data is inflated and deflated without the zlib wrapper, its own header and trailer are handled by GZIPCodec
+	private Inflater rawInflater;
+	private Deflater rawDeflater;
+	private byte[] input;
+	private ExposedByteArrayOutputStream data;
+	private ExposedByteArrayOutputStream compressed;
+
+	private CompressionPool() {}
+
+	public static CompressionPool get() {
+		CompressionPool pool = pools.get();
+		if (pool == null) {
+			pools.set(pool = new CompressionPool());
+		}
+		return pool;
+	}
+
+	// ends the inflater and deflater of the current thread and drops its buffers
+	public static void release() {
+		CompressionPool pool = pools.get();
+		if (pool == null) {
+			return;
+		}
+		pools.remove();
+		if (pool.inflater != null) {
+			pool.inflater.end();
+		}
+		if (pool.deflater != null) {
+			pool.deflater.end();
+		}
+		if (pool.rawInflater != null) {
+			pool.rawInflater.end();
+		}
+		if (pool.rawDeflater != null) {
+			pool.rawDeflater.end();
+		}
+	}
+
+	public Inflater getInflater() {
+		if (inflater == null) {
+			inflater = new Inflater();
+			inflatersCreated.increment();
+		} else {
+			inflater.reset();
+			inflatersReused.increment();
+		}
+		return inflater;
+	}
+
+	public Deflater getDeflater() {
+		if (deflater == null) {
+			deflater = new Deflater();
+			deflatersCreated.increment();
+		} else {
+			deflater.reset();
+			deflatersReused.increment();
+		}
+		return deflater;
+	}
+
+	Inflater getRawInflater() {
+		if (rawInflater == null) {
+			rawInflater = new Inflater(true);
+			inflatersCreated.increment();
+		} else {
+			rawInflater.reset();
+			inflatersReused.increment();
+		}
+		return rawInflater;
+	}
+
+	Deflater getRawDeflater() {
+		if (rawDeflater == null) {
+			rawDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			deflatersCreated.increment();
+		} else {
+			rawDeflater.reset();
+			deflatersReused.increment();
+		}
+		return rawDeflater;
+	}
+
+	// buffer for raw data read from a file, it is at least length bytes long
+	public byte[] getInputBuffer(int length) {
+		if (input == null || input.length < length || input.length > MAX_RETAINED_BUFFER_SIZE) {
+			input = new byte[Math.max(length, INITIAL_BUFFER_SIZE)];
+			buffersCreated.increment();
+		} else {
+			buffersReused.increment();
+		}
+		return input;
+	}
+
+	byte[] getInputBuffer() {
+		return input;
+	}
+
+	// buffer for uncompressed nbt data
+	public ExposedByteArrayOutputStream getDataBuffer() {
+		return data = reset(data);
+	}
+
+	// buffer for compressed nbt data
+	public ExposedByteArrayOutputStream getCompressedBuffer() {
+		return compressed = reset(compressed);
+	}
+
+	private static ExposedByteArrayOutputStream reset(ExposedByteArrayOutputStream buffer) {
+		if (buffer == null || buffer.getBuffer().length > MAX_RETAINED_BUFFER_SIZE) {
+			buffersCreated.increment();
+			return new ExposedByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+		}
+		buffer.reset();
+		buffersReused.increment();
+		return buffer;
+	}
+
+	public static String getStats() {
+		return String.format("inflaters: %d created, %d reused; deflaters: %d created, %d reused; buffers: %d created, %d reused",
+			inflatersCreated.sum(), inflatersReused.sum(),
+			deflatersCreated.sum(), deflatersReused.sum(),
+			buffersCreated.sum(), buffersReused.sum());
+	}
+}
@@ -28,6 +28,10 @@ public enum CompressionType {
 		return type;
 	}
 
+	public boolean isExternal() {
+		return type < 0;
+	}
+
 	public CompressionType getExternal() {
 		return switch (this) {
 			case NONE -> NONE_EXT;
@@ -19,14 +19,14 @@ public class EntitiesChunk extends Chunk implements Cloneable {
 
 	@Override
 	public boolean relocate(Point3i offset) {
-		ChunkRelocator relocator = VersionController.getEntityRelocator(data.getInt("DataVersion"));
-		return relocator.relocate(data, offset);
+		ChunkRelocator relocator = VersionController.getEntityRelocator(getData().getInt("DataVersion"));
+		return relocator.relocate(getData(), offset);
 	}
 
 	@Override
 	public void merge(CompoundTag destination, List<Range> ranges, int yOffset) {
-		ChunkMerger merger = VersionController.getEntityMerger(data.getInt("DataVersion"));
-		merger.mergeChunks(data, destination, ranges, yOffset);
+		ChunkMerger merger = VersionController.getEntityMerger(getData().getInt("DataVersion"));
+		merger.mergeChunks(getData(), destination, ranges, yOffset);
 	}
 
 	@Override
@@ -9,6 +9,7 @@ import net.querz.mcaselector.version.VersionController;
 import net.querz.nbt.tag.CompoundTag;
 import java.io.File;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 
 public class EntitiesMCAFile extends MCAFile<EntitiesChunk> implements Cloneable {
 
@@ -27,8 +28,8 @@ public class EntitiesMCAFile extends MCAFile<EntitiesChunk> implements Cloneable
 	}
 
 	@Override
-	public void mergeChunksInto(MCAFile<EntitiesChunk> destination, Point3i offset, boolean overwrite, LongOpenHashSet sourceChunks, LongOpenHashSet selection, List<Range> ranges) {
-		mergeChunksInto(destination, offset, overwrite, sourceChunks, selection, ranges, EntitiesMCAFile::newEmptyChunk);
+	public void mergeChunksInto(MCAFile<EntitiesChunk> destination, Point3i offset, boolean overwrite, LongOpenHashSet sourceChunks, LongOpenHashSet selection, List<Range> ranges, BooleanSupplier cancelled) {
+		mergeChunksInto(destination, offset, overwrite, sourceChunks, selection, ranges, cancelled, EntitiesMCAFile::newEmptyChunk);
 	}
 
 	@Override
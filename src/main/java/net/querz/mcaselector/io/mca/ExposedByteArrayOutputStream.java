@@ -1,6 +1,11 @@
 package net.querz.mcaselector.io.mca;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
  * ExposedByteArrayOutputStream exposes the buffer array in #getBuffer()
@@ -19,4 +24,51 @@ public class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
 	public byte[] getBuffer() {
 		return buf;
 	}
+
+	// these streams are never shared between threads, so the writes don't need to be synchronized
+
+	@Override
+	public void write(int b) {
+		grow();
+		buf[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		if (count + len > buf.length) {
+			buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + len));
+		}
+		System.arraycopy(b, off, buf, count, len);
+		count += len;
+	}
+
+	// decompresses the input of the inflater directly into the buffer
+	public void inflate(Inflater inflater) throws IOException {
+		try {
+			while (!inflater.finished()) {
+				grow();
+				int inflated = inflater.inflate(buf, count, buf.length - count);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IOException("unexpected end of zlib data");
+				}
+				count += inflated;
+			}
+		} catch (DataFormatException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	// compresses the input of the deflater directly into the buffer, the deflater needs to be finished before
+	public void deflate(Deflater deflater) {
+		while (!deflater.finished()) {
+			grow();
+			count += deflater.deflate(buf, count, buf.length - count);
+		}
+	}
+
+	private void grow() {
+		if (count == buf.length) {
+			buf = Arrays.copyOf(buf, Math.max(buf.length << 1, 32));
+		}
+	}
 }
@@ -0,0 +1,109 @@
+package net.querz.mcaselector.io.mca;
+
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// reads and writes gzip data with a pooled raw Inflater or Deflater instead of creating a new
+// GZIPInputStream or GZIPOutputStream with its own native zlib context for every chunk
+final class GZIPCodec {
+
+	private static final int MAGIC = 0x8B1F;
+
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+
+	// the same header GZIPOutputStream writes
+	private static final byte[] HEADER = {(byte) MAGIC, (byte) (MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xFF};
+
+	private GZIPCodec() {}
+
+	// decompresses a single gzip member from input into out. inflater needs to be created with nowrap.
+	static void inflate(Inflater inflater, byte[] input, int offset, int length, ExposedByteArrayOutputStream out) throws IOException {
+		int end = offset + length;
+		int pos = offset;
+		if (length < 18 || readShort(input, pos) != MAGIC) {
+			throw new IOException("not in gzip format");
+		}
+		if (input[pos + 2] != Deflater.DEFLATED) {
+			throw new IOException("unsupported gzip compression method " + input[pos + 2]);
+		}
+		int flags = input[pos + 3] & 0xFF;
+		pos += 10;
+		if ((flags & FEXTRA) != 0) {
+			pos += 2 + readShort(input, pos);
+		}
+		if ((flags & FNAME) != 0) {
+			pos = skipString(input, pos, end);
+		}
+		if ((flags & FCOMMENT) != 0) {
+			pos = skipString(input, pos, end);
+		}
+		if ((flags & FHCRC) != 0) {
+			pos += 2;
+		}
+		if (pos > end - 8) {
+			throw new IOException("unexpected end of gzip header");
+		}
+
+		int start = out.size();
+		inflater.setInput(input, pos, end - pos);
+		out.inflate(inflater);
+
+		// the trailer follows the deflated data
+		pos = end - inflater.getRemaining();
+		if (pos > end - 8) {
+			throw new IOException("unexpected end of gzip trailer");
+		}
+		CRC32 crc = new CRC32();
+		crc.update(out.getBuffer(), start, out.size() - start);
+		if (readInt(input, pos) != (int) crc.getValue()) {
+			throw new IOException("corrupt gzip trailer, crc mismatch");
+		}
+		if (readInt(input, pos + 4) != (int) inflater.getBytesWritten()) {
+			throw new IOException("corrupt gzip trailer, size mismatch");
+		}
+	}
+
+	// compresses data into out as a single gzip member. deflater needs to be created with nowrap.
+	static void deflate(Deflater deflater, byte[] data, int offset, int length, ExposedByteArrayOutputStream out) {
+		out.write(HEADER, 0, HEADER.length);
+		deflater.setInput(data, offset, length);
+		deflater.finish();
+		out.deflate(deflater);
+
+		CRC32 crc = new CRC32();
+		crc.update(data, offset, length);
+		writeInt(out, (int) crc.getValue());
+		writeInt(out, length);
+	}
+
+	private static int skipString(byte[] input, int pos, int end) throws IOException {
+		while (pos < end) {
+			if (input[pos++] == 0) {
+				return pos;
+			}
+		}
+		throw new IOException("unexpected end of gzip header");
+	}
+
+	// gzip stores numbers in little endian
+
+	private static int readShort(byte[] b, int pos) {
+		return b[pos] & 0xFF | (b[pos + 1] & 0xFF) << 8;
+	}
+
+	private static int readInt(byte[] b, int pos) {
+		return readShort(b, pos) | readShort(b, pos + 2) << 16;
+	}
+
+	private static void writeInt(ExposedByteArrayOutputStream out, int i) {
+		out.write(i);
+		out.write(i >> 8);
+		out.write(i >> 16);
+		out.write(i >> 24);
+	}
+}
@@ -1,28 +1,39 @@
 package net.querz.mcaselector.io.mca;
 
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.querz.mcaselector.Config;
 import net.querz.mcaselector.debug.Debug;
-import net.querz.mcaselector.io.ByteArrayPointer;
+import net.querz.mcaselector.io.DataPointer;
 import net.querz.mcaselector.io.FileHelper;
+import net.querz.mcaselector.io.OperationJournal;
+import net.querz.mcaselector.io.metrics.JobMetrics;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.point.Point3i;
+import net.querz.mcaselector.progress.Timer;
 import net.querz.mcaselector.range.Range;
 import net.querz.mcaselector.version.ChunkMerger;
 import net.querz.mcaselector.version.VersionController;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
 import java.util.function.Function;
+import java.util.zip.CRC32;
 
 public abstract class MCAFile<T extends Chunk> {
 
@@ -36,6 +47,9 @@ public abstract class MCAFile<T extends Chunk> {
 	private transient int[] offsets;
 	private transient byte[] sectors;
 
+	// chunks that were compressed ahead of time by encode(), used and cleared by the next save
+	private transient byte[][] encoded;
+
 	protected Function<Point2i, T> chunkConstructor;
 
 	// file name must have well formed mca file format (r.<x>.<z>.mca)
@@ -72,7 +86,7 @@ public abstract class MCAFile<T extends Chunk> {
 
 	// returns false if no chunk was saved and the file only consists of the mca header
 	public boolean saveWithTempFile(File dest) throws IOException {
-		File tempFile = File.createTempFile(dest.getName(), null, null);
+		File tempFile = OperationJournal.createTempFile(dest.getName(), null);
 		boolean result;
 		try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw")) {
 			result = save(raf);
@@ -90,100 +104,195 @@ public abstract class MCAFile<T extends Chunk> {
 		} else {
 			Files.move(tempFile.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
 		}
+		deleteHeaderJournal(dest);
 		return result;
 	}
 
 	public boolean save(RandomAccessFile raf) throws IOException {
-		int globalOffset = 2;
-		int lastWritten = 0;
+		return save(raf, true);
+	}
 
-		raf.seek(0);
+	// compresses all decompressed chunks, so the next save only needs to write them.
+	// the chunks must not be changed after this until the file has been saved.
+	public void encode() throws IOException {
+		byte[][] saved = new byte[1024][];
+		saveChunks(saved, true, true);
+		encoded = saved;
+	}
+
+	// compresses all chunks first, in parallel if possible, and then writes the header and all chunks in one go
+	boolean save(RandomAccessFile raf, boolean parallel) throws IOException {
+		byte[][] saved = takeEncoded();
+		saveChunks(saved, parallel, false);
+
+		// lay out all chunks one after another, each chunk starting at a new sector
+		ByteBuffer header = ByteBuffer.allocate(8192);
+		ByteBuffer[] buffers = new ByteBuffer[2049];
+		buffers[0] = header;
+		int numBuffers = 1;
+		int globalOffset = 2;
 		for (int i = 0; i < 1024; i++) {
-			raf.seek(globalOffset * 4096L);
+			if (saved[i] == null) {
+				continue;
+			}
+			int sectors = (saved[i].length >> 12) + (saved[i].length % 4096 == 0 ? 0 : 1);
+
+			header.putInt(i * 4, globalOffset << 8 | sectors & 0xFF);
+			header.putInt(4096 + i * 4, chunks[i].getTimestamp());
+
+			buffers[numBuffers++] = ByteBuffer.wrap(saved[i]);
+			int padding = sectors * 4096 - saved[i].length;
+			if (padding > 0) {
+				buffers[numBuffers++] = ByteBuffer.wrap(PADDING, 0, padding);
+			}
+
+			globalOffset += sectors;
+		}
+
+		if (globalOffset == 2) {
+			return false;
+		}
+
+		// the channel belongs to raf, so it is closed when raf is closed
+		FileChannel channel = raf.getChannel();
+		channel.position(0);
+		long remaining = globalOffset * 4096L;
+		while (remaining > 0) {
+			remaining -= channel.write(buffers, 0, numBuffers);
+		}
+		JobMetrics.addBytesWritten(globalOffset * 4096L);
+		return true;
+	}
+
+	private static final byte[] PADDING = new byte[4096];
+
+	// copies the sectors [from, to) of source to the sector offset of target
+	private static void copySectors(FileChannel source, FileChannel target, int from, int to, int offset) throws IOException {
+		long position = from * 4096L;
+		long end = Math.min(to * 4096L, source.size());
+		target.position(offset * 4096L);
+		while (position < end) {
+			long transferred = source.transferTo(position, end - position, target);
+			if (transferred <= 0) {
+				throw new IOException("failed to copy sectors " + from + " to " + to);
+			}
+			position += transferred;
+		}
+	}
+
+	private byte[][] takeEncoded() {
+		byte[][] saved = encoded;
+		encoded = null;
+		return saved == null ? new byte[1024][] : saved;
+	}
+
+	private void saveChunks(byte[][] saved, boolean parallel, boolean loadedOnly) throws IOException {
+		if (parallel) {
+			try {
+				ChunkForkJoin.POOL.invoke(new SaveChunksTask(saved, 0, 1024, loadedOnly));
+			} catch (UncheckedIOException ex) {
+				throw ex.getCause();
+			}
+		} else {
+			saveChunks(saved, 0, 1024, loadedOnly);
+		}
+	}
+
+	private void saveChunks(byte[][] saved, int from, int to, boolean loadedOnly) throws IOException {
+		for (int i = from; i < to; i++) {
 			T chunk = chunks[i];
 
-			if (chunk == null || chunk.isEmpty()) {
+			// chunks that have not been decompressed are written as they are, chunks that were encoded already are skipped
+			if (chunk == null || saved[i] != null || chunk.isLoaded() && chunk.isEmpty() || loadedOnly && !chunk.isLoaded()) {
 				continue;
 			}
 
-			lastWritten = chunk.save(raf);
+			saved[i] = chunk.saveToArray();
+		}
+	}
 
-			int sectors = (lastWritten >> 12) + (lastWritten % 4096 == 0 ? 0 : 1);
+	private class SaveChunksTask extends RecursiveAction {
 
-			raf.seek(i * 4);
-			raf.write(globalOffset >>> 16);
-			raf.write(globalOffset >> 8 & 0xFF);
-			raf.write(globalOffset & 0xFF);
-			raf.write(sectors);
+		// chunks are small, so don't split the work further than this
+		private static final int THRESHOLD = 16;
 
-			// write timestamp
-			raf.seek(4096 + i * 4);
-			raf.writeInt(chunk.getTimestamp());
+		private final byte[][] saved;
+		private final int from, to;
+		private final boolean loadedOnly;
 
-			globalOffset += sectors;
+		private SaveChunksTask(byte[][] saved, int from, int to, boolean loadedOnly) {
+			this.saved = saved;
+			this.from = from;
+			this.to = to;
+			this.loadedOnly = loadedOnly;
 		}
 
-		// padding
-		if (lastWritten % 4096 != 0) {
-			raf.seek(globalOffset * 4096L - 1);
-			raf.write(0);
+		@Override
+		protected void compute() {
+			if (to - from <= THRESHOLD) {
+				try {
+					saveChunks(saved, from, to, loadedOnly);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new SaveChunksTask(saved, from, middle, loadedOnly), new SaveChunksTask(saved, middle, to, loadedOnly));
 		}
-
-		return globalOffset != 2;
 	}
 
 	public void deFragment() throws IOException {
 		deFragment(file);
 	}
 
-	// reads raw chunk data from source and writes it into a new temp file,
+	// copies the raw chunk data from source into a new temp file without gaps between chunks,
 	// depending on which chunks of this MCA file are present in memory.
 	public void deFragment(File dest) throws IOException {
 		// loadHeader needs to be called before, otherwise this will delete everything
 
 		// create temp file
-		File tmpFile = File.createTempFile(file.getName(), null, null);
+		File tmpFile = OperationJournal.createTempFile(file.getName(), null);
 		int globalOffset = 2; // chunk data starts at 8192 (after 2 sectors)
 
-		int skippedChunks = 0;
-
-		// rafTmp if on the new file
-		try (RandomAccessFile rafTmp = new RandomAccessFile(tmpFile, "rw");
-		     RandomAccessFile source = new RandomAccessFile(file, "r")) {
-			// loop over all offsets, readHeader the raw byte data (complete sections) and write it to new file
-			for (int i = 0; i < offsets.length; i++) {
-				// don't do anything if this chunk is empty
-				if (offsets[i] == 0 || sectors[i] <= 0) {
-					skippedChunks++;
-					continue;
-				}
-
-				int sectors = this.sectors[i];
+		// keep the order of the chunks in the source file, so chunks that are next to each other can be copied at once
+		List<Integer> indices = new ArrayList<>(1024);
+		for (int i = 0; i < 1024; i++) {
+			if (offsets[i] != 0 && sectors[i] != 0) {
+				indices.add(i);
+			}
+		}
+		indices.sort(Comparator.comparingInt(i -> offsets[i]));
+		int skippedChunks = 1024 - indices.size();
 
-				// write offset and sector size to tmp file
-				rafTmp.seek(i * 4L);
-				rafTmp.writeByte(globalOffset >>> 16);
-				rafTmp.writeByte(globalOffset >> 8 & 0xFF);
-				rafTmp.writeByte(globalOffset & 0xFF);
-				rafTmp.writeByte(sectors);
+		ByteBuffer header = ByteBuffer.allocate(8192);
 
-				// write timestamp to tmp file
-				rafTmp.seek(4096 + i * 4L);
-				rafTmp.writeInt(timestamps[i]);
+		try (FileChannel target = FileChannel.open(tmpFile.toPath(), StandardOpenOption.WRITE);
+		     FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			int runStart = 0, runEnd = 0, runOffset = globalOffset;
+			for (int i : indices) {
+				int sectors = this.sectors[i] & 0xFF;
 
-				// copy chunk data to tmp file
-				source.seek(offsets[i] * 4096L);
-				rafTmp.seek(globalOffset * 4096L);
+				if (offsets[i] != runEnd) {
+					copySectors(source, target, runStart, runEnd, runOffset);
+					runStart = offsets[i];
+					runOffset = globalOffset;
+				}
+				runEnd = offsets[i] + sectors;
 
-				DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(source.getFD()), sectors * 4096));
-				DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(rafTmp.getFD()), sectors * 4096));
+				header.putInt(i * 4, globalOffset << 8 | sectors);
+				header.putInt(4096 + i * 4, timestamps[i]);
 
-				byte[] data = new byte[sectors * 4096];
-				dis.read(data);
-				dos.write(data);
 				offsets[i] = globalOffset; // always keep MCAFile information up to date
 				globalOffset += sectors;
 			}
+			copySectors(source, target, runStart, runEnd, runOffset);
+
+			target.write(header, 0);
+			// the last chunk of a source file that has not been padded can end before its last sector does
+			if (target.size() < globalOffset * 4096L) {
+				target.write(ByteBuffer.allocate(1), globalOffset * 4096L - 1);
+			}
 		}
 
 		if (skippedChunks == 1024) {
@@ -202,6 +311,7 @@ public abstract class MCAFile<T extends Chunk> {
 			Debug.dumpf("moving temp file %s to %s", tmpFile.getAbsolutePath(), dest.getAbsolutePath());
 			Files.move(tmpFile.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
 		}
+		deleteHeaderJournal(dest);
 	}
 
 	public int[] load() throws IOException {
@@ -232,7 +342,8 @@ public abstract class MCAFile<T extends Chunk> {
 		}
 	}
 
-	public int[] load(ByteArrayPointer ptr) throws IOException {
+	// only parses the header, chunks are decompressed when their data is first accessed
+	public int[] load(DataPointer ptr) throws IOException {
 		loadHeader(ptr);
 
 		Point2i origin = location.regionToChunk();
@@ -249,7 +360,7 @@ public abstract class MCAFile<T extends Chunk> {
 			try {
 				chunks[i] = chunkConstructor.apply(chunkLocation);
 				chunks[i].setTimestamp(timestamps[i]);
-				chunks[i].load(ptr);
+				chunks[i].loadLazy(ptr);
 			} catch (Exception ex) {
 				chunks[i] = null;
 				Debug.dumpException("failed to load chunk at " + chunkLocation, ex);
@@ -276,7 +387,7 @@ public abstract class MCAFile<T extends Chunk> {
 		}
 	}
 
-	public void loadHeader(ByteArrayPointer ptr) throws IOException {
+	public void loadHeader(DataPointer ptr) throws IOException {
 		offsets = new int[1024];
 		sectors = new byte[1024];
 
@@ -294,11 +405,28 @@ public abstract class MCAFile<T extends Chunk> {
 			for (int i = 0; i < 1024; i++) {
 				timestamps[i] = ptr.readInt();
 			}
-		} catch (ArrayIndexOutOfBoundsException ex) {
+		} catch (IndexOutOfBoundsException ex) {
 			throw new IOException(ex);
 		}
 	}
 
+	// creates chunks without data for all chunks present in the header, used when only timestamps and locations are needed
+	public void loadHeaderChunks(DataPointer ptr) throws IOException {
+		loadHeader(ptr);
+
+		Point2i origin = location.regionToChunk();
+
+		for (int i = 0; i < 1024; i++) {
+			if (offsets[i] == 0) {
+				chunks[i] = null;
+				continue;
+			}
+			chunks[i] = chunkConstructor.apply(origin.add(getChunkOffsetFromIndex(i)));
+			chunks[i].setTimestamp(timestamps[i]);
+			chunks[i].headerOnly = true;
+		}
+	}
+
 	public T loadSingleChunk(Point2i chunk) throws IOException {
 		// ignore files that don't have a full header
 		if (file.length() < 8192) {
@@ -344,7 +472,7 @@ public abstract class MCAFile<T extends Chunk> {
 		}
 	}
 
-	public void loadBorderChunks(ByteArrayPointer ptr) throws IOException {
+	public void loadBorderChunks(DataPointer ptr) throws IOException {
 		loadHeader(ptr);
 
 		// top row / bottom row
@@ -360,7 +488,7 @@ public abstract class MCAFile<T extends Chunk> {
 		}
 	}
 
-	private void loadChunk(ByteArrayPointer ptr, int index) throws IOException {
+	private void loadChunk(DataPointer ptr, int index) throws IOException {
 		try {
 			if (offsets[index] == 0) {
 				chunks[index] = null;
@@ -380,12 +508,31 @@ public abstract class MCAFile<T extends Chunk> {
 				chunks[index] = null;
 				Debug.dumpException("failed to load chunk at " + chunkLocation, ex);
 			}
-		} catch (ArrayIndexOutOfBoundsException ex) {
+		} catch (IndexOutOfBoundsException ex) {
 			throw new IOException(ex);
 		}
 	}
 
 	public void saveSingleChunk(Point2i location, T chunk) throws IOException {
+		Point2i rel = location.mod(32);
+		rel.setX(rel.getX() < 0 ? 32 + rel.getX() : rel.getX());
+		rel.setZ(rel.getZ() < 0 ? 32 + rel.getZ() : rel.getZ());
+		int index = rel.getZ() * 32 + rel.getX();
+
+		// only the header is needed to write a single chunk into an existing file, all other chunks stay where they are
+		if (file.exists() && file.length() >= 8192) {
+			recoverHeader(file);
+			try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+				loadHeader(raf);
+			}
+			Arrays.fill(chunks, null);
+			setChunk(index, chunk);
+			BitSet changed = new BitSet(1024);
+			changed.set(index);
+			saveInPlace(changed);
+			return;
+		}
+
 		if (file.exists() && file.length() > 0) {
 			load();
 		} else if (chunk == null || chunk.isEmpty()) {
@@ -393,11 +540,6 @@ public abstract class MCAFile<T extends Chunk> {
 			return;
 		}
 
-		Point2i rel = location.mod(32);
-		rel.setX(rel.getX() < 0 ? 32 + rel.getX() : rel.getX());
-		rel.setZ(rel.getZ() < 0 ? 32 + rel.getZ() : rel.getZ());
-		int index = rel.getZ() * 32 + rel.getX();
-
 		setChunk(index, chunk);
 		if (chunk != null) {
 			setTimestamp(index, chunk.getTimestamp());
@@ -405,6 +547,273 @@ public abstract class MCAFile<T extends Chunk> {
 		saveWithTempFile();
 	}
 
+	// only writes chunks that have been decompressed or removed since this file was loaded with load(DataPointer).
+	// falls back to rewriting the entire file if there is no file yet or if too many chunks changed.
+	public boolean saveInPlace() throws IOException {
+		if (offsets == null || !file.exists() || file.length() < 8192) {
+			return saveWithTempFile();
+		}
+
+		// compare against the header on disk, the header in memory is changed when chunks are deleted
+		recoverHeader(file);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			loadHeader(raf);
+		}
+
+		BitSet changed = new BitSet(1024);
+		for (int i = 0; i < 1024; i++) {
+			T chunk = chunks[i];
+			if (chunk == null) {
+				if (offsets[i] != 0) {
+					changed.set(i);
+				}
+			} else if (chunk.isLoaded()) {
+				changed.set(i);
+			} else if (chunk.getRawPosition() != offsets[i] * 4096L) {
+				Debug.dumpf("%s changed since it was loaded, rewriting entire file", file);
+				return saveWithTempFile();
+			}
+		}
+		if (changed.isEmpty()) {
+			Debug.dumpf("no chunks changed in %s", file);
+			return true;
+		}
+
+		// the sectors of changed chunks become unused, so the file would be rewritten right after anyway
+		BitSet used = getUsedSectors();
+		int fileSectors = getFileSectors(used);
+		int freed = 0;
+		for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+			freed += sectors[i] & 0xFF;
+		}
+		if ((double) (fileSectors - used.cardinality() + freed) / fileSectors > Config.getMaxFragmentation()) {
+			Debug.dumpf("%d of %d chunks changed in %s, rewriting entire file", changed.cardinality(), 1024, file);
+			return saveWithTempFile();
+		}
+
+		saveInPlace(changed);
+		return file.exists();
+	}
+
+	// writes the changed chunks into sectors that are not used by any chunk in the current header and replaces the header
+	// afterwards. chunks that didn't change are never moved or overwritten, so chunks that are still lazily loaded from
+	// this file stay valid. the new header is written to a journal first, so it can be restored if the header is torn.
+	private void saveInPlace(BitSet changed) throws IOException {
+		Timer t = new Timer();
+
+		byte[][] saved = takeEncoded();
+		for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+			T chunk = chunks[i];
+			if (chunk != null && !chunk.isEmpty() && saved[i] == null) {
+				saved[i] = chunk.saveToArray();
+			}
+		}
+
+		int[] newOffsets = offsets.clone();
+		byte[] newSectors = sectors.clone();
+		BitSet used = getUsedSectors();
+		File journal = getHeaderJournalFile(file);
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			byte[] oldHeader = new byte[8192];
+			raf.seek(0);
+			raf.readFully(oldHeader);
+
+			for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+				if (saved[i] == null) {
+					newOffsets[i] = 0;
+					newSectors[i] = 0;
+					continue;
+				}
+				int sectors = (saved[i].length >> 12) + (saved[i].length % 4096 == 0 ? 0 : 1);
+				int offset = findFreeSectors(used, sectors);
+				used.set(offset, offset + sectors);
+
+				raf.seek(offset * 4096L);
+				raf.write(saved[i]);
+				raf.write(PADDING, 0, sectors * 4096 - saved[i].length);
+				JobMetrics.addBytesWritten(sectors * 4096L);
+
+				newOffsets[i] = offset;
+				newSectors[i] = (byte) sectors;
+			}
+			// the chunk data needs to be on disk before the header that points to it
+			raf.getFD().sync();
+
+			ByteBuffer header = ByteBuffer.allocate(8192);
+			for (int i = 0; i < 1024; i++) {
+				if (newOffsets[i] == 0) {
+					continue;
+				}
+				header.putInt(i * 4, newOffsets[i] << 8 | newSectors[i] & 0xFF);
+				header.putInt(4096 + i * 4, chunks[i] != null ? chunks[i].getTimestamp() : timestamps[i]);
+			}
+
+			writeHeaderJournal(journal, raf.length(), oldHeader, header.array());
+			raf.seek(0);
+			raf.write(header.array());
+			raf.getFD().sync();
+			JobMetrics.addBytesWritten(8192);
+		}
+
+		deleteHeaderJournal(file);
+
+		for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+			timestamps[i] = chunks[i] != null ? chunks[i].getTimestamp() : 0;
+		}
+		offsets = newOffsets;
+		sectors = newSectors;
+
+		Debug.dumpf("took %s to save %d chunks in place in %s", t, changed.cardinality(), file);
+
+		used = getUsedSectors();
+		int fileSectors = getFileSectors(used);
+		double fragmentation = (double) (fileSectors - used.cardinality()) / fileSectors;
+		if (fragmentation > Config.getMaxFragmentation()) {
+			Debug.dumpf("fragmentation of %s is %.2f, defragmenting", file, fragmentation);
+			deFragment();
+		}
+	}
+
+	// the two header sectors and all sectors that are used by a chunk in the current header
+	private BitSet getUsedSectors() {
+		BitSet used = new BitSet();
+		used.set(0, 2);
+		for (int i = 0; i < 1024; i++) {
+			if (offsets[i] != 0 && sectors[i] != 0) {
+				used.set(offsets[i], offsets[i] + (sectors[i] & 0xFF));
+			}
+		}
+		return used;
+	}
+
+	private int getFileSectors(BitSet used) {
+		return Math.max(used.length(), (int) ((file.length() >> 12) + (file.length() % 4096 == 0 ? 0 : 1)));
+	}
+
+	// first fit, appends to the end of the file if there is no gap that is large enough
+	private static int findFreeSectors(BitSet used, int sectors) {
+		int start = used.nextClearBit(2);
+		while (true) {
+			int end = used.nextSetBit(start);
+			if (end < 0 || end - start >= sectors) {
+				return start;
+			}
+			start = used.nextClearBit(end);
+		}
+	}
+
+	private static File getHeaderJournalFile(File file) {
+		return new File(file.getPath() + ".wal");
+	}
+
+	// the journal is tied to the state of the file it was written for: it contains the length of the file and the header
+	// before and after the save, so it is only applied if the file is still in the state the save left it in
+	static void writeHeaderJournal(File journal, long fileLength, byte[] oldHeader, byte[] newHeader) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(HEADER_JOURNAL_SIZE);
+		buf.putInt(HEADER_JOURNAL_MAGIC);
+		buf.putLong(fileLength);
+		buf.put(oldHeader);
+		buf.put(newHeader);
+		CRC32 crc = new CRC32();
+		crc.update(buf.array(), 4, HEADER_JOURNAL_SIZE - 12);
+		buf.putLong(crc.getValue());
+		try (FileOutputStream fos = new FileOutputStream(journal)) {
+			fos.write(buf.array());
+			fos.getFD().sync();
+		}
+	}
+
+	private static final int HEADER_JOURNAL_MAGIC = 0x4D434157;
+	private static final int HEADER_JOURNAL_SIZE = 4 + 8 + 8192 + 8192 + 8;
+
+	// a journal that is left over after the file has been rewritten would restore an outdated header
+	private static void deleteHeaderJournal(File file) {
+		File journal = getHeaderJournalFile(file);
+		if (journal.exists() && !journal.delete()) {
+			Debug.dumpf("failed to delete header journal %s", journal);
+		}
+	}
+
+	public static boolean hasHeaderJournal(File file) {
+		return getHeaderJournalFile(file).exists();
+	}
+
+	/**
+	 * Reads the header that an interrupted in-place save of an mca file was writing.
+	 * Journals that are incomplete are ignored, because the header is only written after the journal is complete.
+	 * Journals that don't belong to the current state of the file are ignored as well, e.g. when the file was replaced
+	 * after the save was interrupted. The file is only in that state if it still has the same length and every entry
+	 * of its header is either the entry before or after the save.
+	 * This doesn't change any file, so it can be used when the file is only read.
+	 * @param file The mca file
+	 * @return The header from the journal or null if there is no valid journal for this file
+	 */
+	public static byte[] readHeaderJournal(File file) {
+		File journal = getHeaderJournalFile(file);
+		if (!journal.exists()) {
+			return null;
+		}
+		try {
+			byte[] data = Files.readAllBytes(journal.toPath());
+			if (data.length != HEADER_JOURNAL_SIZE) {
+				Debug.dumpf("ignoring incomplete header journal %s", journal);
+				return null;
+			}
+			ByteBuffer buf = ByteBuffer.wrap(data);
+			CRC32 crc = new CRC32();
+			crc.update(data, 4, HEADER_JOURNAL_SIZE - 12);
+			if (buf.getInt(0) != HEADER_JOURNAL_MAGIC || buf.getLong(HEADER_JOURNAL_SIZE - 8) != crc.getValue()) {
+				Debug.dumpf("ignoring invalid header journal %s", journal);
+				return null;
+			}
+
+			if (file.length() != buf.getLong(4)) {
+				Debug.dumpf("ignoring header journal %s, the length of %s changed", journal, file);
+				return null;
+			}
+			byte[] header = new byte[8192];
+			try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+				raf.readFully(header);
+			}
+			ByteBuffer current = ByteBuffer.wrap(header);
+			for (int i = 0; i < 8192; i += 4) {
+				int entry = current.getInt(i);
+				if (entry != buf.getInt(12 + i) && entry != buf.getInt(12 + 8192 + i)) {
+					Debug.dumpf("ignoring header journal %s, the header of %s changed", journal, file);
+					return null;
+				}
+			}
+			return Arrays.copyOfRange(data, 12 + 8192, 12 + 8192 + 8192);
+		} catch (IOException ex) {
+			Debug.dumpException("failed to read header journal " + journal, ex);
+		}
+		return null;
+	}
+
+	// restores the header of an mca file if writing it was interrupted during an in-place save.
+	// this writes to the file, so it must only be called by the job that saves this file.
+	// journals that don't apply to this file are deleted, because they would never be valid again.
+	private static void recoverHeader(File file) {
+		File journal = getHeaderJournalFile(file);
+		if (!journal.exists()) {
+			return;
+		}
+		byte[] header = readHeaderJournal(file);
+		if (header != null) {
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.seek(0);
+				raf.write(header);
+				raf.getFD().sync();
+				Debug.dumpf("restored header of %s from %s", file, journal);
+			} catch (IOException ex) {
+				Debug.dumpException("failed to restore header of " + file + " from " + journal, ex);
+				return;
+			}
+		}
+		deleteHeaderJournal(file);
+	}
+
 // END OF IO STUFF -----------------------------------------------------------------------------------------------------
 
 // DATA MANIPULATION STUFF ---------------------------------------------------------------------------------------------
@@ -419,9 +828,10 @@ public abstract class MCAFile<T extends Chunk> {
 		}
 	}
 
-	public abstract void mergeChunksInto(MCAFile<T> destination, Point3i offset, boolean overwrite, LongOpenHashSet sourceChunks, LongOpenHashSet selection, List<Range> ranges);
+	// stops as soon as cancelled returns true, the destination must not be saved then
+	public abstract void mergeChunksInto(MCAFile<T> destination, Point3i offset, boolean overwrite, LongOpenHashSet sourceChunks, LongOpenHashSet selection, List<Range> ranges, BooleanSupplier cancelled);
 
-	protected void mergeChunksInto(MCAFile<T> destination, Point3i offset, boolean overwrite, LongOpenHashSet sourceChunks, LongOpenHashSet selection, List<Range> ranges, BiFunction<Point2i, Integer, T> chunkCreator) {
+	protected void mergeChunksInto(MCAFile<T> destination, Point3i offset, boolean overwrite, LongOpenHashSet sourceChunks, LongOpenHashSet selection, List<Range> ranges, BooleanSupplier cancelled, BiFunction<Point2i, Integer, T> chunkCreator) {
 		Point2i relativeOffset = location.regionToChunk().add(offset.toPoint2i()).sub(destination.location.regionToChunk());
 		int startX = relativeOffset.getX() > 0 ? 0 : 32 - (32 + relativeOffset.getX());
 		int limitX = relativeOffset.getX() > 0 ? (32 - relativeOffset.getX()) : 32;
@@ -430,6 +840,9 @@ public abstract class MCAFile<T extends Chunk> {
 
 		for (int x = startX; x < limitX; x++) {
 			for (int z = startZ; z < limitZ; z++) {
+				if (cancelled.getAsBoolean()) {
+					return;
+				}
 				int sourceIndex = z * 32 + x;
 				int destX = relativeOffset.getX() > 0 ? relativeOffset.getX() + x : x - startX;
 				int destZ = relativeOffset.getZ() > 0 ? relativeOffset.getZ() + z : z - startZ;
@@ -438,11 +851,11 @@ public abstract class MCAFile<T extends Chunk> {
 				T sourceChunk = chunks[sourceIndex];
 				T destinationChunk = destination.chunks[destIndex];
 
-				if (!overwrite && destinationChunk != null && !destinationChunk.isEmpty()) {
+				if (sourceChunk == null || sourceChunks != null && !sourceChunks.contains(sourceChunk.getAbsoluteLocation().asLong()) || sourceChunk.isEmpty()) {
 					continue;
 				}
 
-				if (sourceChunk == null || sourceChunk.isEmpty() || sourceChunks != null && !sourceChunks.contains(sourceChunk.getAbsoluteLocation().asLong())) {
+				if (!overwrite && destinationChunk != null && !destinationChunk.isEmpty()) {
 					continue;
 				}
 
@@ -546,6 +959,15 @@ public abstract class MCAFile<T extends Chunk> {
 		sectors[index] = 0;
 	}
 
+	// only the given nbt paths will be read from chunks that have not been decompressed yet
+	public void setProjection(Set<String> projection) {
+		for (T chunk : chunks) {
+			if (chunk != null) {
+				chunk.setProjection(projection);
+			}
+		}
+	}
+
 	public boolean isEmpty() {
 		for (T chunk : chunks) {
 			if (chunk != null) {
@@ -0,0 +1,215 @@
+package net.querz.mcaselector.io.mca;
+
+import net.querz.nbt.tag.ByteArrayTag;
+import net.querz.nbt.tag.ByteTag;
+import net.querz.nbt.tag.CompoundTag;
+import net.querz.nbt.tag.DoubleTag;
+import net.querz.nbt.tag.EndTag;
+import net.querz.nbt.tag.FloatTag;
+import net.querz.nbt.tag.IntArrayTag;
+import net.querz.nbt.tag.IntTag;
+import net.querz.nbt.tag.ListTag;
+import net.querz.nbt.tag.LongArrayTag;
+import net.querz.nbt.tag.LongTag;
+import net.querz.nbt.tag.ShortTag;
+import net.querz.nbt.tag.StringTag;
+import net.querz.nbt.tag.Tag;
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// reads only the values at the requested paths (e.g. "Level.InhabitedTime") from an uncompressed nbt stream.
+// everything else is skipped by its length without being allocated.
+// the result has the same structure as the full data, so it can be used with the same methods.
+final class NBTProjectionReader {
+
+	private static final Map<Set<String>, Node> pathTrees = new ConcurrentHashMap<>();
+
+	private NBTProjectionReader() {}
+
+	static CompoundTag read(DataInput in, Set<String> paths) throws IOException {
+		Node root = pathTrees.computeIfAbsent(paths, NBTProjectionReader::createPathTree);
+
+		byte type = in.readByte();
+		if (type != CompoundTag.ID) {
+			throw new IOException("unexpected chunk data tag type " + type + ", expected " + CompoundTag.ID);
+		}
+		skip(in, in.readUnsignedShort()); // name of the root tag
+		return readCompound(in, root);
+	}
+
+	private static Node createPathTree(Set<String> paths) {
+		Node root = new Node();
+		for (String path : paths) {
+			Node node = root;
+			for (String key : path.split("\\.")) {
+				node = node.children.computeIfAbsent(key, k -> new Node());
+			}
+			node.leaf = true;
+		}
+		return root;
+	}
+
+	private static CompoundTag readCompound(DataInput in, Node node) throws IOException {
+		CompoundTag result = new CompoundTag();
+		byte type;
+		while ((type = in.readByte()) != EndTag.ID) {
+			String name = in.readUTF();
+			Node child = node.children.get(name);
+			if (child == null) {
+				skipPayload(in, type);
+			} else if (child.leaf) {
+				result.put(name, readPayload(in, type, 0));
+			} else if (type == CompoundTag.ID) {
+				CompoundTag compound = readCompound(in, child);
+				if (compound.size() > 0) {
+					result.put(name, compound);
+				}
+			} else {
+				skipPayload(in, type);
+			}
+		}
+		return result;
+	}
+
+	private static Tag<?> readPayload(DataInput in, byte type, int depth) throws IOException {
+		if (depth > Tag.DEFAULT_MAX_DEPTH) {
+			throw new IOException("reached maximum depth of " + Tag.DEFAULT_MAX_DEPTH);
+		}
+		return switch (type) {
+			case ByteTag.ID -> new ByteTag(in.readByte());
+			case ShortTag.ID -> new ShortTag(in.readShort());
+			case IntTag.ID -> new IntTag(in.readInt());
+			case LongTag.ID -> new LongTag(in.readLong());
+			case FloatTag.ID -> new FloatTag(in.readFloat());
+			case DoubleTag.ID -> new DoubleTag(in.readDouble());
+			case ByteArrayTag.ID -> {
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				yield new ByteArrayTag(bytes);
+			}
+			case StringTag.ID -> new StringTag(in.readUTF());
+			case ListTag.ID -> {
+				byte listType = in.readByte();
+				int length = in.readInt();
+				@SuppressWarnings("unchecked")
+				ListTag<Tag<?>> list = (ListTag<Tag<?>>) ListTag.createUnchecked(getTagClass(listType));
+				for (int i = 0; i < length; i++) {
+					list.add(readPayload(in, listType, depth + 1));
+				}
+				yield list;
+			}
+			case CompoundTag.ID -> {
+				CompoundTag compound = new CompoundTag();
+				byte t;
+				while ((t = in.readByte()) != EndTag.ID) {
+					String name = in.readUTF();
+					compound.put(name, readPayload(in, t, depth + 1));
+				}
+				yield compound;
+			}
+			case IntArrayTag.ID -> {
+				int[] ints = new int[in.readInt()];
+				for (int i = 0; i < ints.length; i++) {
+					ints[i] = in.readInt();
+				}
+				yield new IntArrayTag(ints);
+			}
+			case LongArrayTag.ID -> {
+				long[] longs = new long[in.readInt()];
+				for (int i = 0; i < longs.length; i++) {
+					longs[i] = in.readLong();
+				}
+				yield new LongArrayTag(longs);
+			}
+			default -> throw new IOException("invalid tag type " + type);
+		};
+	}
+
+	private static void skipPayload(DataInput in, byte type) throws IOException {
+		switch (type) {
+			case ByteTag.ID -> skip(in, 1);
+			case ShortTag.ID -> skip(in, 2);
+			case IntTag.ID, FloatTag.ID -> skip(in, 4);
+			case LongTag.ID, DoubleTag.ID -> skip(in, 8);
+			case ByteArrayTag.ID -> skip(in, in.readInt());
+			case StringTag.ID -> skip(in, in.readUnsignedShort());
+			case ListTag.ID -> {
+				byte listType = in.readByte();
+				int length = in.readInt();
+				int size = getPayloadSize(listType);
+				if (size >= 0) {
+					skip(in, (long) size * length);
+				} else {
+					for (int i = 0; i < length; i++) {
+						skipPayload(in, listType);
+					}
+				}
+			}
+			case CompoundTag.ID -> {
+				byte t;
+				while ((t = in.readByte()) != EndTag.ID) {
+					skip(in, in.readUnsignedShort());
+					skipPayload(in, t);
+				}
+			}
+			case IntArrayTag.ID -> skip(in, in.readInt() * 4L);
+			case LongArrayTag.ID -> skip(in, in.readInt() * 8L);
+			default -> throw new IOException("invalid tag type " + type);
+		}
+	}
+
+	// returns -1 if the payload size of this tag type is not fixed
+	private static int getPayloadSize(byte type) {
+		return switch (type) {
+			case EndTag.ID -> 0;
+			case ByteTag.ID -> 1;
+			case ShortTag.ID -> 2;
+			case IntTag.ID, FloatTag.ID -> 4;
+			case LongTag.ID, DoubleTag.ID -> 8;
+			default -> -1;
+		};
+	}
+
+	private static Class<?> getTagClass(byte type) throws IOException {
+		return switch (type) {
+			case EndTag.ID -> EndTag.class;
+			case ByteTag.ID -> ByteTag.class;
+			case ShortTag.ID -> ShortTag.class;
+			case IntTag.ID -> IntTag.class;
+			case LongTag.ID -> LongTag.class;
+			case FloatTag.ID -> FloatTag.class;
+			case DoubleTag.ID -> DoubleTag.class;
+			case ByteArrayTag.ID -> ByteArrayTag.class;
+			case StringTag.ID -> StringTag.class;
+			case ListTag.ID -> ListTag.class;
+			case CompoundTag.ID -> CompoundTag.class;
+			case IntArrayTag.ID -> IntArrayTag.class;
+			case LongArrayTag.ID -> LongArrayTag.class;
+			default -> throw new IOException("invalid tag type " + type);
+		};
+	}
+
+	private static void skip(DataInput in, long n) throws IOException {
+		if (n < 0) {
+			throw new IOException("invalid payload length " + n);
+		}
+		while (n > 0) {
+			int skipped = in.skipBytes((int) Math.min(n, Integer.MAX_VALUE));
+			if (skipped <= 0) {
+				// skipBytes doesn't tell us whether we reached the end of the stream
+				in.readByte();
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+
+	private static class Node {
+		final Map<String, Node> children = new HashMap<>();
+		boolean leaf;
+	}
+}
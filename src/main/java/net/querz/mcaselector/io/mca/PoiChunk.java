@@ -19,14 +19,14 @@ public class PoiChunk extends Chunk implements Cloneable {
 
 	@Override
 	public boolean relocate(Point3i offset) {
-		ChunkRelocator relocator = VersionController.getPoiRelocator(data.getInt("DataVersion"));
-		return relocator.relocate(data, offset);
+		ChunkRelocator relocator = VersionController.getPoiRelocator(getData().getInt("DataVersion"));
+		return relocator.relocate(getData(), offset);
 	}
 
 	@Override
 	public void merge(CompoundTag destination, List<Range> ranges, int yOffset) {
-		ChunkMerger merger = VersionController.getPoiMerger(data.getInt("DataVersion"));
-		merger.mergeChunks(data, destination, ranges, yOffset);
+		ChunkMerger merger = VersionController.getPoiMerger(getData().getInt("DataVersion"));
+		merger.mergeChunks(getData(), destination, ranges, yOffset);
 	}
 
 	@Override
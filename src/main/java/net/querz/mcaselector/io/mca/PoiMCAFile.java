@@ -9,6 +9,7 @@ import net.querz.mcaselector.version.VersionController;
 import net.querz.nbt.tag.CompoundTag;
 import java.io.File;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 
 public class PoiMCAFile extends MCAFile<PoiChunk> implements Cloneable {
 
@@ -27,8 +28,8 @@ public class PoiMCAFile extends MCAFile<PoiChunk> implements Cloneable {
 	}
 
 	@Override
-	public void mergeChunksInto(MCAFile<PoiChunk> destination, Point3i offset, boolean overwrite, LongOpenHashSet sourceChunks, LongOpenHashSet selection, List<Range> ranges) {
-		mergeChunksInto(destination, offset, overwrite, sourceChunks, selection, ranges, PoiMCAFile::newEmptyChunk);
+	public void mergeChunksInto(MCAFile<PoiChunk> destination, Point3i offset, boolean overwrite, LongOpenHashSet sourceChunks, LongOpenHashSet selection, List<Range> ranges, BooleanSupplier cancelled) {
+		mergeChunksInto(destination, offset, overwrite, sourceChunks, selection, ranges, cancelled, PoiMCAFile::newEmptyChunk);
 	}
 
 	@Override
@@ -4,7 +4,9 @@ import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import net.querz.mcaselector.changer.Field;
 import net.querz.mcaselector.debug.Debug;
 import net.querz.mcaselector.filter.Filter;
+import net.querz.mcaselector.filter.RequiredData;
 import net.querz.mcaselector.io.ByteArrayPointer;
+import net.querz.mcaselector.io.DataPointer;
 import net.querz.mcaselector.io.RegionDirectories;
 import net.querz.mcaselector.io.SelectionData;
 import net.querz.mcaselector.point.Point2i;
@@ -13,7 +15,10 @@ import net.querz.mcaselector.progress.Timer;
 import net.querz.mcaselector.range.Range;
 import java.io.File;
 import java.io.IOException;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
 
 // holds data for chunks, poi and entities
 public class Region {
@@ -26,17 +31,49 @@ public class Region {
 
 	private Point2i location;
 
-	public static Region loadRegion(RegionDirectories dirs, byte[] regionData, byte[] poiData, byte[] entitiesData) throws IOException {
+	public static Region loadRegion(RegionDirectories dirs, DataPointer regionData, DataPointer poiData, DataPointer entitiesData) throws IOException {
 		Region r = new Region();
 		if (dirs.getRegion() != null && regionData != null) {
-			r.loadRegion(dirs.getRegion(), new ByteArrayPointer(regionData));
+			r.loadRegion(dirs.getRegion(), regionData);
 			r.location = dirs.getLocation();
 		}
 		if (dirs.getPoi() != null && poiData != null) {
-			r.loadPoi(dirs.getPoi(), new ByteArrayPointer(poiData));
+			r.loadPoi(dirs.getPoi(), poiData);
 		}
 		if (dirs.getEntities() != null && entitiesData != null) {
-			r.loadEntities(dirs.getEntities(), new ByteArrayPointer(entitiesData));
+			r.loadEntities(dirs.getEntities(), entitiesData);
+		}
+		r.directories = dirs;
+		return r;
+	}
+
+	// only creates chunks from the headers of files whose data is not required
+	public static Region loadRegion(RegionDirectories dirs, DataPointer regionData, DataPointer poiData, DataPointer entitiesData, EnumSet<RequiredData> required) throws IOException {
+		Region r = new Region();
+		if (dirs.getRegion() != null && regionData != null) {
+			r.region = new RegionMCAFile(dirs.getRegion());
+			if (required.contains(RequiredData.REGION)) {
+				r.region.load(regionData);
+			} else {
+				r.region.loadHeaderChunks(regionData);
+			}
+			r.location = dirs.getLocation();
+		}
+		if (dirs.getPoi() != null && poiData != null) {
+			r.poi = new PoiMCAFile(dirs.getPoi());
+			if (required.contains(RequiredData.POI)) {
+				r.poi.load(poiData);
+			} else {
+				r.poi.loadHeaderChunks(poiData);
+			}
+		}
+		if (dirs.getEntities() != null && entitiesData != null) {
+			r.entities = new EntitiesMCAFile(dirs.getEntities());
+			if (required.contains(RequiredData.ENTITIES)) {
+				r.entities.load(entitiesData);
+			} else {
+				r.entities.loadHeaderChunks(entitiesData);
+			}
 		}
 		r.directories = dirs;
 		return r;
@@ -106,7 +143,7 @@ public class Region {
 		region.load();
 	}
 
-	public void loadRegion(File src, ByteArrayPointer ptr) throws IOException {
+	public void loadRegion(File src, DataPointer ptr) throws IOException {
 		region = new RegionMCAFile(src);
 		region.load(ptr);
 	}
@@ -116,7 +153,7 @@ public class Region {
 		poi.load();
 	}
 
-	public void loadPoi(File src, ByteArrayPointer ptr) throws IOException {
+	public void loadPoi(File src, DataPointer ptr) throws IOException {
 		poi = new PoiMCAFile(src);
 		poi.load(ptr);
 	}
@@ -126,11 +163,18 @@ public class Region {
 		entities.load();
 	}
 
-	public void loadEntities(File src, ByteArrayPointer ptr) throws IOException {
+	public void loadEntities(File src, DataPointer ptr) throws IOException {
 		entities = new EntitiesMCAFile(src);
 		entities.load(ptr);
 	}
 
+	// only the given nbt paths will be read from the region chunks, e.g. when evaluating a filter
+	public void setProjection(Set<String> projection) {
+		if (region != null) {
+			region.setProjection(projection);
+		}
+	}
+
 	public RegionMCAFile getRegion() {
 		return region;
 	}
@@ -234,6 +278,19 @@ public class Region {
 		}
 	}
 
+	// compresses all changed chunks ahead of the next save
+	public void encode() throws IOException {
+		if (region != null) {
+			region.encode();
+		}
+		if (poi != null) {
+			poi.encode();
+		}
+		if (entities != null) {
+			entities.encode();
+		}
+	}
+
 	public void save() throws IOException {
 		if (region != null) {
 			region.save();
@@ -258,6 +315,19 @@ public class Region {
 		}
 	}
 
+	// only writes the chunks that changed since the files were loaded into the existing files
+	public void saveInPlace() throws IOException {
+		if (region != null) {
+			region.saveInPlace();
+		}
+		if (poi != null) {
+			poi.saveInPlace();
+		}
+		if (entities != null) {
+			entities.saveInPlace();
+		}
+	}
+
 	public void saveWithTempFiles(RegionDirectories dest) throws IOException {
 		if (region != null) {
 			region.saveWithTempFile(dest.getRegion());
@@ -319,38 +389,36 @@ public class Region {
 	}
 
 	public boolean deleteChunks(Filter<?> filter, SelectionData selection) {
-		boolean deleted = false;
+		// evaluate the filter for all chunks first, chunks are deleted afterwards
+		boolean[] delete = new boolean[1024];
 		Point2i regionChunk = location.regionToChunk();
-		for (int i = 0; i < 1024; i++) {
+		ChunkForkJoin.forEachChunk(i -> {
 			RegionChunk region = this.region.getChunk(i);
 			EntitiesChunk entities = this.entities == null ? null : this.entities.getChunk(i);
 			PoiChunk poi = this.poi == null ? null : this.poi.getChunk(i);
 
-			if (region == null || region.isEmpty() || selection != null && !selection.isRegionSelected(region.getAbsoluteLocation())) {
-				continue;
+			if (region == null || selection != null && !selection.isRegionSelected(region.getAbsoluteLocation()) || region.isEmpty()) {
+				return;
 			}
 
 			ChunkData filterData = new ChunkData(region, poi, entities);
 
 			Point2i chunk = new Point2i(i & 31, i >> 5).add(regionChunk);
-			if ((selection == null || selection.isChunkSelected(chunk)) && filter.matches(filterData)) {
-				deleteChunkIndex(i);
-				deleted = true;
-			}
-		}
-		return deleted;
+			delete[i] = (selection == null || selection.isChunkSelected(chunk)) && filter.matches(filterData);
+		});
+		return deleteChunkIndices(delete);
 	}
 
 	public boolean keepChunks(Filter<?> filter, SelectionData selection) {
-		boolean deleted = false;
+		boolean[] delete = new boolean[1024];
 		Point2i regionChunk = location.regionToChunk();
-		for (int i = 0; i < 1024; i++) {
+		ChunkForkJoin.forEachChunk(i -> {
 			RegionChunk region = this.region.getChunk(i);
 			EntitiesChunk entities = this.entities == null ? null : this.entities.getChunk(i);
 			PoiChunk poi = this.poi == null ? null : this.poi.getChunk(i);
 
 			if (region == null || region.isEmpty()) {
-				continue;
+				return;
 			}
 
 			ChunkData filterData = new ChunkData(region, poi, entities);
@@ -358,7 +426,15 @@ public class Region {
 			// keep chunk if filter AND selection applies
 			// ignore selection if it's null
 			Point2i chunk = new Point2i(i & 31, i >> 5).add(regionChunk);
-			if (!filter.matches(filterData) || selection != null && !selection.isChunkSelected(chunk)) {
+			delete[i] = !filter.matches(filterData) || selection != null && !selection.isChunkSelected(chunk);
+		});
+		return deleteChunkIndices(delete);
+	}
+
+	private boolean deleteChunkIndices(boolean[] delete) {
+		boolean deleted = false;
+		for (int i = 0; i < 1024; i++) {
+			if (delete[i]) {
 				deleteChunkIndex(i);
 				deleted = true;
 			}
@@ -378,65 +454,80 @@ public class Region {
 		}
 	}
 
-	public LongOpenHashSet getFilteredChunks(Filter<?> filter, SelectionData selection) {
-		LongOpenHashSet chunks = new LongOpenHashSet();
+	// returns null if cancelled returned true before all chunks were checked
+	public LongOpenHashSet getFilteredChunks(Filter<?> filter, SelectionData selection, BooleanSupplier cancelled) {
+		// filled in parallel, the matching chunks are collected afterwards
+		Point2i[] matches = new Point2i[1024];
 
 		Point2i regionChunk = location.regionToChunk();
-		for (int i = 0; i < 1024; i++) {
+		boolean completed = ChunkForkJoin.forEachChunk(i -> {
 			RegionChunk region = this.region.getChunk(i);
 			EntitiesChunk entities = this.entities == null ? null : this.entities.getChunk(i);
 			PoiChunk poi = this.poi == null ? null : this.poi.getChunk(i);
 
-			if (region == null || region.isEmpty()) {
-				continue;
+			Point2i chunk = new Point2i(i & 31, i >> 5).add(regionChunk);
+
+			// check the selection first so unselected chunks don't need to be decompressed
+			if (region == null || selection != null && !selection.isChunkSelected(chunk) || region.isEmpty()) {
+				return;
 			}
 
 			ChunkData filterData = new ChunkData(region, poi, entities);
 
 			Point2i location = region.getAbsoluteLocation();
 			if (location == null) {
-				continue;
+				return;
 			}
 
 			try {
-				Point2i chunk = new Point2i(i & 31, i >> 5).add(regionChunk);
-				if ((selection == null || selection.isChunkSelected(chunk)) && filter.matches(filterData)) {
-					chunks.add(location.asLong());
+				if (filter.matches(filterData)) {
+					matches[i] = location;
 				}
 			} catch (Exception ex) {
 				Debug.dumpException(String.format("failed to select chunk %s", location), ex);
 			}
+		}, cancelled);
+
+		if (!completed) {
+			return null;
+		}
+
+		LongOpenHashSet chunks = new LongOpenHashSet();
+		for (Point2i match : matches) {
+			if (match != null) {
+				chunks.add(match.asLong());
+			}
 		}
 		return chunks;
 	}
 
-	public void applyFieldChanges(List<Field<?>> fields, boolean force, SelectionData selection) {
+	// returns false if cancelled returned true before all chunks were changed, the region must not be saved then
+	public boolean applyFieldChanges(List<Field<?>> fields, boolean force, SelectionData selection, BooleanSupplier cancelled) {
 		Timer t = new Timer();
-		for (int x = 0; x < 32; x++) {
-			for (int z = 0; z < 32; z++) {
-				Point2i absoluteLocation = location.regionToChunk().add(x, z);
-				ChunkData chunkData = getChunkDataAt(absoluteLocation);
-				if (selection == null || selection.isChunkSelected(absoluteLocation)) {
-					try {
-						chunkData.applyFieldChanges(fields, force);
-					} catch (Exception ex) {
-						Debug.dumpException("failed to apply field changes to chunk " + absoluteLocation, ex);
-					}
+		boolean completed = ChunkForkJoin.forEachChunk(i -> {
+			Point2i absoluteLocation = location.regionToChunk().add(i & 31, i >> 5);
+			ChunkData chunkData = getChunkDataAt(absoluteLocation);
+			if (selection == null || selection.isChunkSelected(absoluteLocation)) {
+				try {
+					chunkData.applyFieldChanges(fields, force);
+				} catch (Exception ex) {
+					Debug.dumpException("failed to apply field changes to chunk " + absoluteLocation, ex);
 				}
 			}
-		}
+		}, cancelled);
 		Debug.printf("took %s to apply field changes to region %s", t, location);
+		return completed;
 	}
 
-	public void mergeInto(Region region, Point3i offset, boolean overwrite, LongOpenHashSet sourceChunks, LongOpenHashSet selection, List<Range> ranges) {
+	public void mergeInto(Region region, Point3i offset, boolean overwrite, LongOpenHashSet sourceChunks, LongOpenHashSet selection, List<Range> ranges, BooleanSupplier cancelled) {
 		if (this.region != null) {
-			this.region.mergeChunksInto(region.region, offset, overwrite, sourceChunks, selection, ranges);
+			this.region.mergeChunksInto(region.region, offset, overwrite, sourceChunks, selection, ranges, cancelled);
 		}
 		if (this.poi != null) {
-			this.poi.mergeChunksInto(region.poi, offset, overwrite, sourceChunks, selection, ranges);
+			this.poi.mergeChunksInto(region.poi, offset, overwrite, sourceChunks, selection, ranges, cancelled);
 		}
 		if (this.entities != null) {
-			this.entities.mergeChunksInto(region.entities, offset, overwrite, sourceChunks, selection, ranges);
+			this.entities.mergeChunksInto(region.entities, offset, overwrite, sourceChunks, selection, ranges, cancelled);
 		}
 	}
 
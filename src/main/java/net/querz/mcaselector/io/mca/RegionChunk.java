@@ -20,14 +20,14 @@ public class RegionChunk extends Chunk implements Cloneable {
 
 	@Override
 	public boolean relocate(Point3i offset) {
-		ChunkRelocator relocator = VersionController.getChunkRelocator(data.getInt("DataVersion"));
-		return relocator.relocate(data, offset);
+		ChunkRelocator relocator = VersionController.getChunkRelocator(getData().getInt("DataVersion"));
+		return relocator.relocate(getData(), offset);
 	}
 
 	@Override
 	public void merge(CompoundTag destination, List<Range> ranges, int yOffset) {
-		ChunkMerger merger = VersionController.getChunkMerger(data.getInt("DataVersion"));
-		merger.mergeChunks(data, destination, ranges, yOffset);
+		ChunkMerger merger = VersionController.getChunkMerger(getData().getInt("DataVersion"));
+		merger.mergeChunks(getData(), destination, ranges, yOffset);
 	}
 
 	@Override
@@ -10,6 +10,7 @@ import net.querz.mcaselector.version.VersionController;
 import net.querz.nbt.tag.CompoundTag;
 import java.io.File;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 
 public class RegionMCAFile extends MCAFile<RegionChunk> implements Cloneable {
 
@@ -32,24 +33,26 @@ public class RegionMCAFile extends MCAFile<RegionChunk> implements Cloneable {
 	}
 
 	@Override
-	public void mergeChunksInto(MCAFile<RegionChunk> destination, Point3i offset, boolean overwrite, LongOpenHashSet sourceChunks, LongOpenHashSet selection, List<Range> ranges) {
-		mergeChunksInto(destination, offset, overwrite, sourceChunks, selection, ranges, RegionMCAFile::newEmptyChunk);
+	public void mergeChunksInto(MCAFile<RegionChunk> destination, Point3i offset, boolean overwrite, LongOpenHashSet sourceChunks, LongOpenHashSet selection, List<Range> ranges, BooleanSupplier cancelled) {
+		mergeChunksInto(destination, offset, overwrite, sourceChunks, selection, ranges, cancelled, RegionMCAFile::newEmptyChunk);
 	}
 
 	public RegionMCAFile minimizeForRendering() {
 		RegionMCAFile min = new RegionMCAFile(getLocation());
 		min.setFile(getFile());
+		// the chunk timestamps are stored with the rendered image to find the chunks that changed later
+		min.timestamps = timestamps.clone();
 		min.chunks = new RegionChunk[1024];
 
 		for (int index = 0; index < 1024; index++) {
 			RegionChunk chunk = getChunk(index);
-			if (chunk == null || chunk.data == null) {
+			if (chunk == null || chunk.getData() == null) {
 				continue;
 			}
 
 			try {
-				ChunkRenderer chunkRenderer = VersionController.getChunkRenderer(chunk.data.getInt("DataVersion"));
-				CompoundTag minData = chunkRenderer.minimizeChunk(chunk.data);
+				ChunkRenderer chunkRenderer = VersionController.getChunkRenderer(chunk.getData().getInt("DataVersion"));
+				CompoundTag minData = chunkRenderer.minimizeChunk(chunk.getData());
 
 				RegionChunk minChunk = new RegionChunk(chunk.absoluteLocation.clone());
 				minChunk.data = minData;
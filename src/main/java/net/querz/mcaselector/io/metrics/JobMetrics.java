@@ -0,0 +1,282 @@
+package net.querz.mcaselector.io.metrics;
+
+import net.querz.mcaselector.debug.Debug;
+import net.querz.mcaselector.validation.ShutdownHooks;
+import org.json.JSONObject;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Collects latency histograms per job type and phase, the number of bytes read and written and
+ * gauges like queue depths. Everything is exposed as MBeans under the domain net.querz.mcaselector
+ * and can be written to a JSON file periodically.
+ * Phases that work on single chunks can run on any thread, so they are recorded under the job type "chunk".
+ */
+public final class JobMetrics {
+
+	public enum Phase {
+		READ("read"),
+		INFLATE("inflate"),
+		PARSE("parse"),
+		DECODE("decode"),
+		PROCESS("process"),
+		SERIALIZE("serialize"),
+		DEFLATE("deflate"),
+		ENCODE("encode"),
+		WRITE("write");
+
+		private final String name;
+
+		Phase(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	private static final String DOMAIN = "net.querz.mcaselector";
+	public static final String CHUNK = "chunk";
+
+	private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+	private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+	private static final LongAdder bytesRead = new LongAdder();
+	private static final LongAdder bytesWritten = new LongAdder();
+
+	// rates are sampled once per second, so every reader of the metrics sees the same values
+	private static volatile double readRate, writeRate;
+	private static long lastRead, lastWritten, lastSample = System.nanoTime();
+
+	private static final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "metricsSampler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private static ScheduledFuture<?> snapshots;
+
+	static {
+		sampler.scheduleAtFixedRate(JobMetrics::sampleRates, 1, 1, TimeUnit.SECONDS);
+		register(new ObjectNameBuilder("JobMetrics").build(), new MBean());
+	}
+
+	private JobMetrics() {}
+
+	public static void record(String jobType, Phase phase, long nanos) {
+		histograms.computeIfAbsent(jobType + "." + phase, k -> createHistogram(jobType, phase)).record(nanos);
+	}
+
+	public static void recordChunk(Phase phase, long nanos) {
+		record(CHUNK, phase, nanos);
+	}
+
+	public static void addBytesRead(long bytes) {
+		bytesRead.add(bytes);
+	}
+
+	public static void addBytesWritten(long bytes) {
+		bytesWritten.add(bytes);
+	}
+
+	// registers a value that is read whenever the metrics are read, e.g. the size of a queue
+	public static void registerGauge(String name, LongSupplier gauge) {
+		gauges.put(name, gauge);
+	}
+
+	public static LatencyHistogram getHistogram(String jobType, Phase phase) {
+		return histograms.get(jobType + "." + phase);
+	}
+
+	private static LatencyHistogram createHistogram(String jobType, Phase phase) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		register(new ObjectNameBuilder("JobLatency").add("job", jobType).add("phase", phase.toString()).build(), histogram);
+		return histogram;
+	}
+
+	private static void register(String name, Object mbean) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(name);
+			if (!server.isRegistered(objectName)) {
+				server.registerMBean(mbean, objectName);
+			}
+		} catch (Exception ex) {
+			Debug.dumpException("failed to register mbean " + name, ex);
+		}
+	}
+
+	private static synchronized void sampleRates() {
+		long now = System.nanoTime();
+		long read = bytesRead.sum(), written = bytesWritten.sum();
+		double seconds = (now - lastSample) / 1_000_000_000D;
+		if (seconds > 0) {
+			readRate = (read - lastRead) / seconds;
+			writeRate = (written - lastWritten) / seconds;
+		}
+		lastRead = read;
+		lastWritten = written;
+		lastSample = now;
+	}
+
+	public static JSONObject toJSON() {
+		JSONObject root = new JSONObject();
+		root.put("time", System.currentTimeMillis());
+
+		JSONObject g = new JSONObject();
+		for (Map.Entry<String, Long> gauge : getGauges().entrySet()) {
+			g.put(gauge.getKey(), gauge.getValue());
+		}
+		root.put("gauges", g);
+
+		JSONObject io = new JSONObject();
+		io.put("bytesRead", bytesRead.sum());
+		io.put("bytesWritten", bytesWritten.sum());
+		io.put("readBytesPerSecond", readRate);
+		io.put("writtenBytesPerSecond", writeRate);
+		root.put("io", io);
+
+		// grouped by job type, then by phase
+		JSONObject latencies = new JSONObject();
+		for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+			int dot = entry.getKey().lastIndexOf('.');
+			String jobType = entry.getKey().substring(0, dot);
+			JSONObject job = latencies.optJSONObject(jobType);
+			if (job == null) {
+				latencies.put(jobType, job = new JSONObject());
+			}
+			LatencyHistogram h = entry.getValue();
+			JSONObject l = new JSONObject();
+			l.put("count", h.getCount());
+			l.put("totalMillis", h.getTotalNanos() / 1_000_000D);
+			l.put("meanMillis", h.getMeanMillis());
+			l.put("p50Millis", h.getP50Millis());
+			l.put("p90Millis", h.getP90Millis());
+			l.put("p99Millis", h.getP99Millis());
+			l.put("maxMillis", h.getMaxMillis());
+			job.put(entry.getKey().substring(dot + 1), l);
+		}
+		root.put("latencies", latencies);
+		return root;
+	}
+
+	private static Map<String, Long> getGauges() {
+		Map<String, Long> values = new TreeMap<>();
+		for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+			values.put(gauge.getKey(), gauge.getValue().getAsLong());
+		}
+		return values;
+	}
+
+	// writes a snapshot of all metrics to the file every interval and once more when the application exits
+	public static synchronized void startSnapshots(File file, long intervalMillis) {
+		stopSnapshots();
+		snapshots = sampler.scheduleAtFixedRate(() -> writeSnapshot(file), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		ShutdownHooks.addShutdownHook(() -> {
+			stopSnapshots();
+			writeSnapshot(file);
+		});
+		Debug.dumpf("writing metrics to %s every %dms", file, intervalMillis);
+	}
+
+	public static synchronized void stopSnapshots() {
+		if (snapshots != null) {
+			snapshots.cancel(false);
+			snapshots = null;
+		}
+	}
+
+	// the snapshot is written to a temp file first, so readers never see a partially written file
+	public static void writeSnapshot(File file) {
+		try {
+			File tmp = new File(file.getPath() + ".tmp");
+			Files.writeString(tmp.toPath(), toJSON().toString(2), StandardCharsets.UTF_8);
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException ex) {
+			Debug.dumpException("failed to write metrics to " + file, ex);
+		}
+	}
+
+	public static void reset() {
+		for (LatencyHistogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+		bytesRead.reset();
+		bytesWritten.reset();
+		synchronized (JobMetrics.class) {
+			lastRead = lastWritten = 0;
+		}
+	}
+
+	private static class ObjectNameBuilder {
+
+		private final StringBuilder name;
+
+		ObjectNameBuilder(String type) {
+			name = new StringBuilder(DOMAIN).append(":type=").append(type);
+		}
+
+		ObjectNameBuilder add(String key, String value) {
+			name.append(',').append(key).append('=').append(ObjectName.quote(value));
+			return this;
+		}
+
+		String build() {
+			return name.toString();
+		}
+	}
+
+	private static class MBean implements JobMetricsMXBean {
+
+		@Override
+		public Map<String, Long> getGauges() {
+			return JobMetrics.getGauges();
+		}
+
+		@Override
+		public long getBytesRead() {
+			return bytesRead.sum();
+		}
+
+		@Override
+		public long getBytesWritten() {
+			return bytesWritten.sum();
+		}
+
+		@Override
+		public double getReadBytesPerSecond() {
+			return readRate;
+		}
+
+		@Override
+		public double getWrittenBytesPerSecond() {
+			return writeRate;
+		}
+
+		@Override
+		public String getSnapshotJSON() {
+			return toJSON().toString(2);
+		}
+
+		@Override
+		public void reset() {
+			JobMetrics.reset();
+		}
+	}
+}
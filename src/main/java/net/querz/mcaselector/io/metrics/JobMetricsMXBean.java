@@ -0,0 +1,21 @@
+package net.querz.mcaselector.io.metrics;
+
+import java.util.Map;
+
+public interface JobMetricsMXBean {
+
+	// queue depths, memory and other values that are registered by the job handler
+	Map<String, Long> getGauges();
+
+	long getBytesRead();
+
+	long getBytesWritten();
+
+	double getReadBytesPerSecond();
+
+	double getWrittenBytesPerSecond();
+
+	String getSnapshotJSON();
+
+	void reset();
+}
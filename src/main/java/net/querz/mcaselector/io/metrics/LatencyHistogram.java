@@ -0,0 +1,130 @@
+package net.querz.mcaselector.io.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records latencies in nanoseconds into buckets with a fixed relative precision, like HdrHistogram does.
+ * Values below 16 have their own bucket, every power of two above that is split into 8 buckets,
+ * so a recorded value is off by at most 12.5% while the whole range of a long fits into 488 buckets.
+ * Recording is lock-free and can be done from any number of threads.
+ */
+public class LatencyHistogram implements LatencyHistogramMXBean {
+
+	private static final int LINEAR_BUCKETS = 16;
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// the highest bit of a positive long is bit 62
+	static final int BUCKETS = LINEAR_BUCKETS + (62 - 4 + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		counts.incrementAndGet(bucket(nanos));
+		count.increment();
+		sum.add(nanos);
+		long m;
+		while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos));
+	}
+
+	static int bucket(long value) {
+		if (value < LINEAR_BUCKETS) {
+			return (int) value;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int shift = magnitude - SUB_BUCKET_BITS;
+		// the top 4 bits of the value, the highest one is always set
+		int top = (int) (value >>> shift);
+		return LINEAR_BUCKETS + (magnitude - 4) * SUB_BUCKETS + top - SUB_BUCKETS;
+	}
+
+	// the highest value that is recorded into this bucket
+	static long highestValue(int bucket) {
+		if (bucket < LINEAR_BUCKETS) {
+			return bucket;
+		}
+		int b = bucket - LINEAR_BUCKETS;
+		int magnitude = b / SUB_BUCKETS + 4;
+		long top = b % SUB_BUCKETS + SUB_BUCKETS;
+		int shift = magnitude - SUB_BUCKET_BITS;
+		return ((top + 1) << shift) - 1;
+	}
+
+	// returns the value that the given percentage of all recorded values are lower than or equal to
+	public long getPercentile(double percentile) {
+		long total = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			total += snapshot[i] = counts.get(i);
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(highestValue(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getTotalNanos() {
+		return sum.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	@Override
+	public double getMeanMillis() {
+		long c = count.sum();
+		return c == 0 ? 0 : sum.sum() / (double) c / 1_000_000D;
+	}
+
+	@Override
+	public double getP50Millis() {
+		return getPercentile(50) / 1_000_000D;
+	}
+
+	@Override
+	public double getP90Millis() {
+		return getPercentile(90) / 1_000_000D;
+	}
+
+	@Override
+	public double getP99Millis() {
+		return getPercentile(99) / 1_000_000D;
+	}
+
+	@Override
+	public double getMaxMillis() {
+		return max.get() / 1_000_000D;
+	}
+
+	// values that are recorded while resetting may be partially lost
+	@Override
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+}
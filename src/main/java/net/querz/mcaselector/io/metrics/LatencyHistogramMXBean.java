@@ -0,0 +1,18 @@
+package net.querz.mcaselector.io.metrics;
+
+public interface LatencyHistogramMXBean {
+
+	long getCount();
+
+	double getMeanMillis();
+
+	double getP50Millis();
+
+	double getP90Millis();
+
+	double getP99Millis();
+
+	double getMaxMillis();
+
+	void reset();
+}
@@ -25,6 +25,7 @@ public enum Translation {
 	STATUS_QUEUE("status.queue"),
 	STATUS_TOTAL("status.total"),
 	STATUS_OVERLAY("status.overlay"),
+	STATUS_MEMORY("status.memory"),
 	MENU_FILE("menu.file"),
 	MENU_VIEW("menu.view"),
 	MENU_SELECTION("menu.selection"),
@@ -13,8 +13,11 @@ import net.querz.mcaselector.io.db.CacheDBController;
 import net.querz.mcaselector.io.job.CachedImageLoadJob;
 import net.querz.mcaselector.io.job.RegionImageGenerator;
 import net.querz.mcaselector.point.Point2i;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.sql.SQLException;
@@ -75,7 +78,7 @@ public final class ImagePool {
 				if (zl < zoomLevel) {
 					// image is larger than needed
 					// scale down and set image to tile
-					tile.setImage(ImageHelper.scaleDownFXImage(image, Tile.SIZE / zl));
+					tile.setImage(ImageHelper.scaleDownFXImage(image, Tile.SIZE / zoomLevel));
 					tile.setLoaded(true);
 					push(zoomLevel, tile.location, tile.image);
 					return;
@@ -98,8 +101,7 @@ public final class ImagePool {
 				push(zoomLevel, tile.location, img);
 				tileMap.draw();
 				if (isImageOutdated(tile.location)) {
-					discardCachedImage(tile.location);
-					tile.setLoaded(false);
+					updateOutdatedImage(tile, zoomLevel, zoomLevel == 1 ? img : null);
 				}
 			});
 			return;
@@ -121,8 +123,7 @@ public final class ImagePool {
 						push(zoomLevel, tile.location, img);
 						tileMap.draw();
 						if (isImageOutdated(tile.location)) {
-							discardCachedImage(tile.location);
-							tile.setLoaded(false);
+							updateOutdatedImage(tile, zoomLevel, null);
 						}
 					});
 					return;
@@ -143,6 +144,25 @@ public final class ImagePool {
 			}
 		}
 
+		generate(tile, zoomLevel, null, null);
+	}
+
+	// we only need to redraw the chunks that changed in the full resolution image.
+	// full is the cached full resolution image if it was loaded already, otherwise it is loaded from the disk cache.
+	private void updateOutdatedImage(Tile tile, int zoomLevel, Image full) {
+		int[] chunkTimes = getChunkTimes(tile.location, 1);
+		if (chunkTimes != null && full == null) {
+			full = loadFullImage(tile.location);
+		}
+		discardCachedImage(tile.location);
+		if (chunkTimes != null && full != null) {
+			generate(tile, zoomLevel, full, chunkTimes);
+		} else {
+			tile.setLoaded(false);
+		}
+	}
+
+	private void generate(Tile tile, int zoomLevel, Image previous, int[] previousChunkTimes) {
 		RegionImageGenerator.setLoading(tile, true);
 		RegionImageGenerator.generate(tile, (img, uuid) -> {
 			tile.setImage(img);
@@ -155,7 +175,7 @@ public final class ImagePool {
 			} catch (SQLException e) {
 				e.printStackTrace();
 			}
-		}, zoomLevel, null, true, () -> tileMap.getTilePriority(tile.getLocation()));
+		}, zoomLevel, null, true, () -> tileMap.getTilePriority(tile.getLocation()), previous, previousChunkTimes);
 	}
 
 	public boolean isImageOutdated(Point2i region) {
@@ -171,6 +191,29 @@ public final class ImagePool {
 		}
 	}
 
+	private int[] getChunkTimes(Point2i region, int zoomLevel) {
+		try {
+			return cache.getChunkTimes(region, zoomLevel);
+		} catch (SQLException | IOException ex) {
+			Debug.dumpException("failed to read chunk times of " + region, ex);
+		}
+		return null;
+	}
+
+	private Image loadFullImage(Point2i region) {
+		File file = FileHelper.createPNGFilePath(Config.getCacheDir(), 1, region);
+		if (!file.exists()) {
+			return null;
+		}
+		try (InputStream is = new BufferedInputStream(new FileInputStream(file))) {
+			Image image = new Image(is);
+			return image.isError() ? null : image;
+		} catch (IOException ex) {
+			Debug.dumpException("failed to load full resolution image of " + region, ex);
+		}
+		return null;
+	}
+
 	private long readLastModifiedDate(Point2i region) {
 		try {
 			BasicFileAttributes bfa = Files.readAttributes(FileHelper.createMCAFilePath(region).toPath(), BasicFileAttributes.class);
@@ -9,6 +9,7 @@ import net.querz.mcaselector.debug.Debug;
 import net.querz.mcaselector.io.FileHelper;
 import net.querz.mcaselector.io.JobHandler;
 import net.querz.mcaselector.io.NamedThreadFactory;
+import net.querz.mcaselector.io.VirtualThreads;
 import net.querz.mcaselector.io.db.CacheDBController;
 import net.querz.mcaselector.io.job.ParseDataJob;
 import net.querz.mcaselector.point.Point2i;
@@ -18,8 +19,9 @@ import java.awt.*;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -28,14 +30,11 @@ import java.util.function.Consumer;
 public class OverlayPool {
 
 	private final TileMap tileMap;
-	private final Set<Point2i> noData = new HashSet<>();
+	// written by the parse threads
+	private final Set<Point2i> noData = ConcurrentHashMap.newKeySet();
 
-	// used to load and render data asynchronously from db
-	private final ThreadPoolExecutor overlayCacheLoaders = new ThreadPoolExecutor(
-			4, 4,
-			0L, TimeUnit.MILLISECONDS,
-			new LinkedBlockingQueue<>(),
-			new NamedThreadFactory("overlayCachePool"));
+	// used to load and render data asynchronously from db, with a virtual thread per lookup if they are enabled
+	private final ExecutorService overlayCacheLoaders = VirtualThreads.newExecutor("overlayCachePool", 4);
 
 	// used to load region data from db asynchronously to be displayed in the status bar
 	private final ThreadPoolExecutor overlayValueLoader = new ThreadPoolExecutor(
@@ -123,7 +122,7 @@ public class OverlayPool {
 							tileMap.draw();
 						}
 					}
-				}, parser, () -> tileMap.getTilePriority(tile.location)));
+				}, parserClone, () -> tileMap.getTilePriority(tile.location)));
 			}
 		});
 	}
@@ -12,6 +12,7 @@ import net.querz.mcaselector.Config;
 import net.querz.mcaselector.debug.Debug;
 import net.querz.mcaselector.io.FileHelper;
 import net.querz.mcaselector.io.mca.Chunk;
+import net.querz.mcaselector.io.mca.ChunkForkJoin;
 import net.querz.mcaselector.io.mca.RegionMCAFile;
 import net.querz.mcaselector.math.MathUtil;
 import net.querz.mcaselector.point.Point2f;
@@ -19,6 +20,8 @@ import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.ui.Color;
 import net.querz.mcaselector.io.ImageHelper;
 import net.querz.mcaselector.version.VersionController;
+import java.util.BitSet;
+import java.util.function.BooleanSupplier;
 
 public final class TileImage {
 
@@ -111,6 +114,11 @@ public final class TileImage {
 	}
 
 	public static Image generateImage(RegionMCAFile mcaFile, int scale) {
+		return generateImage(mcaFile, scale, () -> false);
+	}
+
+	// returns null if cancelled returned true before all chunks were drawn
+	public static Image generateImage(RegionMCAFile mcaFile, int scale, BooleanSupplier cancelled) {
 
 		int size = Tile.SIZE / scale;
 		int chunkSize = Tile.CHUNK_SIZE / scale;
@@ -125,18 +133,22 @@ public final class TileImage {
 			short[] terrainHeights = new short[pixels];
 			short[] waterHeights = Config.shade() && Config.shadeWater() && !Config.renderCaves() ? new short[pixels] : null;
 
-			for (int cx = 0; cx < Tile.SIZE_IN_CHUNKS; cx++) {
-				for (int cz = 0; cz < Tile.SIZE_IN_CHUNKS; cz++) {
-					int index = cz  * Tile.SIZE_IN_CHUNKS + cx;
+			// every chunk only writes its own pixels, so chunks can be drawn in parallel
+			boolean completed = ChunkForkJoin.forEachChunk(index -> {
+				int cx = index % Tile.SIZE_IN_CHUNKS;
+				int cz = index / Tile.SIZE_IN_CHUNKS;
 
-					Chunk data = mcaFile.getChunk(index);
-
-					if (data == null) {
-						continue;
-					}
+				Chunk data = mcaFile.getChunk(index);
 
-					drawChunkImage(data, cx * chunkSize, cz * chunkSize, scale, pixelBuffer, waterPixels, terrainHeights, waterHeights);
+				if (data == null) {
+					return;
 				}
+
+				drawChunkImage(data, cx * chunkSize, cz * chunkSize, scale, pixelBuffer, waterPixels, terrainHeights, waterHeights);
+			}, cancelled);
+
+			if (!completed) {
+				return null;
 			}
 
 			if (Config.renderCaves()) {
@@ -154,6 +166,99 @@ public final class TileImage {
 		return null;
 	}
 
+	// redraws only the chunks in changedChunks on top of a copy of the previous image of this region.
+	// pixels next to redrawn chunks are shaded again as well, because their shading depends on the heights of the
+	// redrawn chunks, so the surrounding chunks are drawn too when shading is enabled.
+	// returns null if cancelled returned true before all chunks were drawn.
+	public static Image updateImage(RegionMCAFile mcaFile, int scale, Image previous, BitSet changedChunks, BooleanSupplier cancelled) {
+
+		int size = Tile.SIZE / scale;
+		int chunkSize = Tile.CHUNK_SIZE / scale;
+		int pixels = Tile.PIXELS / (scale * scale);
+
+		boolean shaded = !Config.renderCaves() && Config.shade() && !Config.renderLayerOnly();
+
+		// shading looks at the neighbouring pixels, which is only covered by the surrounding chunks if a chunk is more than 1 pixel wide
+		if (previous == null || (int) previous.getWidth() != size || (int) previous.getHeight() != size || shaded && chunkSize < 2) {
+			return generateImage(mcaFile, scale, cancelled);
+		}
+
+		BitSet drawnChunks = new BitSet(Tile.CHUNKS);
+		for (int i = changedChunks.nextSetBit(0); i >= 0; i = changedChunks.nextSetBit(i + 1)) {
+			if (!shaded) {
+				drawnChunks.set(i);
+				continue;
+			}
+			int cx = i % Tile.SIZE_IN_CHUNKS;
+			int cz = i / Tile.SIZE_IN_CHUNKS;
+			for (int x = Math.max(cx - 1, 0); x <= Math.min(cx + 1, Tile.SIZE_IN_CHUNKS - 1); x++) {
+				for (int z = Math.max(cz - 1, 0); z <= Math.min(cz + 1, Tile.SIZE_IN_CHUNKS - 1); z++) {
+					drawnChunks.set(z * Tile.SIZE_IN_CHUNKS + x);
+				}
+			}
+		}
+
+		try {
+
+			WritableImage finalImage = new WritableImage(size, size);
+			PixelWriter writer = finalImage.getPixelWriter();
+			int[] pixelBuffer = new int[pixels];
+			int[] waterPixels = Config.shade() && Config.shadeWater() && !Config.renderCaves() ? new int[pixels] : null;
+			short[] terrainHeights = new short[pixels];
+			short[] waterHeights = Config.shade() && Config.shadeWater() && !Config.renderCaves() ? new short[pixels] : null;
+
+			// chunks are decompressed lazily, so chunks that are not drawn are never decoded
+			boolean completed = ChunkForkJoin.forEachChunk(index -> {
+				if (!drawnChunks.get(index)) {
+					return;
+				}
+
+				int cx = index % Tile.SIZE_IN_CHUNKS;
+				int cz = index / Tile.SIZE_IN_CHUNKS;
+
+				Chunk data = mcaFile.getChunk(index);
+
+				if (data == null) {
+					return;
+				}
+
+				drawChunkImage(data, cx * chunkSize, cz * chunkSize, scale, pixelBuffer, waterPixels, terrainHeights, waterHeights);
+			}, cancelled);
+
+			if (!completed) {
+				return null;
+			}
+
+			if (Config.renderCaves()) {
+				flatShade(pixelBuffer, terrainHeights, scale);
+			} else if (Config.shade() && !Config.renderLayerOnly()) {
+				shade(pixelBuffer, waterPixels, terrainHeights, waterHeights, scale);
+			}
+
+			int[] image = new int[pixels];
+			previous.getPixelReader().getPixels(0, 0, size, size, PixelFormat.getIntArgbPreInstance(), image, 0, size);
+
+			// copy the changed chunks and the pixels around them if their shading changed
+			int border = shaded ? 1 : 0;
+			for (int i = changedChunks.nextSetBit(0); i >= 0; i = changedChunks.nextSetBit(i + 1)) {
+				int startX = Math.max((i % Tile.SIZE_IN_CHUNKS) * chunkSize - border, 0);
+				int startZ = Math.max((i / Tile.SIZE_IN_CHUNKS) * chunkSize - border, 0);
+				int endX = Math.min((i % Tile.SIZE_IN_CHUNKS + 1) * chunkSize + border, size);
+				int endZ = Math.min((i / Tile.SIZE_IN_CHUNKS + 1) * chunkSize + border, size);
+				for (int z = startZ; z < endZ; z++) {
+					System.arraycopy(pixelBuffer, z * size + startX, image, z * size + startX, endX - startX);
+				}
+			}
+
+			writer.setPixels(0, 0, size, size, PixelFormat.getIntArgbPreInstance(), image, 0, size);
+
+			return finalImage;
+		} catch (Exception ex) {
+			Debug.dumpException("failed to update image for MCAFile " + mcaFile.getFile().getName(), ex);
+		}
+		return null;
+	}
+
 	private static void drawChunkImage(Chunk chunkData, int x, int z, int scale, int[] pixelBuffer, int[] waterPixels, short[] terrainHeights, short[] waterHeights) {
 
 		if (chunkData.getData() == null) {
@@ -259,6 +259,7 @@ public class TileMap extends Canvas implements ClipboardOwner {
 				}, new Point2f(), () -> scale, Integer.MAX_VALUE);
 
 				tilePriorities = newTilePriorities;
+				JobHandler.refreshPriorities();
 
 				Platform.runLater(this::runUpdateListeners);
 
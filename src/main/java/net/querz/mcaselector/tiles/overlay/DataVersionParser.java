@@ -1,6 +1,8 @@
 package net.querz.mcaselector.tiles.overlay;
 
 import net.querz.mcaselector.io.mca.ChunkData;
+import net.querz.mcaselector.version.ChunkFilter;
+import java.util.Set;
 
 public class DataVersionParser extends OverlayParser {
 
@@ -16,6 +18,11 @@ public class DataVersionParser extends OverlayParser {
 		return chunkData.getRegion().getData().getInt("DataVersion");
 	}
 
+	@Override
+	public Set<String> getProjection() {
+		return ChunkFilter.DATA_VERSION_PATHS;
+	}
+
 	@Override
 	public String name() {
 		return "DataVersion";
@@ -5,6 +5,7 @@ import net.querz.mcaselector.text.TextHelper;
 import net.querz.mcaselector.version.ChunkFilter;
 import net.querz.mcaselector.version.VersionController;
 import net.querz.nbt.tag.LongTag;
+import java.util.Set;
 
 public class LastUpdateParser extends OverlayParser {
 
@@ -24,6 +25,11 @@ public class LastUpdateParser extends OverlayParser {
 		return tag == null ? 0 : tag.asInt();
 	}
 
+	@Override
+	public Set<String> getProjection() {
+		return ChunkFilter.LAST_UPDATE_PATHS;
+	}
+
 	@Override
 	public String name() {
 		return "LastUpdate";
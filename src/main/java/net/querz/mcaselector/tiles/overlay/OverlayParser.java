@@ -4,6 +4,7 @@ import net.querz.mcaselector.io.mca.ChunkData;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import java.util.Arrays;
+import java.util.Set;
 import java.util.UUID;
 
 public abstract class OverlayParser implements Cloneable {
@@ -136,6 +137,12 @@ public abstract class OverlayParser implements Cloneable {
 
 	public abstract int parseValue(ChunkData chunkData);
 
+	// nbt paths this parser reads from the region chunk data. if this is not null,
+	// only these values are decoded instead of the entire chunk.
+	public Set<String> getProjection() {
+		return null;
+	}
+
 	public abstract String name();
 
 	public abstract boolean setMin(String raw);
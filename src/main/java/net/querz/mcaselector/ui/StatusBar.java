@@ -28,6 +28,7 @@ public class StatusBar extends StackPane {
 	private final Label totalRegions = new Label(Translation.STATUS_TOTAL + ": 0");
 	private final Label queuedJobs = new Label(Translation.STATUS_QUEUE + ": 0");
 	private final Label overlay = new Label(Translation.STATUS_OVERLAY + ": -");
+	private final Label memory = new Label(Translation.STATUS_MEMORY + ": -");
 
 	ImageView loadIcon = new ImageView(FileHelper.getIconFromResources("img/load"));
 	BorderPane bp = new BorderPane();
@@ -39,7 +40,7 @@ public class StatusBar extends StackPane {
 
 		tileMap.setOnUpdate(this::update);
 		tileMap.setOnHover(this::update);
-		for (int i = 0; i < 6; i++) {
+		for (int i = 0; i < 7; i++) {
 			ColumnConstraints constraints = new ColumnConstraints();
 			constraints.setMinWidth(140);
 			constraints.setFillWidth(true);
@@ -52,6 +53,7 @@ public class StatusBar extends StackPane {
 		grid.add(totalRegions, 4, 0, 1, 1);
 		grid.add(queuedJobs, 5, 0, 1, 1);
 		grid.add(overlay, 6, 0, 1, 1);
+		grid.add(memory, 7, 0, 1, 1);
 
 		StackPane.setAlignment(grid, Pos.CENTER_LEFT);
 		getChildren().add(grid);
@@ -86,6 +88,7 @@ public class StatusBar extends StackPane {
 					});
 				}
 				before.set(activeJobs);
+				updateMemory();
 			}
 		});
 		ShutdownHooks.addShutdownHook(() -> {
@@ -115,6 +118,14 @@ public class StatusBar extends StackPane {
 		}
 	}
 
+	// memory reserved by jobs / used heap / max heap
+	private void updateMemory() {
+		long reserved = JobHandler.getReservedMemory() / 1_048_576;
+		long used = (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / 1_048_576;
+		long max = Runtime.getRuntime().maxMemory() / 1_048_576;
+		Platform.runLater(() -> memory.setText(Translation.STATUS_MEMORY + ": " + reserved + " / " + used + " / " + max + " MB"));
+	}
+
 	private void updateOverlay(TileMap tileMap, Point2i chunk) {
 		if (tileMap.getOverlay() != null) {
 			OverlayParser p = tileMap.getOverlay();
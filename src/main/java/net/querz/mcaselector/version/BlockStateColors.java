@@ -0,0 +1,112 @@
+package net.querz.mcaselector.version;
+
+import net.querz.nbt.tag.CompoundTag;
+import net.querz.nbt.tag.Tag;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * A compiled color table for block states. Every distinct combination of block name and properties is interned once
+ * to a state id, and its color and tint type are resolved when it is interned. Palette entries are mapped to their
+ * state id with a concurrent cache, so looking up the color of a block state that was seen before only takes a map
+ * lookup and a single array read.
+ * A state is stored as a long, the color in the lower and the tint type in the upper 32 bits.
+ */
+public class BlockStateColors {
+
+	public static final int TINT_NONE = 0;
+	public static final int TINT_GRASS = 1;
+	public static final int TINT_FOLIAGE = 2;
+	public static final int TINT_WATER = 3;
+
+	// states that exceed this limit are resolved every time instead of being interned
+	private static final int MAX_STATES = 1 << 16;
+
+	private final ToIntFunction<CompoundTag> colorResolver;
+	private final ToIntFunction<String> tintResolver;
+
+	private final Map<CompoundTag, Integer> cache = new ConcurrentHashMap<>();
+
+	// guarded by this
+	private final Map<CompoundTag, Integer> stateIDs = new HashMap<>();
+	private volatile long[] states = new long[256];
+	private int size;
+
+	public BlockStateColors(ToIntFunction<CompoundTag> colorResolver, ToIntFunction<String> tintResolver) {
+		this.colorResolver = colorResolver;
+		this.tintResolver = tintResolver;
+	}
+
+	// returns the state id of this block state or -1 if the table is full
+	public int getStateID(CompoundTag blockState) {
+		Integer id = cache.get(blockState);
+		if (id != null) {
+			return id;
+		}
+		id = intern(blockState);
+		if (id != -1 && cache.size() < MAX_STATES) {
+			// palette entries are mutable, so we can't use them as keys
+			cache.putIfAbsent(blockState.clone(), id);
+		}
+		return id;
+	}
+
+	public long getState(int stateID) {
+		return states[stateID];
+	}
+
+	public long getState(CompoundTag blockState) {
+		int id = getStateID(blockState);
+		if (id == -1) {
+			return resolve(blockState);
+		}
+		return states[id];
+	}
+
+	public static int color(long state) {
+		return (int) state;
+	}
+
+	public static int tint(long state) {
+		return (int) (state >>> 32);
+	}
+
+	private synchronized int intern(CompoundTag blockState) {
+		// only name and properties identify a block state
+		CompoundTag key = new CompoundTag();
+		Tag<?> name = blockState.get("Name");
+		if (name != null) {
+			key.put("Name", name.clone());
+		}
+		Tag<?> properties = blockState.get("Properties");
+		if (properties != null) {
+			key.put("Properties", properties.clone());
+		}
+
+		Integer id = stateIDs.get(key);
+		if (id != null) {
+			return id;
+		}
+		if (size == MAX_STATES) {
+			return -1;
+		}
+
+		// other threads only see the id through the cache, which publishes the state as well
+		if (size == states.length) {
+			long[] grown = new long[states.length * 2];
+			System.arraycopy(states, 0, grown, 0, size);
+			states = grown;
+		}
+		states[size] = resolve(blockState);
+		stateIDs.put(key, size);
+		return size++;
+	}
+
+	private long resolve(CompoundTag blockState) {
+		int color = colorResolver.applyAsInt(blockState);
+		int tint = tintResolver.applyAsInt(Helper.stringFromCompound(blockState, "Name", ""));
+		return (long) tint << 32 | color & 0xFFFFFFFFL;
+	}
+}
@@ -7,9 +7,17 @@ import net.querz.nbt.tag.*;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Map;
+import java.util.Set;
 
 public interface ChunkFilter {
 
+	// nbt paths read by getInhabitedTime, getLastUpdate and getStatus in all versions.
+	// these can be used to only decode the values that are needed instead of the entire chunk.
+	Set<String> DATA_VERSION_PATHS = Set.of("DataVersion");
+	Set<String> INHABITED_TIME_PATHS = Set.of("DataVersion", "InhabitedTime", "Level.InhabitedTime");
+	Set<String> LAST_UPDATE_PATHS = Set.of("DataVersion", "LastUpdate", "Level.LastUpdate");
+	Set<String> STATUS_PATHS = Set.of("DataVersion", "Status", "Level.Status");
+
 	// returns true if ALL block names are present
 	boolean matchBlockNames(CompoundTag data, Collection<String> names);
 
@@ -0,0 +1,73 @@
+package net.querz.mcaselector.version;
+
+import net.querz.nbt.tag.CompoundTag;
+import net.querz.nbt.tag.ListTag;
+import net.querz.nbt.tag.StringTag;
+
+/**
+ * Resolves the colors of all entries of a section palette once per biome, so a renderer can look up the color of a
+ * block with its palette index instead of resolving its block state for every block it draws.
+ * A color is only resolved when a block with that state is drawn in that biome for the first time.
+ */
+public class PaletteColors {
+
+	private static final CompoundTag waterDummy = new CompoundTag();
+
+	static {
+		waterDummy.putString("Name", "minecraft:water");
+	}
+
+	private final ColorMapping colorMapping;
+	private final ListTag<CompoundTag> palette;
+	private final ListTag<StringTag> biomePalette;
+
+	// colors of all palette entries by biome, the water color of the biome is stored after the last palette entry
+	private int[][] colors;
+	private boolean[][] resolved;
+
+	// biomes are legacy biome ids from 0 to 255
+	public PaletteColors(ColorMapping colorMapping, ListTag<CompoundTag> palette) {
+		this(colorMapping, palette, null);
+	}
+
+	// biomes are indices in the biome palette, an invalid index uses no biome
+	public PaletteColors(ColorMapping colorMapping, ListTag<CompoundTag> palette, ListTag<StringTag> biomePalette) {
+		this.colorMapping = colorMapping;
+		this.palette = palette;
+		this.biomePalette = biomePalette;
+	}
+
+	public int getRGB(int paletteIndex, int biome) {
+		return resolve(paletteIndex, biome);
+	}
+
+	// the color of water in this biome, for waterlogged blocks
+	public int getWaterRGB(int biome) {
+		return resolve(palette.size(), biome);
+	}
+
+	private int resolve(int index, int biome) {
+		if (colors == null) {
+			int biomes = biomePalette == null ? 256 : biomePalette.size() + 1;
+			colors = new int[biomes][];
+			resolved = new boolean[biomes][];
+		}
+		if (biomePalette != null && (biome < 0 || biome >= biomePalette.size())) {
+			biome = biomePalette.size();
+		}
+		if (colors[biome] == null) {
+			colors[biome] = new int[palette.size() + 1];
+			resolved[biome] = new boolean[palette.size() + 1];
+		}
+		if (!resolved[biome][index]) {
+			CompoundTag blockData = index == palette.size() ? waterDummy : palette.get(index);
+			if (biomePalette == null) {
+				colors[biome][index] = colorMapping.getRGB(blockData, biome);
+			} else {
+				colors[biome][index] = colorMapping.getRGB(blockData, biome == biomePalette.size() ? "" : biomePalette.get(biome).getValue());
+			}
+			resolved[biome][index] = true;
+		}
+		return colors[biome][index];
+	}
+}
@@ -5,6 +5,7 @@ import net.querz.mcaselector.tiles.Tile;
 import net.querz.mcaselector.version.ChunkRenderer;
 import net.querz.mcaselector.version.ColorMapping;
 import net.querz.mcaselector.version.Helper;
+import net.querz.mcaselector.version.PaletteColors;
 import net.querz.nbt.tag.CompoundTag;
 import net.querz.nbt.tag.ListTag;
 
@@ -29,12 +30,14 @@ public class Anvil116ChunkRenderer implements ChunkRenderer {
 		@SuppressWarnings("unchecked")
 		ListTag<CompoundTag>[] palettes = (ListTag<CompoundTag>[]) new ListTag[16];
 		long[][] blockStatesArray = new long[16][];
+		PaletteColors[] paletteColors = new PaletteColors[16];
 		sections.forEach(s -> {
 			ListTag<CompoundTag> p = Helper.tagFromCompound(s, "Palette");
 			long[] b = Helper.longArrayFromCompound(s, "BlockStates");
 			int y = Helper.numberFromCompound(s, "Y", -1).intValue();
 			if (y >= 0 && y <= 15 && p != null && b != null) {
 				palettes[y] = p;
+				paletteColors[y] = new PaletteColors(colorMapping, p);
 				blockStatesArray[y] = b;
 			}
 		});
@@ -54,6 +57,7 @@ public class Anvil116ChunkRenderer implements ChunkRenderer {
 
 					long[] blockStates = blockStatesArray[i];
 					ListTag<CompoundTag> palette = palettes[i];
+					PaletteColors colors = paletteColors[i];
 
 					int sectionHeight = i * Tile.CHUNK_SIZE;
 
@@ -78,23 +82,23 @@ public class Anvil116ChunkRenderer implements ChunkRenderer {
 							int regionIndex = ((z + cz / scale) * (Tile.SIZE / scale) + (x + cx / scale));
 							if (water) {
 								if (!waterDepth) {
-									pixelBuffer[regionIndex] = colorMapping.getRGB(blockData, biome); // water color
+									pixelBuffer[regionIndex] = colors.getRGB(paletteIndex, biome); // water color
 									waterHeights[regionIndex] = (short) (sectionHeight + cy); // height of highest water or terrain block
 								}
 								if (isWater(blockData)) {
 									waterDepth = true;
 									continue;
 								} else if (isWaterlogged(blockData)) {
-									pixelBuffer[regionIndex] = colorMapping.getRGB(waterDummy, biome); // water color
-									waterPixels[regionIndex] = colorMapping.getRGB(blockData, biome); // color of waterlogged block
+									pixelBuffer[regionIndex] = colors.getWaterRGB(biome); // water color
+									waterPixels[regionIndex] = colors.getRGB(paletteIndex, biome); // color of waterlogged block
 									waterHeights[regionIndex] = (short) (sectionHeight + cy);
 									terrainHeights[regionIndex] = (short) (sectionHeight + cy - 1); // "height" of bottom of water, which will just be 1 block lower so shading works
 									continue zLoop;
 								} else {
-									waterPixels[regionIndex] = colorMapping.getRGB(blockData, biome); // color of block at bottom of water
+									waterPixels[regionIndex] = colors.getRGB(paletteIndex, biome); // color of block at bottom of water
 								}
 							} else {
-								pixelBuffer[regionIndex] = colorMapping.getRGB(blockData, biome);
+								pixelBuffer[regionIndex] = colors.getRGB(paletteIndex, biome);
 							}
 							terrainHeights[regionIndex] = (short) (sectionHeight + cy); // height of bottom of water
 							continue zLoop;
@@ -139,6 +143,8 @@ public class Anvil116ChunkRenderer implements ChunkRenderer {
 			return;
 		}
 
+		PaletteColors colors = new PaletteColors(colorMapping, palette);
+
 		int[] biomes = Helper.intArrayFromCompound(level, "Biomes");
 
 		int cy = height % 16;
@@ -158,7 +164,7 @@ public class Anvil116ChunkRenderer implements ChunkRenderer {
 				biome = MathUtil.clamp(biome, 0, 255);
 
 				int regionIndex = (z + cz / scale) * (Tile.SIZE / scale) + (x + cx / scale);
-				pixelBuffer[regionIndex] = colorMapping.getRGB(blockData, biome);
+				pixelBuffer[regionIndex] = colors.getRGB(paletteIndex, biome);
 			}
 		}
 	}
@@ -182,12 +188,14 @@ public class Anvil116ChunkRenderer implements ChunkRenderer {
 		@SuppressWarnings("unchecked")
 		ListTag<CompoundTag>[] palettes = (ListTag<CompoundTag>[]) new ListTag[16];
 		long[][] blockStatesArray = new long[16][];
+		PaletteColors[] paletteColors = new PaletteColors[16];
 		sections.forEach(s -> {
 			ListTag<CompoundTag> p = Helper.tagFromCompound(s, "Palette");
 			long[] b = Helper.longArrayFromCompound(s, "BlockStates");
 			int y = Helper.numberFromCompound(s, "Y", -1).intValue();
 			if (y >= 0 && y <= 15 && p != null && b != null) {
 				palettes[y] = p;
+				paletteColors[y] = new PaletteColors(colorMapping, p);
 				blockStatesArray[y] = b;
 			}
 		});
@@ -209,6 +217,7 @@ public class Anvil116ChunkRenderer implements ChunkRenderer {
 
 					long[] blockStates = blockStatesArray[i];
 					ListTag<CompoundTag> palette = palettes[i];
+					PaletteColors colors = paletteColors[i];
 
 					int sectionHeight = i * Tile.CHUNK_SIZE;
 
@@ -231,7 +240,7 @@ public class Anvil116ChunkRenderer implements ChunkRenderer {
 								int regionIndex = (z + cz / scale) * (Tile.SIZE / scale) + (x + cx / scale);
 								int biome = getBiomeAtBlock(biomes, cx, sectionHeight + cy, cz);
 								biome = MathUtil.clamp(biome, 0, 255);
-								pixelBuffer[regionIndex] = colorMapping.getRGB(blockData, biome);
+								pixelBuffer[regionIndex] = colors.getRGB(paletteIndex, biome);
 								terrainHeights[regionIndex] = (short) (sectionHeight + cy);
 								continue zLoop;
 							}
@@ -257,12 +266,6 @@ public class Anvil116ChunkRenderer implements ChunkRenderer {
 		return minData;
 	}
 
-	private static final CompoundTag waterDummy = new CompoundTag();
-
-	static {
-		waterDummy.putString("Name", "minecraft:water");
-	}
-
 	private boolean isWater(CompoundTag blockData) {
 		return switch (Helper.stringFromCompound(blockData, "Name", "")) {
 			case "minecraft:water", "minecraft:bubble_column" -> true;
@@ -5,6 +5,7 @@ import net.querz.mcaselector.tiles.Tile;
 import net.querz.mcaselector.version.ChunkRenderer;
 import net.querz.mcaselector.version.ColorMapping;
 import net.querz.mcaselector.version.Helper;
+import net.querz.mcaselector.version.PaletteColors;
 import net.querz.nbt.tag.CompoundTag;
 import net.querz.nbt.tag.ListTag;
 
@@ -29,12 +30,14 @@ public class Anvil117ChunkRenderer implements ChunkRenderer {
 		@SuppressWarnings("unchecked")
 		ListTag<CompoundTag>[] palettes = (ListTag<CompoundTag>[]) new ListTag[24];
 		long[][] blockStatesArray = new long[24][];
+		PaletteColors[] paletteColors = new PaletteColors[24];
 		sections.forEach(s -> {
 			ListTag<CompoundTag> p = Helper.tagFromCompound(s, "Palette");
 			long[] b = Helper.longArrayFromCompound(s, "BlockStates");
 			int y = Helper.numberFromCompound(s, "Y", -5).intValue();
 			if (y >= -4 && y <= 19 && p != null && b != null) {
 				palettes[y + 4] = p;
+				paletteColors[y + 4] = new PaletteColors(colorMapping, p);
 				blockStatesArray[y + 4] = b;
 			}
 		});
@@ -54,6 +57,7 @@ public class Anvil117ChunkRenderer implements ChunkRenderer {
 
 					long[] blockStates = blockStatesArray[i];
 					ListTag<CompoundTag> palette = palettes[i];
+					PaletteColors colors = paletteColors[i];
 
 					int sectionHeight = (i - 4) * Tile.CHUNK_SIZE;
 
@@ -78,23 +82,23 @@ public class Anvil117ChunkRenderer implements ChunkRenderer {
 							int regionIndex = ((z + cz / scale) * (Tile.SIZE / scale) + (x + cx / scale));
 							if (water) {
 								if (!waterDepth) {
-									pixelBuffer[regionIndex] = colorMapping.getRGB(blockData, biome); // water color
+									pixelBuffer[regionIndex] = colors.getRGB(paletteIndex, biome); // water color
 									waterHeights[regionIndex] = (short) (sectionHeight + cy); // height of highest water or terrain block
 								}
 								if (isWater(blockData)) {
 									waterDepth = true;
 									continue;
 								} else if (isWaterlogged(blockData)) {
-									pixelBuffer[regionIndex] = colorMapping.getRGB(waterDummy, biome); // water color
-									waterPixels[regionIndex] = colorMapping.getRGB(blockData, biome); // color of waterlogged block
+									pixelBuffer[regionIndex] = colors.getWaterRGB(biome); // water color
+									waterPixels[regionIndex] = colors.getRGB(paletteIndex, biome); // color of waterlogged block
 									waterHeights[regionIndex] = (short) (sectionHeight + cy);
 									terrainHeights[regionIndex] = (short) (sectionHeight + cy - 1); // "height" of bottom of water, which will just be 1 block lower so shading works
 									continue zLoop;
 								} else {
-									waterPixels[regionIndex] = colorMapping.getRGB(blockData, biome); // color of block at bottom of water
+									waterPixels[regionIndex] = colors.getRGB(paletteIndex, biome); // color of block at bottom of water
 								}
 							} else {
-								pixelBuffer[regionIndex] = colorMapping.getRGB(blockData, biome);
+								pixelBuffer[regionIndex] = colors.getRGB(paletteIndex, biome);
 							}
 							terrainHeights[regionIndex] = (short) (sectionHeight + cy); // height of bottom of water
 							continue zLoop;
@@ -137,6 +141,8 @@ public class Anvil117ChunkRenderer implements ChunkRenderer {
 			return;
 		}
 
+		PaletteColors colors = new PaletteColors(colorMapping, palette);
+
 		int[] biomes = Helper.intArrayFromCompound(level, "Biomes");
 
 		int cy = height % 16;
@@ -156,7 +162,7 @@ public class Anvil117ChunkRenderer implements ChunkRenderer {
 				biome = MathUtil.clamp(biome, 0, 255);
 
 				int regionIndex = (z + cz / scale) * (Tile.SIZE / scale) + (x + cx / scale);
-				pixelBuffer[regionIndex] = colorMapping.getRGB(blockData, biome);
+				pixelBuffer[regionIndex] = colors.getRGB(paletteIndex, biome);
 			}
 		}
 	}
@@ -180,12 +186,14 @@ public class Anvil117ChunkRenderer implements ChunkRenderer {
 		@SuppressWarnings("unchecked")
 		ListTag<CompoundTag>[] palettes = (ListTag<CompoundTag>[]) new ListTag[24];
 		long[][] blockStatesArray = new long[24][];
+		PaletteColors[] paletteColors = new PaletteColors[24];
 		sections.forEach(s -> {
 			ListTag<CompoundTag> p = Helper.tagFromCompound(s, "Palette");
 			long[] b = Helper.longArrayFromCompound(s, "BlockStates");
 			int y = Helper.numberFromCompound(s, "Y", -5).intValue();
 			if (y >= -4 && y <= 19 && p != null && b != null) {
 				palettes[y + 4] = p;
+				paletteColors[y + 4] = new PaletteColors(colorMapping, p);
 				blockStatesArray[y + 4] = b;
 			}
 		});
@@ -207,6 +215,7 @@ public class Anvil117ChunkRenderer implements ChunkRenderer {
 
 					long[] blockStates = blockStatesArray[i];
 					ListTag<CompoundTag> palette = palettes[i];
+					PaletteColors colors = paletteColors[i];
 
 					int sectionHeight = (i - 4) * Tile.CHUNK_SIZE;
 
@@ -229,7 +238,7 @@ public class Anvil117ChunkRenderer implements ChunkRenderer {
 								int regionIndex = (z + cz / scale) * (Tile.SIZE / scale) + (x + cx / scale);
 								int biome = getBiomeAtBlock(biomes, cx, sectionHeight + cy, cz);
 								biome = MathUtil.clamp(biome, 0, 255);
-								pixelBuffer[regionIndex] = colorMapping.getRGB(blockData, biome);
+								pixelBuffer[regionIndex] = colors.getRGB(paletteIndex, biome);
 								terrainHeights[regionIndex] = (short) (sectionHeight + cy);
 								continue zLoop;
 							}
@@ -255,12 +264,6 @@ public class Anvil117ChunkRenderer implements ChunkRenderer {
 		return minData;
 	}
 
-	private static final CompoundTag waterDummy = new CompoundTag();
-
-	static {
-		waterDummy.putString("Name", "minecraft:water");
-	}
-
 	private boolean isWater(CompoundTag blockData) {
 		return switch (Helper.stringFromCompound(blockData, "Name", "")) {
 			case "minecraft:water", "minecraft:bubble_column" -> true;
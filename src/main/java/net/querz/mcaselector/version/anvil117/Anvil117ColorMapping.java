@@ -2,6 +2,7 @@ package net.querz.mcaselector.version.anvil117;
 
 import net.querz.mcaselector.debug.Debug;
 import net.querz.mcaselector.text.TextHelper;
+import net.querz.mcaselector.version.BlockStateColors;
 import net.querz.mcaselector.version.ColorMapping;
 import net.querz.mcaselector.version.Helper;
 import net.querz.nbt.tag.CompoundTag;
@@ -18,6 +19,7 @@ public class Anvil117ColorMapping implements ColorMapping {
 	private final Map<String, Object> mapping = new TreeMap<>();
 	private final Set<String> grass = new HashSet<>();
 	private final Set<String> foliage = new HashSet<>();
+	private final BlockStateColors states = new BlockStateColors(this::resolveColor, this::resolveTint);
 
 	private final int[] biomeGrassTints = new int[256];
 	private final int[] biomeFoliageTints = new int[256];
@@ -102,15 +104,13 @@ public class Anvil117ColorMapping implements ColorMapping {
 
 	@Override
 	public int getRGB(Object o, int biome) {
-		String name = Helper.stringFromCompound((CompoundTag) o, "Name", "");
-		Object value = mapping.get(name);
-		if (value instanceof Integer) {
-			return applyBiomeTint(name, biome, (int) value);
-		} else if (value instanceof BlockStateMapping) {
-			int color = ((BlockStateMapping) value).getColor(Helper.tagFromCompound((CompoundTag) o, "Properties"));
-			return applyBiomeTint(name, biome, color);
-		}
-		return 0xFF000000;
+		long state = states.getState((CompoundTag) o);
+		return switch (BlockStateColors.tint(state)) {
+			case BlockStateColors.TINT_GRASS -> applyTint(BlockStateColors.color(state), biomeGrassTints[biome]);
+			case BlockStateColors.TINT_FOLIAGE -> applyTint(BlockStateColors.color(state), biomeFoliageTints[biome]);
+			case BlockStateColors.TINT_WATER -> applyTint(BlockStateColors.color(state), biomeWaterTints[biome]);
+			default -> BlockStateColors.color(state);
+		};
 	}
 
 	@Override
@@ -129,15 +129,27 @@ public class Anvil117ColorMapping implements ColorMapping {
 		};
 	}
 
-	private int applyBiomeTint(String name, int biome, int color) {
-		if (grass.contains(name)) {
-			return applyTint(color, biomeGrassTints[biome]);
+	private int resolveColor(CompoundTag blockState) {
+		Object value = mapping.get(Helper.stringFromCompound(blockState, "Name", ""));
+		if (value instanceof Integer) {
+			return (int) value;
+		} else if (value instanceof BlockStateMapping) {
+			return ((BlockStateMapping) value).getColor(Helper.tagFromCompound(blockState, "Properties"));
+		}
+		return 0xFF000000;
+	}
+
+	private int resolveTint(String name) {
+		if (!mapping.containsKey(name)) {
+			return BlockStateColors.TINT_NONE;
+		} else if (grass.contains(name)) {
+			return BlockStateColors.TINT_GRASS;
 		} else if (foliage.contains(name)) {
-			return applyTint(color, biomeFoliageTints[biome]);
+			return BlockStateColors.TINT_FOLIAGE;
 		} else if (name.equals("minecraft:water")) {
-			return applyTint(color, biomeWaterTints[biome]);
+			return BlockStateColors.TINT_WATER;
 		}
-		return color;
+		return BlockStateColors.TINT_NONE;
 	}
 
 	private static class BlockStateMapping {
@@ -284,6 +284,12 @@ public class Anvil118ChunkFilter extends Anvil117ChunkFilter {
 			return;
 		}
 
+		// blocks placed where there was air can raise the surface, so the heightmaps don't match anymore.
+		// minecraft recalculates missing heightmaps when loading the chunk.
+		if (replace.containsKey("minecraft:air") || replace.containsKey("minecraft:cave_air") || replace.containsKey("minecraft:void_air")) {
+			LegacyHelper.removeHeightmaps(data, dataVersion);
+		}
+
 		if (dataVersion >= 2834) {
 			Point2i pos = LegacyHelper.getChunkCoordinates(data, dataVersion);
 			if (pos == null) {
@@ -81,6 +81,11 @@ public class Anvil118ChunkRelocator implements ChunkRelocator {
 			LegacyHelper.putSections(root, newSections, dataVersion);
 		}
 
+		// heightmaps don't match the moved sections anymore, minecraft recalculates missing heightmaps when loading the chunk
+		if (offset.blockToSection().getY() != 0) {
+			LegacyHelper.removeHeightmaps(root, dataVersion);
+		}
+
 		return true;
 	}
 
@@ -6,8 +6,8 @@ import net.querz.mcaselector.tiles.Tile;
 import net.querz.mcaselector.version.ChunkRenderer;
 import net.querz.mcaselector.version.ColorMapping;
 import net.querz.mcaselector.version.Helper;
+import net.querz.mcaselector.version.PaletteColors;
 import net.querz.nbt.tag.*;
-import static net.querz.mcaselector.validation.ValidationHelper.silent;
 
 public class Anvil118ChunkRenderer implements ChunkRenderer {
 
@@ -36,6 +36,7 @@ public class Anvil118ChunkRenderer implements ChunkRenderer {
 		@SuppressWarnings("unchecked")
 		ListTag<StringTag>[] biomePalettes = (ListTag<StringTag>[]) new ListTag[24];
 		long[][] biomesArray = new long[24][];
+		PaletteColors[] paletteColors = new PaletteColors[24];
 		sections.forEach(s -> {
 			ListTag<CompoundTag> p = LegacyHelper.getPalette(s, dataVersion);
 			long[] b = LegacyHelper.getBlockStates(s, dataVersion);
@@ -48,23 +49,35 @@ public class Anvil118ChunkRenderer implements ChunkRenderer {
 				if (dataVersion >= 2834) {
 					biomePalettes[y + 4] = Helper.tagFromCompound(Helper.tagFromCompound(s, "biomes"), "palette");
 					biomesArray[y + 4] = Helper.longArrayFromCompound(Helper.tagFromCompound(s, "biomes"), "data");
+					paletteColors[y + 4] = new PaletteColors(colorMapping, p, biomePaletteOrEmpty(biomePalettes[y + 4]));
+				} else {
+					paletteColors[y + 4] = new PaletteColors(colorMapping, p);
 				}
 			}
 		});
 
 		int[] biomes = LegacyHelper.getLegacyBiomes(root, dataVersion);
 
+		long[] worldSurface = getWorldSurface(root, dataVersion, status);
+
 		for (int cx = 0; cx < Tile.CHUNK_SIZE; cx += scale) {
 			zLoop:
 			for (int cz = 0; cz < Tile.CHUNK_SIZE; cz += scale) {
 
+				// there are only air blocks above the world surface, so we don't need to look at them
+				int columnHeight = absHeight;
+				if (worldSurface != null) {
+					columnHeight = Math.min(absHeight, getHeightmapValue(worldSurface, cx, cz));
+				}
+
 				//loop over sections
 				boolean waterDepth = false;
-				for (int i = palettes.length - (24 - (absHeight >> 4)); i >= 0; i--) {
+				for (int i = palettes.length - (24 - (columnHeight >> 4)); i >= 0; i--) {
 					ListTag<CompoundTag> palette = palettes[i];
 					if (palette == null) {
 						continue;
 					}
+					PaletteColors colors = paletteColors[i];
 					long[] blockStates = blockStatesArray[i];
 
 					int sectionHeight = (i - 4) * Tile.CHUNK_SIZE;
@@ -81,8 +94,8 @@ public class Anvil118ChunkRenderer implements ChunkRenderer {
 					}
 
 					int startHeight;
-					if (absHeight >> 4 == i) {
-						startHeight = Tile.CHUNK_SIZE - (16 - absHeight % 16) - 1;
+					if (columnHeight >> 4 == i) {
+						startHeight = Tile.CHUNK_SIZE - (16 - columnHeight % 16) - 1;
 					} else {
 						startHeight = Tile.CHUNK_SIZE - 1;
 					}
@@ -91,36 +104,35 @@ public class Anvil118ChunkRenderer implements ChunkRenderer {
 						int paletteIndex = getPaletteIndex(getIndex(cx, cy, cz), blockStates, bits, clean);
 						CompoundTag blockData = palette.get(paletteIndex);
 
-						int biomeLegacy = -1;
-						String biome = "";
+						int biome;
 						if (dataVersion >= 2834) {
-							biome = getBiomeAtBlock(biomeIndices, biomesPalette, cx, cy, cz, biomeBits);
+							biome = getBiomeIndexAtBlock(biomeIndices, cx, cy, cz, biomeBits);
 						} else {
-							biomeLegacy = getBiomeAtBlock(biomes, cx, sectionHeight + cy, cz);
-							biomeLegacy = MathUtil.clamp(biomeLegacy, 0, 255);
+							biome = getBiomeAtBlock(biomes, cx, sectionHeight + cy, cz);
+							biome = MathUtil.clamp(biome, 0, 255);
 						}
 
 						if (!isEmpty(blockData)) {
 							int regionIndex = (z + cz / scale) * (Tile.SIZE / scale) + (x + cx / scale);
 							if (water) {
 								if (!waterDepth) {
-									pixelBuffer[regionIndex] = dataVersion >= 2834 ? colorMapping.getRGB(blockData, biome) : colorMapping.getRGB(blockData, biomeLegacy); // water color
+									pixelBuffer[regionIndex] = colors.getRGB(paletteIndex, biome); // water color
 									waterHeights[regionIndex] = (short) (sectionHeight + cy); // height of highest water or terrain block
 								}
 								if (isWater(blockData)) {
 									waterDepth = true;
 									continue;
 								} else if (isWaterlogged(blockData)) {
-									pixelBuffer[regionIndex] = dataVersion >= 2834 ? colorMapping.getRGB(waterDummy, biome) : colorMapping.getRGB(waterDummy, biomeLegacy); // water color
-									waterPixels[regionIndex] = dataVersion >= 2834 ? colorMapping.getRGB(blockData, biome) : colorMapping.getRGB(blockData, biomeLegacy); // color of waterlogged block
+									pixelBuffer[regionIndex] = colors.getWaterRGB(biome); // water color
+									waterPixels[regionIndex] = colors.getRGB(paletteIndex, biome); // color of waterlogged block
 									waterHeights[regionIndex] = (short) (sectionHeight + cy);
 									terrainHeights[regionIndex] = (short) (sectionHeight + cy - 1); // "height" of bottom of water, which will just be 1 block lower so shading works
 									continue zLoop;
 								} else {
-									waterPixels[regionIndex] = dataVersion >= 2834 ? colorMapping.getRGB(blockData, biome) : colorMapping.getRGB(blockData, biomeLegacy); // color of block at bottom of water
+									waterPixels[regionIndex] = colors.getRGB(paletteIndex, biome); // color of block at bottom of water
 								}
 							} else {
-								pixelBuffer[regionIndex] = dataVersion >= 2834 ? colorMapping.getRGB(blockData, biome) : colorMapping.getRGB(blockData, biomeLegacy);
+								pixelBuffer[regionIndex] = colors.getRGB(paletteIndex, biome);
 							}
 							terrainHeights[regionIndex] = (short) (sectionHeight + cy); // height of bottom of water
 							continue zLoop;
@@ -169,9 +181,13 @@ public class Anvil118ChunkRenderer implements ChunkRenderer {
 			return;
 		}
 
+		PaletteColors colors;
 		if (dataVersion >= 2834) {
 			biomesPalette = Helper.tagFromCompound(Helper.tagFromCompound(section, "biomes"), "palette");
 			biomeIndices = Helper.longArrayFromCompound(Helper.tagFromCompound(section, "biomes"), "data");
+			colors = new PaletteColors(colorMapping, palette, biomePaletteOrEmpty(biomesPalette));
+		} else {
+			colors = new PaletteColors(colorMapping, palette);
 		}
 
 		int[] biomes = LegacyHelper.getLegacyBiomes(root, dataVersion);
@@ -196,18 +212,17 @@ public class Anvil118ChunkRenderer implements ChunkRenderer {
 					continue;
 				}
 
-				int biomeLegacy = -1;
-				String biome = "";
+				int biome;
 				if (dataVersion >= 2834) {
-					biome = getBiomeAtBlock(biomeIndices, biomesPalette, cx, cy, cz, biomeBits);
+					biome = getBiomeIndexAtBlock(biomeIndices, cx, cy, cz, biomeBits);
 				} else {
-					biomeLegacy = getBiomeAtBlock(biomes, cx, height, cz);
-					biomeLegacy = MathUtil.clamp(biomeLegacy, 0, 255);
+					biome = getBiomeAtBlock(biomes, cx, height, cz);
+					biome = MathUtil.clamp(biome, 0, 255);
 				}
 
 
 				int regionIndex = (z + cz / scale) * (Tile.SIZE / scale) + (x + cx / scale);
-				pixelBuffer[regionIndex] = dataVersion >= 2834 ? colorMapping.getRGB(blockData, biome) : colorMapping.getRGB(blockData, biomeLegacy);
+				pixelBuffer[regionIndex] = colors.getRGB(paletteIndex, biome);
 			}
 		}
 	}
@@ -237,6 +252,7 @@ public class Anvil118ChunkRenderer implements ChunkRenderer {
 		@SuppressWarnings("unchecked")
 		ListTag<StringTag>[] biomePalettes = (ListTag<StringTag>[]) new ListTag[24];
 		long[][] biomesArray = new long[24][];
+		PaletteColors[] paletteColors = new PaletteColors[24];
 		sections.forEach(s -> {
 			ListTag<CompoundTag> p = LegacyHelper.getPalette(s, dataVersion);
 			long[] b = LegacyHelper.getBlockStates(s, dataVersion);
@@ -249,6 +265,9 @@ public class Anvil118ChunkRenderer implements ChunkRenderer {
 				if (dataVersion >= 2834) {
 					biomePalettes[y + 4] = Helper.tagFromCompound(Helper.tagFromCompound(s, "biomes"), "palette");
 					biomesArray[y + 4] = Helper.longArrayFromCompound(Helper.tagFromCompound(s, "biomes"), "data");
+					paletteColors[y + 4] = new PaletteColors(colorMapping, p, biomePaletteOrEmpty(biomePalettes[y + 4]));
+				} else {
+					paletteColors[y + 4] = new PaletteColors(colorMapping, p);
 				}
 			}
 		});
@@ -268,6 +287,7 @@ public class Anvil118ChunkRenderer implements ChunkRenderer {
 					if (palette == null) {
 						continue;
 					}
+					PaletteColors colors = paletteColors[i];
 					long[] blockStates = blockStatesArray[i];
 
 					int sectionHeight = (i - 4) * Tile.CHUNK_SIZE;
@@ -298,16 +318,15 @@ public class Anvil118ChunkRenderer implements ChunkRenderer {
 							if (doneSkipping) {
 								int regionIndex = (z + cz / scale) * (Tile.SIZE / scale) + (x + cx / scale);
 
-								int biomeLegacy = -1;
-								String biome = "";
+								int biome;
 								if (dataVersion >= 2834) {
-									biome = getBiomeAtBlock(biomeIndices, biomesPalette, cx, cy, cz, biomeBits);
+									biome = getBiomeIndexAtBlock(biomeIndices, cx, cy, cz, biomeBits);
 								} else {
-									biomeLegacy = getBiomeAtBlock(biomes, cx, sectionHeight + cy, cz);
-									biomeLegacy = MathUtil.clamp(biomeLegacy, 0, 255);
+									biome = getBiomeAtBlock(biomes, cx, sectionHeight + cy, cz);
+									biome = MathUtil.clamp(biome, 0, 255);
 								}
 
-								pixelBuffer[regionIndex] = dataVersion >= 2834 ? colorMapping.getRGB(blockData, biome) : colorMapping.getRGB(blockData, biomeLegacy);
+								pixelBuffer[regionIndex] = colors.getRGB(paletteIndex, biome);
 								terrainHeights[regionIndex] = (short) (sectionHeight + cy);
 								continue zLoop;
 							}
@@ -347,12 +366,6 @@ public class Anvil118ChunkRenderer implements ChunkRenderer {
 		return minData;
 	}
 
-	private static final CompoundTag waterDummy = new CompoundTag();
-
-	static {
-		waterDummy.putString("Name", "minecraft:water");
-	}
-
 	private boolean isWater(CompoundTag blockData) {
 		return switch (Helper.stringFromCompound(blockData, "Name", "")) {
 			case "minecraft:water", "minecraft:bubble_column" -> true;
@@ -394,16 +407,42 @@ public class Anvil118ChunkRenderer implements ChunkRenderer {
 		return biomes[getBiomeIndex(biomeX / 4, (biomeY + 64) / 4, biomeZ / 4)];
 	}
 
-	private String getBiomeAtBlock(long[] biomes, ListTag<StringTag> palette, int biomeX, int biomeY, int biomeZ, int bits) {
+	// the index of the biome in the biome palette of the section, an invalid index is resolved without a biome
+	private int getBiomeIndexAtBlock(long[] biomes, int biomeX, int biomeY, int biomeZ, int bits) {
 		if (biomes == null || biomes.length == 0) {
-			return palette.get(0).getValue();
+			return 0;
 		}
 
 		int indexesPerLong = 64 / bits;
 		int biomeIndex = getBiomeIndex(biomeX >> 2 % 4, biomeY >> 2 % 4, biomeZ >> 2 % 4);
 		int biomeLongIndex = biomeIndex / indexesPerLong;
+		if (biomeLongIndex >= biomes.length) {
+			return -1;
+		}
 		int startBit = (biomeIndex % indexesPerLong) * bits;
-		return silent(() -> palette.get((int) Bits.bitRange(biomes[biomeLongIndex], startBit, startBit + bits)).getValue(), "");
+		return (int) Bits.bitRange(biomes[biomeLongIndex], startBit, startBit + bits);
+	}
+
+	private ListTag<StringTag> biomePaletteOrEmpty(ListTag<StringTag> biomePalette) {
+		return biomePalette == null ? new ListTag<>(StringTag.class) : biomePalette;
+	}
+
+	// the WORLD_SURFACE heightmap if it is complete, which is the case for fully generated chunks
+	private long[] getWorldSurface(CompoundTag root, int dataVersion, StringTag status) {
+		if (!"full".equals(status.getValue()) && !"minecraft:full".equals(status.getValue())) {
+			return null;
+		}
+		long[] worldSurface = Helper.longArrayFromCompound(LegacyHelper.getHeightmaps(root, dataVersion), "WORLD_SURFACE");
+		if (worldSurface == null || worldSurface.length != 37) {
+			return null;
+		}
+		return worldSurface;
+	}
+
+	// heightmaps store the height above the lowest block of the highest block + 1 with 9 bits per column
+	private int getHeightmapValue(long[] heightmap, int x, int z) {
+		int index = z * Tile.CHUNK_SIZE + x;
+		return (int) (heightmap[index / 7] >>> (index % 7) * 9) & 0x1FF;
 	}
 
 	private int getPaletteIndex(int index, long[] blockStates, int bits, int clean) {
@@ -91,6 +91,27 @@ public final class LegacyHelper {
 		}
 	}
 
+	static CompoundTag getHeightmaps(CompoundTag root, int dataVersion) {
+		if (dataVersion > 2843) {
+			return Helper.tagFromCompound(root, "Heightmaps");
+		} else {
+			return Helper.tagFromLevelFromRoot(root, "Heightmaps");
+		}
+	}
+
+	static void removeHeightmaps(CompoundTag root, int dataVersion) {
+		if (dataVersion > 2843) {
+			if (root != null) {
+				root.remove("Heightmaps");
+			}
+		} else {
+			CompoundTag level = Helper.levelFromRoot(root);
+			if (level != null) {
+				level.remove("Heightmaps");
+			}
+		}
+	}
+
 	static void setStatus(CompoundTag root, String status, int dataVersion) {
 		if (dataVersion > 2843) {
 			if (root != null) {
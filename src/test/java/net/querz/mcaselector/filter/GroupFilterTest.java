@@ -5,6 +5,7 @@ import org.junit.Test;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 
 import static org.junit.Assert.*;
 
@@ -66,4 +67,23 @@ public class GroupFilterTest {
 		assertTrue(gf.appliesToRegion(new Point2i(0, -1)));
 		assertFalse(gf.appliesToRegion(new Point2i(1, 0)));
 	}
+
+	@Test
+	public void testGetRequiredData() {
+		// header only
+		GroupFilter gf = new GroupFilter(false);
+		gf.addFilter(new XPosFilter(Operator.AND, Comparator.LARGER, -10));
+		gf.addFilter(new TimestampFilter());
+		assertEquals(EnumSet.noneOf(RequiredData.class), gf.getRequiredData());
+
+		// nested groups
+		GroupFilter child = new GroupFilter(true);
+		child.addFilter(new EntityAmountFilter());
+		gf.addFilter(child);
+		assertEquals(EnumSet.of(RequiredData.REGION, RequiredData.ENTITIES), gf.getRequiredData());
+
+		gf = new GroupFilter(false);
+		gf.addFilter(new InhabitedTimeFilter());
+		assertEquals(EnumSet.of(RequiredData.REGION), gf.getRequiredData());
+	}
 }
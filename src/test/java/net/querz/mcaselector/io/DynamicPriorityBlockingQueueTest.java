@@ -0,0 +1,84 @@
+package net.querz.mcaselector.io;
+
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.*;
+
+public class DynamicPriorityBlockingQueueTest {
+
+	private static class Item {
+		final int id;
+		int priority;
+
+		Item(int id, int priority) {
+			this.id = id;
+			this.priority = priority;
+		}
+	}
+
+	@Test
+	public void testOrder() {
+		DynamicPriorityBlockingQueue<Item> queue = new DynamicPriorityBlockingQueue<>(i -> i.priority);
+		Random random = new Random(0);
+		List<Item> items = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			Item item = new Item(i, random.nextInt(50));
+			items.add(item);
+			queue.offer(item);
+		}
+
+		// equal priorities keep their insertion order
+		items.sort((a, b) -> a.priority == b.priority ? Integer.compare(a.id, b.id) : Integer.compare(a.priority, b.priority));
+		assertEquals(items.subList(0, 10), queue.peek(10));
+		for (Item item : items) {
+			assertSame(item, queue.poll());
+		}
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void testRefreshAndUpdate() {
+		DynamicPriorityBlockingQueue<Item> queue = new DynamicPriorityBlockingQueue<>(i -> i.priority);
+		Item[] items = new Item[100];
+		for (int i = 0; i < items.length; i++) {
+			queue.offer(items[i] = new Item(i, i));
+		}
+
+		// priorities are cached until they are refreshed
+		for (Item item : items) {
+			item.priority = 100 - item.id;
+		}
+		assertSame(items[0], queue.peek());
+		queue.refreshPriorities();
+		assertSame(items[99], queue.peek());
+
+		items[50].priority = -1;
+		assertTrue(queue.update(items[50]));
+		assertSame(items[50], queue.poll());
+		assertSame(items[99], queue.poll());
+	}
+
+	@Test
+	public void testRemove() {
+		DynamicPriorityBlockingQueue<Item> queue = new DynamicPriorityBlockingQueue<>(i -> i.priority);
+		Item[] items = new Item[100];
+		for (int i = 0; i < items.length; i++) {
+			queue.offer(items[i] = new Item(i, i % 10));
+		}
+
+		assertTrue(queue.removeIf(i -> i.id % 2 == 0));
+		assertTrue(queue.remove(items[1]));
+		assertFalse(queue.contains(items[1]));
+		assertEquals(49, queue.size());
+
+		int last = Integer.MIN_VALUE;
+		Item item;
+		while ((item = queue.poll()) != null) {
+			assertEquals(1, item.id % 2);
+			assertTrue(item.priority >= last);
+			last = item.priority;
+		}
+	}
+}
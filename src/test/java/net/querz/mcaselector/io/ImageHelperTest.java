@@ -0,0 +1,28 @@
+package net.querz.mcaselector.io;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ImageHelperTest {
+
+	@Test
+	public void testScaleDown() {
+		int[] pixels = new int[]{
+			0xFF000000, 0xFFFFFFFF, 0xFF102030, 0xFF102030,
+			0xFFFFFFFF, 0xFF000000, 0xFF102030, 0xFF102030,
+			0x00000000, 0x00000000, 0xFF040404, 0xFF000000,
+			0x00000000, 0xFF808080, 0xFF000000, 0xFF000000
+		};
+
+		int[] scaled = ImageHelper.scaleDown(pixels, 4, 2);
+		assertEquals(4, scaled.length);
+		assertEquals(0xFF808080, scaled[0]);
+		assertEquals(0xFF102030, scaled[1]);
+		// transparent pixels only lower the alpha of premultiplied colors
+		assertEquals(0x40202020, scaled[2]);
+		assertEquals(0xFF010101, scaled[3]);
+
+		// a factor of 1 doesn't change anything
+		assertArrayEquals(pixels, ImageHelper.scaleDown(pixels, 4, 1));
+	}
+}
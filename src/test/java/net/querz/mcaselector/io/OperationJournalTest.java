@@ -0,0 +1,88 @@
+package net.querz.mcaselector.io;
+
+import net.querz.mcaselector.point.Point2i;
+import org.junit.Test;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import static org.junit.Assert.*;
+
+public class OperationJournalTest {
+
+	@Test
+	public void testResume() throws IOException {
+		File dir = Files.createTempDirectory("journal").toFile();
+		File file = new File(dir, "journal");
+
+		OperationJournal journal = OperationJournal.open(file, "change", false);
+		for (int i = 0; i < 10; i++) {
+			journal.complete(new RegionDirectories(new Point2i(i, -i), null, null, null));
+		}
+		journal.close();
+
+		// a torn entry at the end is ignored
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(raf.length());
+			raf.write(new byte[]{1, 2, 3});
+		}
+
+		journal = OperationJournal.open(file, "change", true);
+		assertEquals(10, journal.size());
+		assertTrue(journal.isCompleted(new Point2i(9, -9)));
+		assertFalse(journal.isCompleted(new Point2i(10, -10)));
+		journal.complete(new RegionDirectories(new Point2i(10, -10), null, null, null));
+		journal.close();
+
+		journal = OperationJournal.open(file, "change", true);
+		assertEquals(11, journal.size());
+		assertTrue(journal.isCompleted(new Point2i(10, -10)));
+		journal.close();
+
+		try {
+			OperationJournal.open(file, "delete", true);
+			fail("opened journal of a different operation");
+		} catch (IOException ex) {
+			// expected
+		}
+
+		// without resume the journal starts over
+		journal = OperationJournal.open(file, "change", false);
+		assertEquals(0, journal.size());
+		journal.delete();
+		assertFalse(file.exists());
+		assertTrue(dir.delete());
+	}
+
+	@Test
+	public void testDeleteStaleTempFiles() throws IOException {
+		File dir = Files.createTempDirectory("journal").toFile();
+		File file = new File(dir, "journal");
+
+		// temp files of another operation in the same directory
+		File other = File.createTempFile("r.0.0.mca", null, dir);
+		OperationJournal otherJournal = OperationJournal.open(new File(dir, "other"), "change", false);
+		File otherTemp = OperationJournal.createTempFile("r.1.0.mca", dir);
+		otherJournal.delete();
+
+		OperationJournal journal = OperationJournal.open(file, "change", false);
+		File temp = OperationJournal.createTempFile("r.0.0.mca", dir);
+		journal.close();
+		// without an open journal, temp files aren't prefixed
+		assertTrue(OperationJournal.createTempFile("r.0.0.mca", dir).getName().startsWith("r.0.0.mca"));
+
+		journal = OperationJournal.open(file, "change", true);
+		assertEquals(1, journal.deleteStaleTempFiles(dir));
+		journal.delete();
+
+		assertFalse(temp.exists());
+		assertTrue(other.delete());
+		assertTrue(otherTemp.delete());
+		File[] left = dir.listFiles();
+		assertNotNull(left);
+		for (File f : left) {
+			assertTrue(f.delete());
+		}
+		assertTrue(dir.delete());
+	}
+}
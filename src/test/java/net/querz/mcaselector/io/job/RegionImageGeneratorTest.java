@@ -0,0 +1,67 @@
+package net.querz.mcaselector.io.job;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import net.querz.mcaselector.Config;
+import net.querz.mcaselector.io.mca.RegionMCAFile;
+import net.querz.mcaselector.point.Point2i;
+import net.querz.mcaselector.tiles.Tile;
+import net.querz.mcaselector.tiles.TileImage;
+import org.junit.Test;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.Assert.*;
+import static net.querz.mcaselector.MCASelectorTestCase.*;
+
+public class RegionImageGeneratorTest {
+
+	@Test
+	public void testRenderCachedRegion() throws IOException {
+		Config.setWorldDir(getResourceFile("anvil114"));
+		Config.setShade(true);
+		Config.setShadeWater(true);
+		RegionMCAFile region = loadRegionMCAFileFromResource("anvil114/r.0.0.mca");
+		Image expected = TileImage.generateImage(region, 1);
+
+		RegionImageGenerator.setCacheEligibilityChecker(p -> true);
+		try {
+			RegionImageGenerator.UniqueID uniqueID = new RegionImageGenerator.UniqueID();
+			RegionImageGenerator.cacheRegionMCAFile(region, uniqueID);
+			assertNotNull(RegionImageGenerator.getCachedRegionMCAFile(new Point2i(0, 0)));
+
+			// full render of the cached region
+			assertArrayEquals(getImageData(expected), getImageData(render(uniqueID, null, null)));
+
+			// only redraw a few chunks on top of the previous image
+			int[] chunkTimes = new int[Tile.CHUNKS];
+			for (int i = 0; i < Tile.CHUNKS; i++) {
+				chunkTimes[i] = region.getTimestamp(i);
+			}
+			chunkTimes[0]--;
+			chunkTimes[33]--;
+			chunkTimes[1023]--;
+			assertArrayEquals(getImageData(expected), getImageData(render(uniqueID, expected, chunkTimes)));
+		} finally {
+			RegionImageGenerator.invalidateCachedMCAFiles();
+			RegionImageGenerator.setCacheEligibilityChecker(null);
+		}
+	}
+
+	private static Image render(RegionImageGenerator.UniqueID uniqueID, Image previous, int[] previousChunkTimes) {
+		AtomicReference<Image> result = new AtomicReference<>();
+		RegionImageGenerator.MCAImageProcessJob job = new RegionImageGenerator.MCAImageProcessJob(
+			new Tile(new Point2i(0, 0)), uniqueID, (img, id) -> result.set(img), 1, new int[]{1}, null, true, null, previous, previousChunkTimes);
+		assertTrue(job.decode());
+		assertTrue(job.execute());
+		assertNotNull(result.get());
+		return result.get();
+	}
+
+	private static int[] getImageData(Image image) {
+		int width = (int) image.getWidth();
+		int height = (int) image.getHeight();
+		int[] data = new int[width * height];
+		image.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbPreInstance(), data, 0, width);
+		return data;
+	}
+}
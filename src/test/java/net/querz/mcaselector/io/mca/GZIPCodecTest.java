@@ -0,0 +1,77 @@
+package net.querz.mcaselector.io.mca;
+
+import org.junit.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import static org.junit.Assert.*;
+
+public class GZIPCodecTest {
+
+	@Test
+	public void testCompatibleWithGZIPStreams() throws IOException {
+		byte[] data = new byte[100_000];
+		Random random = new Random(42);
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) random.nextInt(16);
+		}
+
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		Inflater inflater = new Inflater(true);
+		try {
+			// GZIPOutputStream -> GZIPCodec
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			try (GZIPOutputStream gzip = new GZIPOutputStream(baos)) {
+				gzip.write(data);
+			}
+			byte[] compressed = baos.toByteArray();
+			byte[] header = Arrays.copyOf(compressed, 10);
+			assertArrayEquals(data, inflate(inflater, compressed));
+
+			// GZIPCodec -> GZIPInputStream
+			ExposedByteArrayOutputStream out = new ExposedByteArrayOutputStream();
+			GZIPCodec.deflate(deflater, data, 0, data.length, out);
+			byte[] deflated = Arrays.copyOf(out.getBuffer(), out.size());
+			assertArrayEquals(header, Arrays.copyOf(deflated, 10));
+			try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(deflated))) {
+				assertArrayEquals(data, gzip.readAllBytes());
+			}
+
+			// optional header fields are skipped
+			byte[] name = "chunk.nbt\0".getBytes(StandardCharsets.ISO_8859_1);
+			byte[] named = new byte[compressed.length + name.length];
+			System.arraycopy(compressed, 0, named, 0, 10);
+			named[3] = 8; // FNAME
+			System.arraycopy(name, 0, named, 10, name.length);
+			System.arraycopy(compressed, 10, named, 10 + name.length, compressed.length - 10);
+			inflater.reset();
+			assertArrayEquals(data, inflate(inflater, named));
+
+			// a corrupt trailer is detected
+			compressed[compressed.length - 5]++;
+			inflater.reset();
+			try {
+				inflate(inflater, compressed);
+				fail("inflated gzip data with a wrong crc");
+			} catch (IOException ex) {
+				// expected
+			}
+		} finally {
+			deflater.end();
+			inflater.end();
+		}
+	}
+
+	private static byte[] inflate(Inflater inflater, byte[] compressed) throws IOException {
+		ExposedByteArrayOutputStream out = new ExposedByteArrayOutputStream();
+		GZIPCodec.inflate(inflater, compressed, 0, compressed.length, out);
+		return Arrays.copyOf(out.getBuffer(), out.size());
+	}
+}
@@ -0,0 +1,187 @@
+package net.querz.mcaselector.io.mca;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.querz.mcaselector.io.ByteArrayPointer;
+import net.querz.mcaselector.point.Point2i;
+import net.querz.nbt.io.NBTSerializer;
+import net.querz.nbt.io.NamedTag;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import static org.junit.Assert.*;
+import static net.querz.mcaselector.MCASelectorTestCase.*;
+
+public class MCAFileTest {
+
+	@Test
+	public void testParallelSaveIsByteCompatible() throws IOException {
+		RegionMCAFile mcaFile = loadDecompressed("anvil116/r.0.0.mca");
+
+		byte[] expected = saveWithPreviousFormat(mcaFile);
+		byte[] sequential = save(mcaFile, false);
+		byte[] parallel = save(mcaFile, true);
+
+		assertTrue(expected.length > 8192);
+		assertEquals(0, expected.length % 4096);
+		assertArrayEquals(expected, sequential);
+		assertArrayEquals(expected, parallel);
+	}
+
+	@Test
+	public void testSaveInPlaceKeepsUnchangedChunks() throws IOException {
+		File dir = Files.createTempDirectory("mcaselector").toFile();
+		File file = new File(dir, "r.0.0.mca");
+		Files.copy(getResourceFile("anvil116/r.0.0.mca").toPath(), file.toPath());
+		byte[] before = Files.readAllBytes(file.toPath());
+
+		RegionMCAFile mcaFile = new RegionMCAFile(file);
+		mcaFile.load(new ByteArrayPointer(before));
+		LongOpenHashSet delete = new LongOpenHashSet();
+		delete.add(new Point2i(0, 0).asLong());
+		delete.add(new Point2i(5, 3).asLong());
+		mcaFile.deleteChunks(delete);
+		assertTrue(mcaFile.saveInPlace());
+
+		byte[] after = Files.readAllBytes(file.toPath());
+		assertEquals(before.length, after.length);
+		// only the header entries of the deleted chunks changed
+		for (int i = 0; i < 1024; i++) {
+			boolean deleted = i == 0 || i == 3 * 32 + 5;
+			for (int j : new int[]{i * 4, 4096 + i * 4}) {
+				if (deleted) {
+					assertEquals(0, after[j] | after[j + 1] | after[j + 2] | after[j + 3]);
+				} else {
+					assertArrayEquals(Arrays.copyOfRange(before, j, j + 4), Arrays.copyOfRange(after, j, j + 4));
+				}
+			}
+		}
+		assertArrayEquals(Arrays.copyOfRange(before, 8192, before.length), Arrays.copyOfRange(after, 8192, after.length));
+		assertFalse(new File(file.getPath() + ".wal").exists());
+
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Test
+	public void testHeaderJournal() throws IOException {
+		File dir = Files.createTempDirectory("mcaselector").toFile();
+		File file = new File(dir, "r.0.0.mca");
+		File journal = new File(file.getPath() + ".wal");
+		Files.copy(getResourceFile("anvil116/r.0.0.mca").toPath(), file.toPath());
+		byte[] before = Files.readAllBytes(file.toPath());
+
+		// the header of an in-place save that deleted chunk 0 was torn: only its first half was written
+		byte[] oldHeader = Arrays.copyOf(before, 8192);
+		byte[] newHeader = oldHeader.clone();
+		Arrays.fill(newHeader, 0, 4, (byte) 0);
+		Arrays.fill(newHeader, 4096, 4100, (byte) 0);
+		MCAFile.writeHeaderJournal(journal, before.length, oldHeader, newHeader);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.write(newHeader, 0, 4096);
+		}
+
+		// reading doesn't change the file
+		assertArrayEquals(newHeader, MCAFile.readHeaderJournal(file));
+		assertTrue(journal.exists());
+
+		// the next save restores the header
+		byte[] data = Files.readAllBytes(file.toPath());
+		System.arraycopy(MCAFile.readHeaderJournal(file), 0, data, 0, 8192);
+		RegionMCAFile mcaFile = new RegionMCAFile(file);
+		mcaFile.load(new ByteArrayPointer(data));
+		assertNull(mcaFile.getChunk(0));
+		assertTrue(mcaFile.saveInPlace());
+		assertArrayEquals(newHeader, Arrays.copyOf(Files.readAllBytes(file.toPath()), 8192));
+		assertFalse(journal.exists());
+
+		// a journal is ignored and deleted on the next save if the file was replaced after the save was interrupted
+		MCAFile.writeHeaderJournal(journal, before.length, oldHeader, newHeader);
+		byte[] replaced = before.clone();
+		replaced[3]++;
+		Files.write(file.toPath(), replaced);
+		assertNull(MCAFile.readHeaderJournal(file));
+		Files.write(file.toPath(), Arrays.copyOf(before, before.length + 4096));
+		assertNull(MCAFile.readHeaderJournal(file));
+
+		mcaFile = new RegionMCAFile(file);
+		mcaFile.load(new ByteArrayPointer(Files.readAllBytes(file.toPath())));
+		assertTrue(mcaFile.saveInPlace());
+		assertArrayEquals(oldHeader, Arrays.copyOf(Files.readAllBytes(file.toPath()), 8192));
+		assertFalse(journal.exists());
+
+		FileUtils.deleteDirectory(dir);
+	}
+
+	private static RegionMCAFile loadDecompressed(String resource) throws IOException {
+		RegionMCAFile mcaFile = loadRegionMCAFileFromResource(resource);
+		// decompress all chunks, otherwise their compressed data would just be copied
+		for (int i = 0; i < 1024; i++) {
+			RegionChunk chunk = mcaFile.getChunk(i);
+			if (chunk != null) {
+				chunk.setData(chunk.getData());
+			}
+		}
+		return mcaFile;
+	}
+
+	// writes the file like MCAFile.save did before chunks were compressed in parallel:
+	// chunks in order of their index, each one starting at the next free sector
+	private static byte[] saveWithPreviousFormat(RegionMCAFile mcaFile) throws IOException {
+		byte[] header = new byte[8192];
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(data);
+		int globalOffset = 2;
+		for (int i = 0; i < 1024; i++) {
+			RegionChunk chunk = mcaFile.getChunk(i);
+			if (chunk == null || chunk.isEmpty()) {
+				continue;
+			}
+
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			OutputStream nbtOut = switch (chunk.getCompressionType()) {
+				case GZIP, GZIP_EXT -> new GZIPOutputStream(baos);
+				case ZLIB, ZLIB_EXT -> new DeflaterOutputStream(baos);
+				default -> baos;
+			};
+			new NBTSerializer(false).toStream(new NamedTag(null, chunk.getData()), nbtOut);
+			nbtOut.close();
+
+			out.writeInt(baos.size() + 1);
+			out.writeByte(chunk.getCompressionType().getByte());
+			baos.writeTo(out);
+			int written = baos.size() + 5;
+			int sectors = (written >> 12) + (written % 4096 == 0 ? 0 : 1);
+			out.write(new byte[sectors * 4096 - written]);
+
+			ByteBuffer.wrap(header, i * 4, 4).putInt(globalOffset << 8 | sectors);
+			ByteBuffer.wrap(header, 4096 + i * 4, 4).putInt(chunk.getTimestamp());
+			globalOffset += sectors;
+		}
+
+		byte[] file = new byte[header.length + data.size()];
+		System.arraycopy(header, 0, file, 0, header.length);
+		System.arraycopy(data.toByteArray(), 0, file, header.length, data.size());
+		return file;
+	}
+
+	private static byte[] save(RegionMCAFile mcaFile, boolean parallel) throws IOException {
+		File tmp = File.createTempFile("r.0.0", ".mca");
+		try {
+			try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+				mcaFile.save(raf, parallel);
+			}
+			return Files.readAllBytes(tmp.toPath());
+		} finally {
+			tmp.delete();
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package net.querz.mcaselector.io.mca;
+
+import net.querz.mcaselector.version.ChunkFilter;
+import net.querz.nbt.io.NBTDeserializer;
+import net.querz.nbt.io.NBTSerializer;
+import net.querz.nbt.io.NamedTag;
+import net.querz.nbt.tag.ByteArrayTag;
+import net.querz.nbt.tag.CompoundTag;
+import net.querz.nbt.tag.DoubleTag;
+import net.querz.nbt.tag.EndTag;
+import net.querz.nbt.tag.IntArrayTag;
+import net.querz.nbt.tag.IntTag;
+import net.querz.nbt.tag.ListTag;
+import net.querz.nbt.tag.LongArrayTag;
+import net.querz.nbt.tag.StringTag;
+import net.querz.nbt.tag.Tag;
+import org.junit.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import static org.junit.Assert.*;
+import static net.querz.mcaselector.MCASelectorTestCase.*;
+
+public class NBTProjectionReaderTest {
+
+	private static final List<Set<String>> PATHS = List.of(
+		ChunkFilter.DATA_VERSION_PATHS,
+		ChunkFilter.INHABITED_TIME_PATHS,
+		ChunkFilter.LAST_UPDATE_PATHS,
+		ChunkFilter.STATUS_PATHS
+	);
+
+	@Test
+	public void testProjectionMatchesFullRead() throws IOException {
+		for (String version : new String[]{"anvil112", "anvil113", "anvil114", "anvil115", "anvil116"}) {
+			byte[] mca = loadDataFromResource(version + "/r.0.0.mca");
+			ByteBuffer buf = ByteBuffer.wrap(mca);
+			int chunks = 0;
+			for (int i = 0; i < 1024; i++) {
+				int offset = buf.getInt(i * 4) >>> 8;
+				if (offset == 0) {
+					continue;
+				}
+				byte[] nbt = decompress(buf, offset * 4096);
+				CompoundTag full = (CompoundTag) new NBTDeserializer(false).fromStream(new ByteArrayInputStream(nbt)).getTag();
+
+				for (Set<String> paths : PATHS) {
+					CompoundTag projected = NBTProjectionReader.read(new DataInputStream(new ByteArrayInputStream(nbt)), paths);
+					assertEquals(version + " chunk " + i + " " + paths, project(full, paths), projected);
+				}
+				assertNotNull(NBTProjectionReader.read(new DataInputStream(new ByteArrayInputStream(nbt)), ChunkFilter.DATA_VERSION_PATHS).get("DataVersion"));
+				chunks++;
+			}
+			assertTrue(version + " has no chunks", chunks > 0);
+		}
+	}
+
+	@Test
+	public void testSkipAllTagTypes() throws IOException {
+		CompoundTag root = new CompoundTag();
+		root.put("Before", allTypes());
+		root.put("List", listOfCompounds());
+		CompoundTag level = new CompoundTag();
+		level.put("Before", allTypes());
+		level.putString("Status", "full");
+		level.put("After", allTypes());
+		root.put("Level", level);
+		root.put("Everything", allTypes());
+		root.putInt("DataVersion", 2586);
+		root.put("After", allTypes());
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new NBTSerializer(false).toStream(new NamedTag("", root), baos);
+		DataOutputStream dos = new DataOutputStream(baos);
+		dos.writeInt(0xCAFEBABE);
+
+		// "List" is not a compound, so "List.Value" doesn't match anything, and "Level.Missing" doesn't exist
+		Set<String> paths = Set.of("DataVersion", "Everything", "Level.Status", "Level.Missing", "List.Value");
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(baos.toByteArray()));
+		CompoundTag projected = NBTProjectionReader.read(in, paths);
+
+		// everything that was skipped was skipped by exactly its length
+		assertEquals(0xCAFEBABE, in.readInt());
+		assertEquals(-1, in.read());
+
+		assertEquals(3, projected.size());
+		assertEquals(2586, projected.getInt("DataVersion"));
+		assertEquals(allTypes(), projected.getCompoundTag("Everything"));
+		assertEquals(1, projected.getCompoundTag("Level").size());
+		assertEquals("full", projected.getCompoundTag("Level").getString("Status"));
+		assertEquals(project(root, paths), projected);
+	}
+
+	private static CompoundTag allTypes() {
+		CompoundTag c = new CompoundTag();
+		c.putByte("byte", (byte) -3);
+		c.putShort("short", (short) 1234);
+		c.putInt("int", -123456);
+		c.putLong("long", 1234567890123L);
+		c.putFloat("float", 1.5f);
+		c.putDouble("double", -2.25);
+		c.putByteArray("byteArray", new byte[]{1, 2, 3});
+		c.putString("string", "täst");
+		c.putIntArray("intArray", new int[]{4, 5, 6, 7});
+		c.putLongArray("longArray", new long[]{8, 9});
+
+		ListTag<?> empty = ListTag.createUnchecked(EndTag.class);
+		c.put("emptyList", empty);
+
+		ListTag<IntTag> ints = new ListTag<>(IntTag.class);
+		for (int i = 0; i < 5; i++) {
+			ints.addInt(i);
+		}
+		c.put("intList", ints);
+
+		ListTag<DoubleTag> doubles = new ListTag<>(DoubleTag.class);
+		doubles.addDouble(0.5);
+		doubles.addDouble(1.5);
+		c.put("doubleList", doubles);
+
+		ListTag<StringTag> strings = new ListTag<>(StringTag.class);
+		strings.addString("a");
+		strings.addString("bcd");
+		c.put("stringList", strings);
+
+		ListTag<ByteArrayTag> byteArrays = new ListTag<>(ByteArrayTag.class);
+		byteArrays.addByteArray(new byte[]{1});
+		byteArrays.addByteArray(new byte[0]);
+		c.put("byteArrayList", byteArrays);
+
+		ListTag<IntArrayTag> intArrays = new ListTag<>(IntArrayTag.class);
+		intArrays.addIntArray(new int[]{1, 2});
+		c.put("intArrayList", intArrays);
+
+		ListTag<LongArrayTag> longArrays = new ListTag<>(LongArrayTag.class);
+		longArrays.addLongArray(new long[]{3, 4, 5});
+		c.put("longArrayList", longArrays);
+
+		@SuppressWarnings("unchecked")
+		ListTag<ListTag<?>> lists = (ListTag<ListTag<?>>) ListTag.createUnchecked(ListTag.class);
+		lists.add(ints.clone());
+		lists.add(strings.clone());
+		lists.add(listOfCompounds());
+		c.put("listList", lists);
+
+		c.put("compoundList", listOfCompounds());
+
+		CompoundTag nested = new CompoundTag();
+		nested.putString("Status", "empty");
+		nested.put("arrays", new ListTag<>(IntArrayTag.class));
+		c.put("compound", nested);
+		return c;
+	}
+
+	private static ListTag<CompoundTag> listOfCompounds() {
+		ListTag<CompoundTag> list = new ListTag<>(CompoundTag.class);
+		for (int i = 0; i < 3; i++) {
+			CompoundTag c = new CompoundTag();
+			c.putInt("Value", i);
+			c.put("bytes", new ByteArrayTag(new byte[i]));
+			c.put("longs", new LongArrayTag(new long[i]));
+			list.add(c);
+		}
+		return list;
+	}
+
+	// the values at the paths in full, in the same structure
+	private static CompoundTag project(CompoundTag full, Set<String> paths) {
+		CompoundTag result = new CompoundTag();
+		for (String path : paths) {
+			String[] keys = path.split("\\.");
+			CompoundTag source = full;
+			for (int i = 0; i < keys.length - 1 && source != null; i++) {
+				source = source.getCompoundTag(keys[i]);
+			}
+			Tag<?> value = source == null ? null : source.get(keys[keys.length - 1]);
+			if (value == null) {
+				continue;
+			}
+			CompoundTag target = result;
+			for (int i = 0; i < keys.length - 1; i++) {
+				CompoundTag next = target.getCompoundTag(keys[i]);
+				if (next == null) {
+					next = new CompoundTag();
+					target.put(keys[i], next);
+				}
+				target = next;
+			}
+			target.put(keys[keys.length - 1], value);
+		}
+		return result;
+	}
+
+	private static byte[] decompress(ByteBuffer mca, int position) throws IOException {
+		int length = mca.getInt(position);
+		byte compressionType = mca.get(position + 4);
+		InputStream raw = new ByteArrayInputStream(mca.array(), position + 5, length - 1);
+		InputStream in = switch (compressionType) {
+			case 1 -> new GZIPInputStream(raw);
+			case 2 -> new InflaterInputStream(raw);
+			default -> throw new IOException("unexpected compression type " + compressionType);
+		};
+		try (in) {
+			return in.readAllBytes();
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package net.querz.mcaselector.io.metrics;
+
+import org.junit.Test;
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets() {
+		int last = -1;
+		for (long v = 0; v < 1_000_000; v++) {
+			int bucket = LatencyHistogram.bucket(v);
+			assertTrue(bucket == last || bucket == last + 1);
+			assertTrue(v <= LatencyHistogram.highestValue(bucket));
+			last = bucket;
+		}
+		assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValue(LatencyHistogram.BUCKETS - 1));
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		Random random = new Random(0);
+		long[] values = new long[100_000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (long) (Math.exp(random.nextDouble() * 20));
+			histogram.record(values[i]);
+		}
+		Arrays.sort(values);
+
+		assertEquals(values.length, histogram.getCount());
+		assertEquals(values[values.length - 1], histogram.getMax());
+		for (double p : new double[]{50, 90, 99, 99.9}) {
+			long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+			long recorded = histogram.getPercentile(p);
+			// a bucket covers at most 12.5% of its values
+			assertTrue(recorded >= exact);
+			assertTrue(recorded <= exact * 1.125 + 1);
+		}
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(50));
+	}
+}
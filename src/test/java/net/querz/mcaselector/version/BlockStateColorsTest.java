@@ -0,0 +1,45 @@
+package net.querz.mcaselector.version;
+
+import net.querz.nbt.tag.CompoundTag;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BlockStateColorsTest {
+
+	@Test
+	public void testIntern() {
+		int[] resolved = new int[1];
+		BlockStateColors colors = new BlockStateColors(b -> {
+			resolved[0]++;
+			return Helper.stringFromCompound(b, "Name", "").length();
+		}, n -> n.equals("minecraft:grass") ? BlockStateColors.TINT_GRASS : BlockStateColors.TINT_NONE);
+
+		CompoundTag grass = blockState("minecraft:grass", "snowy", "false");
+		int id = colors.getStateID(grass);
+		assertEquals(id, colors.getStateID(blockState("minecraft:grass", "snowy", "false")));
+		assertEquals(1, resolved[0]);
+
+		long state = colors.getState(id);
+		assertEquals("minecraft:grass".length(), BlockStateColors.color(state));
+		assertEquals(BlockStateColors.TINT_GRASS, BlockStateColors.tint(state));
+
+		// a different property set is a different state
+		assertNotEquals(id, colors.getStateID(blockState("minecraft:grass", "snowy", "true")));
+		assertEquals(2, resolved[0]);
+
+		// changing a palette entry after it was cached doesn't change the cache
+		grass.putString("Name", "minecraft:stone");
+		int stone = colors.getStateID(grass);
+		assertNotEquals(id, stone);
+		assertEquals(BlockStateColors.TINT_NONE, BlockStateColors.tint(colors.getState(stone)));
+	}
+
+	private CompoundTag blockState(String name, String property, String value) {
+		CompoundTag blockState = new CompoundTag();
+		blockState.putString("Name", name);
+		CompoundTag properties = new CompoundTag();
+		properties.putString(property, value);
+		blockState.put("Properties", properties);
+		return blockState;
+	}
+}